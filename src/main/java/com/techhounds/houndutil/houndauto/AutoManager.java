@@ -3,13 +3,17 @@ package com.techhounds.houndutil.houndauto;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 import com.pathplanner.lib.config.ModuleConfig;
 import com.pathplanner.lib.config.RobotConfig;
 import com.pathplanner.lib.path.PathPlannerPath;
 import com.pathplanner.lib.trajectory.PathPlannerTrajectory;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectoryState;
 import com.techhounds.houndutil.houndlog.LogType;
 import com.techhounds.houndutil.houndlog.LoggingManager;
 import com.techhounds.houndutil.houndlog.loggers.DoubleLogItem;
@@ -47,9 +51,27 @@ import edu.wpi.first.wpilibj2.command.Commands;
  * <p>
  * 
  * Note: this is automatically handled by {@code HoundRobot}.
+ * 
+ * <p>
+ * 
+ * Trajectories for every routine's paths are generated for both alliances on a
+ * background thread, starting in {@code init()}, so selecting a routine while
+ * disabled only swaps in a cached pose array.
  */
 public class AutoManager {
     private static AutoManager instance;
+
+    /**
+     * The displayed trajectory poses of a routine for each alliance.
+     * 
+     * @param blue the poses of every path in the routine, in order, on the blue
+     *             alliance
+     * @param red  the poses of every path in the routine, in order, flipped for
+     *             the red alliance
+     */
+    private record CachedTrajectory(Pose2d[] blue, Pose2d[] red) {
+    }
+
     private HashMap<String, AutoRoutine> routines = new HashMap<String, AutoRoutine>();
     private AutoRoutine lastRoutine;
     private SendableChooser<AutoRoutine> chooser = new SendableChooser<AutoRoutine>();
@@ -65,6 +87,21 @@ public class AutoManager {
     private Consumer<Pose2d> resetOdometryConsumer;
     private Timer timer = new Timer();
 
+    /** Generates trajectories for display off the main thread. */
+    private final ExecutorService trajectoryExecutor = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "AutoManager-Trajectories");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Map<AutoRoutine, CachedTrajectory> trajectoryCache = new ConcurrentHashMap<>();
+    /** Incremented when cached trajectories become invalid. */
+    private int trajectoryGeneration = 0;
+    private boolean initialized = false;
+    private Alliance lastAlliance;
+    /** Whether the selected routine's trajectory is waiting to be generated. */
+    private boolean trajectoryPending = false;
+
     /**
      * Base robot config object required by PathPlanner to generate trajectories;
      * only used for visualization.
@@ -102,6 +139,11 @@ public class AutoManager {
                         new DoubleLogItem("autoTimer", timer::get, LogType.NT),
                         new SendableLogItem("field", field),
                         new SendableLogItem("chooser", chooser)));
+
+        initialized = true;
+        for (AutoRoutine routine : routines.values()) {
+            submitTrajectory(routine);
+        }
     }
 
     /**
@@ -110,8 +152,14 @@ public class AutoManager {
      * @param routine the routine to add
      */
     public void addRoutine(AutoRoutine routine) {
-        routines.put(routine.getName(), routine);
+        AutoRoutine previous = routines.put(routine.getName(), routine);
+        if (previous != null) {
+            trajectoryCache.remove(previous);
+        }
         chooser.addOption(routine.getName(), routine);
+        if (initialized) {
+            submitTrajectory(routine);
+        }
     }
 
     /**
@@ -145,12 +193,21 @@ public class AutoManager {
     }
 
     /**
-     * Sets the RobotConfig object to use when generating
+     * Sets the RobotConfig object to use when generating trajectories for
+     * display. Trajectories that were already generated are regenerated.
      * 
-     * @param consumer the {@code Pose2d} consumer
+     * @param robotConfig the robot config
      */
-    public void setRobotConfig(RobotConfig robotConfig) {
+    public synchronized void setRobotConfig(RobotConfig robotConfig) {
         this.pathPlannerRobotConfig = robotConfig;
+        trajectoryGeneration++;
+        trajectoryCache.clear();
+        trajectoryPending = true;
+        if (initialized) {
+            for (AutoRoutine routine : routines.values()) {
+                submitTrajectory(routine);
+            }
+        }
     }
 
     /**
@@ -159,37 +216,89 @@ public class AutoManager {
      */
     public void periodicUpdate() {
         AutoRoutine selectedRoutine = getSelectedRoutine();
-        if (getSelectedRoutine() != lastRoutine) {
-            if (resetOdometryConsumer != null) {
-                resetOdometryConsumer.accept(selectedRoutine.getInitialPose());
-            }
+        Alliance alliance = DriverStation.getAlliance().orElse(Alliance.Blue);
+        boolean routineChanged = selectedRoutine != lastRoutine;
+        if (routineChanged && resetOdometryConsumer != null) {
+            resetOdometryConsumer.accept(selectedRoutine.getInitialPose());
+        }
+        if (routineChanged || alliance != lastAlliance || trajectoryPending) {
             if (selectedRoutine.getPathPlannerPaths().size() > 0) {
                 field.getObject("startingPose").setPose(selectedRoutine.getInitialPose());
-                displayPaths(selectedRoutine.getPathPlannerPaths());
+                displayPaths(selectedRoutine, alliance);
+            } else {
+                trajectoryPending = false;
             }
             lastRoutine = selectedRoutine;
+            lastAlliance = alliance;
         }
     }
 
     /**
-     * Display the selected routine's trajectories on the field object.
+     * Display the selected routine's cached trajectories on the field object. If
+     * they have not been generated yet, the trajectory is cleared and displayed
+     * once it is ready.
      */
-    private void displayPaths(List<PathPlannerPath> paths) {
+    private void displayPaths(AutoRoutine routine, Alliance alliance) {
+        CachedTrajectory cached = trajectoryCache.get(routine);
+        if (cached == null) {
+            if (!trajectoryPending) {
+                field.getObject("trajectory").setPoses();
+            }
+            trajectoryPending = true;
+            return;
+        }
+        trajectoryPending = false;
+        field.getObject("trajectory").setPoses(alliance == Alliance.Red ? cached.red() : cached.blue());
+    }
+
+    /**
+     * Queues generation of a routine's trajectories for both alliances on the
+     * trajectory thread.
+     */
+    private synchronized void submitTrajectory(AutoRoutine routine) {
+        List<PathPlannerPath> paths = routine.getPathPlannerPaths();
+        if (paths.isEmpty()) {
+            return;
+        }
+        RobotConfig robotConfig = pathPlannerRobotConfig;
+        int generation = trajectoryGeneration;
+        trajectoryExecutor.execute(() -> {
+            CachedTrajectory cached;
+            try {
+                cached = new CachedTrajectory(
+                        generatePoses(paths, false, robotConfig),
+                        generatePoses(paths, true, robotConfig));
+            } catch (RuntimeException e) {
+                DriverStation.reportError("[houndauto] Failed to generate trajectory for " + routine.getName()
+                        + ": " + e.getMessage(), e.getStackTrace());
+                cached = new CachedTrajectory(new Pose2d[0], new Pose2d[0]);
+            }
+            synchronized (this) {
+                if (generation == trajectoryGeneration) {
+                    trajectoryCache.put(routine, cached);
+                }
+            }
+        });
+    }
+
+    /**
+     * Generates the poses of a list of paths, in order.
+     */
+    private static Pose2d[] generatePoses(List<PathPlannerPath> paths, boolean flip, RobotConfig robotConfig) {
         ArrayList<Pose2d> poses = new ArrayList<Pose2d>();
         for (PathPlannerPath path : paths) {
-            if (DriverStation.getAlliance().orElse(Alliance.Blue) == Alliance.Red) {
+            if (flip) {
                 path = path.flipPath();
             }
             PathPlannerTrajectory trajectory = path.generateTrajectory(new ChassisSpeeds(),
                     path.getStartingDifferentialPose().getRotation(),
-                    pathPlannerRobotConfig);
+                    robotConfig);
 
-            poses.addAll(trajectory.getStates().stream()
-                    .map((state) -> state.pose)
-                    .collect(Collectors.toList()));
+            for (PathPlannerTrajectoryState state : trajectory.getStates()) {
+                poses.add(state.pose);
+            }
         }
-
-        field.getObject("trajectory").setPoses(poses);
+        return poses.toArray(new Pose2d[0]);
     }
 
     /**
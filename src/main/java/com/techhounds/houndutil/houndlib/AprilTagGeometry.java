@@ -0,0 +1,183 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Translation3d;
+
+/**
+ * The positions and facing directions of every tag in an
+ * {@link AprilTagFieldLayout}, stored in arrays indexed by tag ID. Lookups are
+ * a bounds check and an array read, instead of the search and
+ * {@link java.util.Optional} in {@link AprilTagFieldLayout#getTagPose(int)}.
+ *
+ * <p>
+ * Use {@link #of(AprilTagFieldLayout)} so that every camera using the same
+ * layout shares one instance. Instances are immutable, and record the layout
+ * origin they were built with; {@link #isCurrent(AprilTagFieldLayout)} tells
+ * when the layout's origin has changed since.
+ */
+public class AprilTagGeometry {
+    // weak keys, so layouts that are no longer used can be collected. values
+    // must not refer to their layout, or it would never be
+    private static final Map<AprilTagFieldLayout, AprilTagGeometry> CACHE = new WeakHashMap<>();
+
+    private final Pose3d origin;
+    private final boolean[] present;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    // the unit vector each tag faces, out of its printed side
+    private final double[] normalX;
+    private final double[] normalY;
+    private final double[] normalZ;
+
+    /**
+     * Builds the geometry of a layout. Prefer {@link #of(AprilTagFieldLayout)}.
+     *
+     * @param layout the field layout
+     */
+    public AprilTagGeometry(AprilTagFieldLayout layout) {
+        origin = layout.getOrigin();
+        int maxId = -1;
+        for (AprilTag tag : layout.getTags()) {
+            maxId = Math.max(maxId, tag.ID);
+        }
+        int size = maxId + 1;
+        present = new boolean[size];
+        x = new double[size];
+        y = new double[size];
+        z = new double[size];
+        normalX = new double[size];
+        normalY = new double[size];
+        normalZ = new double[size];
+
+        for (AprilTag tag : layout.getTags()) {
+            // field layout poses can be relative to either alliance origin, so go through
+            // getTagPose, which applies the layout origin
+            var pose = layout.getTagPose(tag.ID);
+            if (tag.ID < 0 || pose.isEmpty()) {
+                continue;
+            }
+            int id = tag.ID;
+            present[id] = true;
+            x[id] = pose.get().getX();
+            y[id] = pose.get().getY();
+            z[id] = pose.get().getZ();
+            // tags face along +X of their pose
+            Translation3d normal = new Translation3d(1, 0, 0).rotateBy(pose.get().getRotation());
+            normalX[id] = normal.getX();
+            normalY[id] = normal.getY();
+            normalZ[id] = normal.getZ();
+        }
+    }
+
+    /**
+     * Gets the shared geometry of a layout, building it on first use, and
+     * rebuilding it if the layout's origin has changed since.
+     *
+     * @param layout the field layout
+     * @return the geometry of the layout
+     */
+    public static synchronized AprilTagGeometry of(AprilTagFieldLayout layout) {
+        AprilTagGeometry geometry = CACHE.get(layout);
+        if (geometry == null || !geometry.isCurrent(layout)) {
+            geometry = new AprilTagGeometry(layout);
+            CACHE.put(layout, geometry);
+        }
+        return geometry;
+    }
+
+    /**
+     * Gets whether this geometry was built with a layout's current origin. When
+     * it was not, such as after {@link AprilTagFieldLayout#setOrigin(Pose3d)},
+     * get the rebuilt geometry from {@link #of(AprilTagFieldLayout)}.
+     *
+     * @param layout the field layout
+     * @return true if the tag positions match the layout's origin
+     */
+    public boolean isCurrent(AprilTagFieldLayout layout) {
+        return origin.equals(layout.getOrigin());
+    }
+
+    /**
+     * Gets whether a tag ID is in the layout.
+     *
+     * @param id the tag ID
+     * @return true if the tag exists
+     */
+    public boolean hasTag(int id) {
+        return id >= 0 && id < present.length && present[id];
+    }
+
+    public double getX(int id) {
+        return x[id];
+    }
+
+    public double getY(int id) {
+        return y[id];
+    }
+
+    public double getZ(int id) {
+        return z[id];
+    }
+
+    public double getNormalX(int id) {
+        return normalX[id];
+    }
+
+    public double getNormalY(int id) {
+        return normalY[id];
+    }
+
+    public double getNormalZ(int id) {
+        return normalZ[id];
+    }
+
+    /**
+     * Gets the horizontal distance from a point to a tag. The tag must exist.
+     *
+     * @param id the tag ID
+     * @param px the x coordinate of the point, in meters
+     * @param py the y coordinate of the point, in meters
+     * @return the distance, in meters
+     */
+    public double getDistance2d(int id, double px, double py) {
+        return Math.hypot(px - x[id], py - y[id]);
+    }
+
+    /**
+     * Gets the cosine of the angle between a tag's facing direction and the line
+     * from the tag to a point. 1 means the point is straight in front of the tag,
+     * 0 means it is edge-on, and negative values are behind it. The tag must
+     * exist.
+     *
+     * @param id the tag ID
+     * @param px the x coordinate of the point, in meters
+     * @param py the y coordinate of the point, in meters
+     * @param pz the height of the point, in meters
+     * @return the cosine of the viewing angle
+     */
+    public double getViewingCos(int id, double px, double py, double pz) {
+        double dx = px - x[id];
+        double dy = py - y[id];
+        double dz = pz - z[id];
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length < 1e-9) {
+            return 1;
+        }
+        return (dx * normalX[id] + dy * normalY[id] + dz * normalZ[id]) / length;
+    }
+
+    /**
+     * Gets one more than the highest tag ID in the layout.
+     *
+     * @return the size of the ID-indexed arrays
+     */
+    public int getIdCount() {
+        return present.length;
+    }
+}
@@ -28,6 +28,7 @@ import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 
 /**
  * A camera that uses PhotonVision to derive an estimated pose based on visible
@@ -36,6 +37,10 @@ import edu.wpi.first.wpilibj.RobotBase;
  * 
  * Note: you must enable multi-tag PNP on the PhotonVision web UI for each
  * camera for the correct pose strategy to activate.
+ * 
+ * If an {@link OdometryHistory} is set, each result is checked against the
+ * robot pose at the time the frame was captured rather than the latest pose,
+ * so that measurements taken while driving quickly are not discarded.
  */
 @LoggedObject
 public class AprilTagPhotonCamera {
@@ -71,24 +76,74 @@ public class AprilTagPhotonCamera {
     protected PhotonPoseEstimator photonPoseEstimator;
     protected PhotonPoseEstimator trigSolvePoseEstimator;
     protected Transform3d robotToCam;
+    protected AprilTagFieldLayout fieldLayout;
+    /** The tag positions of the field layout, shared between cameras. */
+    protected AprilTagGeometry tagGeometry;
+
+    /** The logged pose when there is no estimate. */
+    protected static final Pose3d NO_POSE = new Pose3d(-100, -100, -100, new Rotation3d());
+    /** The default maximum number of pipeline results processed per update. */
+    public static final int DEFAULT_MAX_RESULTS = 8;
 
-    // all used for logging only
-    @Log
+    /**
+     * The logged values of the camera, as of the end of an update. A new
+     * instance is published by each call to
+     * {@link #update(Pose2d, Matrix, Matrix)}, and the arrays are never written
+     * after it is published, so a logger on another thread always reads one
+     * complete update.
+     */
+    protected record LoggedState(Pose3d estimatedRobotPose, Pose3d estimatedTrigPose,
+            Pose3d[] detectedAprilTags, Pose3d[] detectedTrigAprilTags, boolean hasPose, int targetCount,
+            int lastResultCount, double lastFrameAge, int staleFrameCount, int rejectedJumpCount) {
+    }
+
+    // written by update, and published to the logger through loggedState
     protected Pose3d estimatedRobotPose = new Pose3d();
-    @Log
     protected Pose3d estimatedTrigPose = new Pose3d();
-    @Log
+    // the detected tag poses are only built at the end of an update that
+    // changed these targets, from the estimate they were seen with, which is
+    // kept even if the estimate is rejected
+    protected List<PhotonTrackedTarget> detectedTargets = List.of();
+    protected List<PhotonTrackedTarget> detectedTrigTargets = List.of();
+    protected Pose3d detectedTargetsPose = new Pose3d();
+    protected Pose3d detectedTrigTargetsPose = new Pose3d();
     protected Pose3d[] detectedAprilTags = new Pose3d[] { Pose3d.kZero };
-    @Log
     protected Pose3d[] detectedTrigAprilTags = new Pose3d[] { Pose3d.kZero };
-    @Log
+    protected boolean detectedAprilTagsStale = false;
+    protected boolean detectedTrigAprilTagsStale = false;
     protected boolean hasPose = false;
     protected boolean hasTrigPose = false;
-    @Log
     protected int targetCount = 0;
-
-    protected List<Pair<EstimatedRobotPose, Matrix<N3, N1>>> estimatedRobotPoses = new ArrayList<Pair<EstimatedRobotPose, Matrix<N3, N1>>>();
-    protected List<EstimatedRobotPose> estimatedTrigPoses = new ArrayList<EstimatedRobotPose>();
+    protected int lastResultCount = 0;
+    protected double lastFrameAge = 0;
+    protected int staleFrameCount = 0;
+    protected int rejectedJumpCount = 0;
+    protected volatile LoggedState loggedState = new LoggedState(estimatedRobotPose, estimatedTrigPose,
+            detectedAprilTags, detectedTrigAprilTags, hasPose, targetCount, lastResultCount, lastFrameAge,
+            staleFrameCount, rejectedJumpCount);
+
+    protected OdometryHistory odometryHistory = null;
+    protected double maxFrameAge = 0.3;
+    protected double maxSingleTagJump = 1.0;
+    protected int maxJumpRejections = 25;
+    // single-tag estimates rejected by the jump check since a global pose was
+    // last accepted
+    protected int consecutiveJumpRejections = 0;
+
+    // the robot pose when the current frame was captured, if hasCapturePose
+    protected final double[] capturePose = new double[3];
+    protected boolean hasCapturePose = false;
+    // set by getStdDevScale
+    protected int lastTagCount = 0;
+    protected double lastAverageTagDistance = 0;
+    // extra std dev scaling, off by default
+    protected double viewingAngleWeight = 0;
+    protected double areaWeight = 0;
+
+    protected int maxResults = DEFAULT_MAX_RESULTS;
+    protected VisionObservationBuffer observations = new VisionObservationBuffer(2 * DEFAULT_MAX_RESULTS);
+    // the estimator output behind each observation, for the list getters
+    protected EstimatedRobotPose[] observationEstimates = new EstimatedRobotPose[2 * DEFAULT_MAX_RESULTS];
 
     /**
      * Initializes the PhotonVision camera.
@@ -109,6 +164,8 @@ public class AprilTagPhotonCamera {
             double avgErrorPx, double stdDevErrorPx, AprilTagFieldLayout fieldLayout) {
         this.name = name;
         this.robotToCam = robotToCam;
+        this.fieldLayout = fieldLayout;
+        tagGeometry = AprilTagGeometry.of(fieldLayout);
 
         photonCamera = new PhotonCamera(name);
 
@@ -135,7 +192,84 @@ public class AprilTagPhotonCamera {
     }
 
     /**
-     * Receives latest updates from camera and creates pose estimates.
+     * Sets the history used to look up the robot pose at each frame's capture
+     * time. The heading at capture time is given to the pose estimators, so
+     * {@link #addHeadingData(double, Rotation2d)} does not need to be called.
+     * 
+     * @param odometryHistory the odometry history, or null to skip the checks
+     *                        that need the robot pose at capture time
+     */
+    public void setOdometryHistory(OdometryHistory odometryHistory) {
+        this.odometryHistory = odometryHistory;
+    }
+
+    /**
+     * Sets the age past which frames are discarded. Old frames are usually a sign
+     * of a stalled coprocessor or network. Only used with an odometry history,
+     * so cameras without one still process every frame.
+     * 
+     * @param maxFrameAge the maximum age of a frame, in seconds
+     */
+    public void setMaxFrameAge(double maxFrameAge) {
+        this.maxFrameAge = maxFrameAge;
+    }
+
+    /**
+     * Sets how far a single-tag estimate may be from the robot pose at capture
+     * time before it is rejected as a flipped solution. Only used with an
+     * odometry history.
+     * 
+     * @param maxSingleTagJump the maximum distance, in meters
+     */
+    public void setMaxSingleTagJump(double maxSingleTagJump) {
+        this.maxSingleTagJump = maxSingleTagJump;
+    }
+
+    /**
+     * Sets how many single-tag estimates in a row the jump check may reject
+     * before the next one is let through. The odometry history holds the fused
+     * estimate, so if that estimate goes bad while only one tag is visible, the
+     * check would otherwise reject the frames that could correct it forever.
+     * 
+     * @param maxJumpRejections the number of consecutive rejections
+     */
+    public void setMaxJumpRejections(int maxJumpRejections) {
+        this.maxJumpRejections = maxJumpRejections;
+    }
+
+    /**
+     * Sets the extra terms of the standard deviation model. Each term multiplies
+     * the distance-based scale, and a weight of 0 disables it.
+     * 
+     * @param viewingAngleWeight how much to trust tags seen at an angle less.
+     *                           multiplies the scale by
+     *                           {@code 1 + weight * (1 - cos(viewing angle))},
+     *                           averaged over the tags.
+     * @param areaWeight         how much to trust small tags less. multiplies the
+     *                           scale by {@code 1 + weight / area}, where area is
+     *                           the average tag area in percent of the image.
+     */
+    public void setStdDevModel(double viewingAngleWeight, double areaWeight) {
+        this.viewingAngleWeight = viewingAngleWeight;
+        this.areaWeight = areaWeight;
+    }
+
+    /**
+     * Sets the maximum number of pipeline results processed per update, which
+     * sizes the observation buffer. Older results past the limit are skipped.
+     * Should be called during setup, since it reallocates the buffer.
+     * 
+     * @param maxResults the maximum number of results per update
+     */
+    public void setMaxResultsPerUpdate(int maxResults) {
+        this.maxResults = maxResults;
+        observations = new VisionObservationBuffer(2 * maxResults);
+        observationEstimates = new EstimatedRobotPose[2 * maxResults];
+    }
+
+    /**
+     * Receives latest updates from camera and creates pose estimates, which are
+     * stored in {@link #getObservations()}.
      * 
      * @param prevEstimatedRobotPose the previous global pose generated by the
      *                               overall pose estimator. used for legacy
@@ -145,51 +279,124 @@ public class AprilTagPhotonCamera {
      */
     public void update(Pose2d prevEstimatedRobotPose, Matrix<N3, N1> singleTagStdDevs, Matrix<N3, N1> multiTagStdDevs) {
         List<PhotonPipelineResult> results = photonCamera.getAllUnreadResults();
-        estimatedRobotPoses.clear();
-        estimatedTrigPoses.clear();
+        lastResultCount = results.size();
+        observations.clear();
+        // the layout origin is usually set after construction, once the alliance
+        // is known
+        if (!tagGeometry.isCurrent(fieldLayout)) {
+            tagGeometry = AprilTagGeometry.of(fieldLayout);
+        }
+
+        double now = Timer.getFPGATimestamp();
+        // if more results arrived than the buffer holds, keep the newest
+        for (int r = Math.max(0, results.size() - maxResults); r < results.size(); r++) {
+            PhotonPipelineResult result = results.get(r);
+            double timestamp = result.getTimestampSeconds();
+            lastFrameAge = now - timestamp;
+            targetCount = result.targets.size();
+            if (odometryHistory != null && lastFrameAge > maxFrameAge) {
+                staleFrameCount++;
+                continue;
+            }
+
+            // the robot pose when the frame was captured, if known
+            hasCapturePose = odometryHistory != null && odometryHistory.sample(timestamp, capturePose);
+            if (hasCapturePose) {
+                addHeadingData(timestamp, new Rotation2d(capturePose[2]));
+            }
 
-        for (PhotonPipelineResult result : results) {
             // standard global pose
-            processEstimatedGlobalPose(result, singleTagStdDevs, multiTagStdDevs, prevEstimatedRobotPose);
+            processEstimatedGlobalPose(result, singleTagStdDevs, multiTagStdDevs);
 
             // trig estimated pose (better precision for single-tag estimates)
-            processEstimatedTrigPose(result);
+            processEstimatedTrigPose(result, singleTagStdDevs);
+        }
+        publishLoggedState();
+    }
+
+    /**
+     * Builds the detected tag poses if their targets changed, and publishes the
+     * logged values of this update. The tag pose arrays are always new, since
+     * the logger may still be reading the previous ones.
+     */
+    protected void publishLoggedState() {
+        if (detectedAprilTagsStale) {
+            detectedAprilTags = getPosesFromTargets(detectedTargets, detectedTargetsPose, robotToCam);
+            detectedAprilTagsStale = false;
+        }
+        if (detectedTrigAprilTagsStale) {
+            detectedTrigAprilTags = getPosesFromTargets(detectedTrigTargets, detectedTrigTargetsPose,
+                    robotToCam);
+            detectedTrigAprilTagsStale = false;
         }
+        loggedState = new LoggedState(estimatedRobotPose, estimatedTrigPose, detectedAprilTags,
+                detectedTrigAprilTags, hasPose, targetCount, lastResultCount, lastFrameAge, staleFrameCount,
+                rejectedJumpCount);
+    }
+
+    /**
+     * Gets the measurements from the last update. The buffer is reused, so read
+     * it before the next call to {@link #update(Pose2d, Matrix, Matrix)}.
+     * 
+     * @return the measurements
+     */
+    public VisionObservationBuffer getObservations() {
+        return observations;
     }
 
+    /**
+     * Gets the global measurements from the last update, with their standard
+     * deviations. Built on each call; prefer {@link #getObservations()}.
+     * 
+     * @return the global measurements
+     */
     public List<Pair<EstimatedRobotPose, Matrix<N3, N1>>> getEstimatedRobotPoses() {
-        return estimatedRobotPoses;
+        List<Pair<EstimatedRobotPose, Matrix<N3, N1>>> poses = new ArrayList<>();
+        for (int i = 0; i < observations.size(); i++) {
+            if (!observations.isPrecise(i)) {
+                poses.add(new Pair<>(observationEstimates[i],
+                        observations.fillStdDevs(i, new Matrix<>(N3.instance, N1.instance))));
+            }
+        }
+        return poses;
     }
 
+    /**
+     * Gets the trig-solve measurements from the last update. Built on each call;
+     * prefer {@link #getObservations()}.
+     * 
+     * @return the trig-solve measurements
+     */
     public List<EstimatedRobotPose> getEstimatedTrigPoses() {
-        return estimatedTrigPoses;
+        List<EstimatedRobotPose> poses = new ArrayList<>();
+        for (int i = 0; i < observations.size(); i++) {
+            if (observations.isPrecise(i)) {
+                poses.add(observationEstimates[i]);
+            }
+        }
+        return poses;
     }
 
     /**
-     * Gets an estimated pose of the robot on the field, if possible.
-     * 
-     * @param prevEstimatedRobotPose the previous global pose generated by the
-     *                               overall pose estimator. used for legacy
-     *                               reasons, in case single-tag algorithms that
-     *                               rank based on distance to the previous pose are
-     *                               desired.
-     * @return if possible, an {@link EstimatedRobotPose}, with the estimated pose,
-     *         timestamp, and targets used.
+     * Gets an estimated pose of the robot on the field, if possible. Single-tag
+     * estimates far from the capture pose are rejected, unless too many have been
+     * rejected in a row.
      */
     private void processEstimatedGlobalPose(
             PhotonPipelineResult result,
             Matrix<N3, N1> singleTagStdDevs,
-            Matrix<N3, N1> multiTagStdDevs,
-            Pose2d prevEstimatedRobotPose) {
+            Matrix<N3, N1> multiTagStdDevs) {
 
         Optional<EstimatedRobotPose> photonEstimatedRobotPose = photonPoseEstimator.update(result);
         hasPose = photonEstimatedRobotPose.isPresent();
 
         if (photonEstimatedRobotPose.isPresent()) {
-            estimatedRobotPose = photonEstimatedRobotPose.get().estimatedPose;
+            EstimatedRobotPose estimate = photonEstimatedRobotPose.get();
+            estimatedRobotPose = estimate.estimatedPose;
 
-            detectedAprilTags = getPosesFromTargets(result.targets, estimatedRobotPose,
-                    robotToCam);
+            detectedTargets = result.targets;
+            detectedTargetsPose = estimatedRobotPose;
+            detectedAprilTagsStale = true;
 
             // reject the pose if we are over 1m off the ground, or over 1m under the
             // ground.
@@ -197,47 +404,55 @@ public class AprilTagPhotonCamera {
                 hasPose = false;
                 return;
             }
-            Matrix<N3, N1> stddevs = getEstimationStdDevs(result, estimatedRobotPose, singleTagStdDevs,
-                    multiTagStdDevs);
 
-            estimatedRobotPoses
-                    .add(new Pair<EstimatedRobotPose, Matrix<N3, N1>>(photonEstimatedRobotPose.get(), stddevs));
+            // a single tag can resolve to a flipped solution, so reject single-tag poses
+            // that disagree with where odometry says the robot was
+            if (hasCapturePose && estimate.targetsUsed.size() == 1
+                    && consecutiveJumpRejections < maxJumpRejections
+                    && Math.hypot(estimatedRobotPose.getX() - capturePose[0],
+                            estimatedRobotPose.getY() - capturePose[1]) > maxSingleTagJump) {
+                consecutiveJumpRejections++;
+                rejectedJumpCount++;
+                hasPose = false;
+                return;
+            }
+            consecutiveJumpRejections = 0;
+
+            double scale = getStdDevScale(result.getTargets(), estimatedRobotPose.getX(), estimatedRobotPose.getY());
+            Matrix<N3, N1> base = lastTagCount > 1 ? multiTagStdDevs : singleTagStdDevs;
+            addObservation(estimate, base, scale, false);
         } else {
-            detectedAprilTags = new Pose3d[0];
-            estimatedRobotPose = new Pose3d(-100, -100, -100, new Rotation3d());
+            detectedTargets = List.of();
+            detectedAprilTagsStale = true;
+            estimatedRobotPose = NO_POSE;
         }
     }
 
     /**
      * Gets an estimated pose of the robot on the field using the trigonometric pose
-     * algorithm.
-     * 
-     * @param prevEstimatedRobotPose the previous global pose generated by the
-     *                               overall pose estimator. used for legacy
-     *                               reasons, in case single-tag algorithms that
-     *                               rank based on distance to the previous pose are
-     *                               desired.
-     * @return if possible, an {@link EstimatedRobotPose}, with the estimated pose,
-     *         timestamp, and targets used.
+     * algorithm. The distance check uses the capture pose instead of the estimate
+     * itself when available.
      */
-    private void processEstimatedTrigPose(PhotonPipelineResult result) {
+    private void processEstimatedTrigPose(PhotonPipelineResult result, Matrix<N3, N1> singleTagStdDevs) {
         Optional<EstimatedRobotPose> photonEstimatedRobotPose = trigSolvePoseEstimator.update(result);
         hasPose = photonEstimatedRobotPose.isPresent();
         if (photonEstimatedRobotPose.isPresent()) {
-            estimatedTrigPose = photonEstimatedRobotPose.get().estimatedPose;
-            detectedTrigAprilTags = getPosesFromTargets(result.targets, estimatedTrigPose,
-                    robotToCam);
-
-            var tagPose = photonPoseEstimator.getFieldTags()
-                    .getTagPose(photonEstimatedRobotPose.get().targetsUsed.get(0).getFiducialId());
-
-            // reject if we are >3m away from the reef
-            if (tagPose.isPresent()) {
-                double dist = tagPose.get().toPose2d().getTranslation()
-                        .getDistance(estimatedTrigPose.getTranslation().toTranslation2d());
+            EstimatedRobotPose estimate = photonEstimatedRobotPose.get();
+            estimatedTrigPose = estimate.estimatedPose;
+            detectedTrigTargets = result.targets;
+            detectedTrigTargetsPose = estimatedTrigPose;
+            detectedTrigAprilTagsStale = true;
+
+            int tagId = estimate.targetsUsed.get(0).getFiducialId();
+
+            // reject if we are >4m away from the tag
+            if (tagGeometry.hasTag(tagId)) {
+                double dist = tagGeometry.getDistance2d(tagId,
+                        hasCapturePose ? capturePose[0] : estimatedTrigPose.getX(),
+                        hasCapturePose ? capturePose[1] : estimatedTrigPose.getY());
                 if (dist > 4.0) {
                     hasPose = false;
-                    estimatedTrigPose = new Pose3d(-100, -100, -100, new Rotation3d());
+                    estimatedTrigPose = NO_POSE;
                     return;
                 }
             }
@@ -246,17 +461,35 @@ public class AprilTagPhotonCamera {
             // ground.
             if (estimatedTrigPose.getZ() > 1 || estimatedTrigPose.getZ() < -1) {
                 hasPose = false;
-                estimatedTrigPose = new Pose3d(-100, -100, -100, new Rotation3d());
+                estimatedTrigPose = NO_POSE;
                 return;
             }
-            estimatedTrigPoses.add(photonEstimatedRobotPose.get());
+            double scale = getStdDevScale(estimate.targetsUsed, estimatedTrigPose.getX(), estimatedTrigPose.getY());
+            addObservation(estimate, singleTagStdDevs, scale, true);
         } else {
-            detectedTrigAprilTags = new Pose3d[0];
-            estimatedTrigPose = new Pose3d(-100, -100, -100, new Rotation3d());
+            detectedTrigTargets = List.of();
+            detectedTrigAprilTagsStale = true;
+            estimatedTrigPose = NO_POSE;
         }
 
     }
 
+    private void addObservation(EstimatedRobotPose estimate, Matrix<N3, N1> baseStdDevs, double scale,
+            boolean precise) {
+        Pose3d pose = estimate.estimatedPose;
+        // an ignored measurement keeps the maximum value rather than overflowing
+        boolean ignored = scale == Double.MAX_VALUE;
+        int i = observations.add(estimate.timestampSeconds, pose.getX(), pose.getY(), pose.getZ(),
+                pose.getRotation().getZ(),
+                ignored ? Double.MAX_VALUE : baseStdDevs.get(0, 0) * scale,
+                ignored ? Double.MAX_VALUE : baseStdDevs.get(1, 0) * scale,
+                ignored ? Double.MAX_VALUE : baseStdDevs.get(2, 0) * scale,
+                lastTagCount, lastAverageTagDistance, precise);
+        if (i >= 0) {
+            observationEstimates[i] = estimate;
+        }
+    }
+
     public void addHeadingData(double timestampSeconds, Rotation2d heading) {
         photonPoseEstimator.addHeadingData(timestampSeconds, heading);
         trigSolvePoseEstimator.addHeadingData(timestampSeconds, heading);
@@ -273,34 +506,58 @@ public class AprilTagPhotonCamera {
     public Matrix<N3, N1> getEstimationStdDevs(PhotonPipelineResult result, Pose3d estimatedPose,
             Matrix<N3, N1> singleTagStdDevs,
             Matrix<N3, N1> multiTagStdDevs) {
+        double scale = getStdDevScale(result.getTargets(), estimatedPose.getX(), estimatedPose.getY());
+        if (scale == Double.MAX_VALUE)
+            return VecBuilder.fill(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+        return (lastTagCount > 1 ? multiTagStdDevs : singleTagStdDevs).times(scale);
+    }
 
-        List<PhotonTrackedTarget> targets = result.getTargets();
+    /**
+     * Computes the factor to multiply the base standard deviations by, and sets
+     * {@link #lastTagCount} and {@link #lastAverageTagDistance}. Does not
+     * allocate.
+     * 
+     * @param targets the targets used for the measurement
+     * @param x       the estimated x coordinate of the robot, in meters
+     * @param y       the estimated y coordinate of the robot, in meters
+     * @return the scale factor, or {@link Double#MAX_VALUE} if the measurement
+     *         should be ignored
+     */
+    protected double getStdDevScale(List<PhotonTrackedTarget> targets, double x, double y) {
         int numTags = 0;
         double avgDist = 0;
-        for (PhotonTrackedTarget tgt : targets) {
-            Optional<Pose3d> tagPose = photonPoseEstimator.getFieldTags().getTagPose(tgt.getFiducialId());
-            if (tagPose.isEmpty())
+        double avgCos = 0;
+        double avgArea = 0;
+        double camHeight = robotToCam.getZ();
+        for (int i = 0; i < targets.size(); i++) {
+            PhotonTrackedTarget target = targets.get(i);
+            int id = target.getFiducialId();
+            if (!tagGeometry.hasTag(id))
                 continue;
             numTags++;
 
-            avgDist += tagPose.get().toPose2d().getTranslation().getDistance(estimatedPose.toPose2d().getTranslation());
+            avgDist += tagGeometry.getDistance2d(id, x, y);
+            avgCos += Math.max(0, tagGeometry.getViewingCos(id, x, y, camHeight));
+            avgArea += target.getArea();
         }
 
         avgDist /= numTags;
+        lastTagCount = numTags;
+        lastAverageTagDistance = avgDist;
 
         // if the average distance is > 6 meters, use maximum value standard deviations,
         // effectively nullifying the measurement
-        if (avgDist > 6)
-            return VecBuilder.fill(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
-        else {
-            if (numTags > 1)
-                // multiplies the standard deviations by 1 + avgDist^2/5. this was found by
-                // others in the community to be an effective way to scale standard deviations
-                // by distance.
-                return multiTagStdDevs.times(1 + (avgDist * avgDist / 5));
-            else
-                return singleTagStdDevs.times(1 + (avgDist * avgDist / 5));
-        }
+        if (avgDist > 6 || numTags == 0)
+            return Double.MAX_VALUE;
+        // multiplies the standard deviations by 1 + avgDist^2/5. this was found by
+        // others in the community to be an effective way to scale standard deviations
+        // by distance.
+        double scale = 1 + (avgDist * avgDist / 5);
+        if (viewingAngleWeight != 0)
+            scale *= 1 + viewingAngleWeight * (1 - avgCos / numTags);
+        if (areaWeight != 0)
+            scale *= 1 + areaWeight / Math.max(avgArea / numTags, 1e-3);
+        return scale;
     }
 
     /**
@@ -317,15 +574,12 @@ public class AprilTagPhotonCamera {
      */
     protected Pose3d[] getPosesFromTargets(List<PhotonTrackedTarget> targets, Pose3d estimatedRobotPose,
             Transform3d robotToCam) {
-        List<Pose3d> poses = new ArrayList<Pose3d>();
-        for (int i = 0; i < targets.size(); i++) {
-            Transform3d camToTarget = targets.get(i).getBestCameraToTarget();
-            poses.add(estimatedRobotPose.plus(robotToCam).plus(camToTarget));
+        Pose3d[] poses = new Pose3d[targets.size()];
+        Pose3d cameraPose = estimatedRobotPose.plus(robotToCam);
+        for (int i = 0; i < poses.length; i++) {
+            poses[i] = cameraPose.plus(targets.get(i).getBestCameraToTarget());
         }
-
-        Pose3d[] poseArray = new Pose3d[poses.size()];
-        poses.toArray(poseArray);
-        return poseArray;
+        return poses;
     }
 
     /**
@@ -337,13 +591,66 @@ public class AprilTagPhotonCamera {
         return name;
     }
 
+    /**
+     * Gets the number of pipeline results read by the last call to
+     * {@link #update(Pose2d, Matrix, Matrix)}, including stale ones.
+     * 
+     * @return the number of results
+     */
+    @Log(name = "lastResultCount")
+    public int getLastResultCount() {
+        return loggedState.lastResultCount();
+    }
+
     /**
      * Gets whether the camera is currently producing a pose measurement.
      * 
      * @return if the camera is currently producing a pose measurement
      */
+    @Log(name = "hasPose")
     public boolean hasPose() {
-        return hasPose;
+        return loggedState.hasPose();
+    }
+
+    /**
+     * Gets the number of targets in the newest pipeline result.
+     * 
+     * @return the number of targets
+     */
+    @Log(name = "targetCount")
+    public int getTargetCount() {
+        return loggedState.targetCount();
+    }
+
+    /**
+     * Gets the age of the newest pipeline result when it was read.
+     * 
+     * @return the age of the result, in seconds
+     */
+    @Log(name = "lastFrameAge")
+    public double getLastFrameAge() {
+        return loggedState.lastFrameAge();
+    }
+
+    /**
+     * Gets the number of results discarded for being older than the maximum
+     * frame age.
+     * 
+     * @return the number of stale results
+     */
+    @Log(name = "staleFrameCount")
+    public int getStaleFrameCount() {
+        return loggedState.staleFrameCount();
+    }
+
+    /**
+     * Gets the number of single-tag estimates rejected by the jump check.
+     * 
+     * @return the number of rejected estimates
+     */
+    @Log(name = "rejectedJumpCount")
+    public int getRejectedJumpCount() {
+        return loggedState.rejectedJumpCount();
     }
 
     /**
@@ -367,6 +674,18 @@ public class AprilTagPhotonCamera {
         return robotToCam;
     }
 
+    /**
+     * Gets the tag positions of the camera's field layout.
+     * 
+     * @return the shared tag geometry
+     */
+    public AprilTagGeometry getTagGeometry() {
+        if (!tagGeometry.isCurrent(fieldLayout)) {
+            tagGeometry = AprilTagGeometry.of(fieldLayout);
+        }
+        return tagGeometry;
+    }
+
     /**
      * Gets the last estimated robot pose. Used for creating a log object containing
      * estimated robot poses from all valid cameras at once.
@@ -376,8 +695,9 @@ public class AprilTagPhotonCamera {
      * 
      * @return the last estimated robot pose.
      */
+    @Log(name = "estimatedRobotPose")
     public Pose3d getLoggedEstimatedRobotPose() {
-        return estimatedRobotPose;
+        return loggedState.estimatedRobotPose();
     }
 
     /**
@@ -390,8 +710,9 @@ public class AprilTagPhotonCamera {
      * 
      * @return the last estimated robot pose.
      */
+    @Log(name = "estimatedTrigPose")
     public Pose3d getLoggedEstimatedTrigRobotPose() {
-        return estimatedTrigPose;
+        return loggedState.estimatedTrigPose();
     }
 
     /**
@@ -403,8 +724,9 @@ public class AprilTagPhotonCamera {
      * 
      * @return the last estimated AprilTag positions.
      */
+    @Log(name = "detectedAprilTags")
     public Pose3d[] getLoggedDetectedAprilTags() {
-        return detectedAprilTags;
+        return loggedState.detectedAprilTags();
     }
 
     /**
@@ -416,7 +738,8 @@ public class AprilTagPhotonCamera {
      * 
      * @return the last estimated AprilTag positions.
      */
+    @Log(name = "detectedTrigAprilTags")
     public Pose3d[] getLoggedDetectedTrigAprilTags() {
-        return detectedTrigAprilTags;
+        return loggedState.detectedTrigAprilTags();
     }
 }
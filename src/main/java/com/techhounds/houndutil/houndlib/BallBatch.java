@@ -0,0 +1,428 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.Arrays;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Translation3d;
+
+/**
+ * A batch of balls in flight, stored as a struct of primitive arrays and
+ * integrated in tight loops with no allocation. Uses the same physics model as
+ * {@link BallPhysics#step(BallState, BallConstants, double)}.
+ *
+ * <p>
+ * The integration method is selectable with
+ * {@link #setIntegrationMethod(BallIntegrator.Method)}. Euler runs a dedicated
+ * loop; the other methods integrate each ball with a shared
+ * {@link BallIntegrator}, keeping a separate adaptive step size per ball.
+ *
+ * <p>
+ * Balls are addressed by index. Removing a ball moves the last ball into its
+ * slot, so indices are only stable between removals.
+ */
+public class BallBatch {
+    private final BallConstants constants;
+
+    private int count = 0;
+
+    private double[] px;
+    private double[] py;
+    private double[] pz;
+    // the position at the start of the last step, so collisions can be swept
+    private double[] prevX;
+    private double[] prevY;
+    private double[] prevZ;
+    private double[] vx;
+    private double[] vy;
+    private double[] vz;
+    private double[] wx;
+    private double[] wy;
+    private double[] wz;
+    // orientation quaternion
+    private double[] qw;
+    private double[] qx;
+    private double[] qy;
+    private double[] qz;
+    // the step size the adaptive integrator will try first for each ball
+    private double[] stepHint;
+
+    private final BallIntegrator integrator;
+    private final double[] accel = new double[3];
+    private final double[] state = new double[BallIntegrator.STATE_SIZE];
+
+    public BallBatch(BallConstants constants, int initialCapacity) {
+        this.constants = constants;
+        this.integrator = new BallIntegrator(constants, BallIntegrator.Method.EULER);
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    public BallBatch(BallConstants constants) {
+        this(constants, 32);
+    }
+
+    private void allocate(int capacity) {
+        px = resize(px, capacity);
+        py = resize(py, capacity);
+        pz = resize(pz, capacity);
+        prevX = resize(prevX, capacity);
+        prevY = resize(prevY, capacity);
+        prevZ = resize(prevZ, capacity);
+        vx = resize(vx, capacity);
+        vy = resize(vy, capacity);
+        vz = resize(vz, capacity);
+        wx = resize(wx, capacity);
+        wy = resize(wy, capacity);
+        wz = resize(wz, capacity);
+        qw = resize(qw, capacity);
+        qx = resize(qx, capacity);
+        qy = resize(qy, capacity);
+        qz = resize(qz, capacity);
+        stepHint = resize(stepHint, capacity);
+    }
+
+    private static double[] resize(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    /**
+     * Adds a ball to the batch. Only allocates when the batch grows past its
+     * capacity.
+     *
+     * @param state the initial state of the ball
+     * @return the index of the ball
+     */
+    public int add(BallState state) {
+        Translation3d p = state.pose.getTranslation();
+        Quaternion q = state.pose.getRotation().getQuaternion();
+        return add(p.getX(), p.getY(), p.getZ(),
+                state.velocity.getX(), state.velocity.getY(), state.velocity.getZ(),
+                state.omega.getX(), state.omega.getY(), state.omega.getZ(),
+                q.getW(), q.getX(), q.getY(), q.getZ());
+    }
+
+    /**
+     * Adds a ball to the batch. Only allocates when the batch grows past its
+     * capacity.
+     *
+     * @return the index of the ball
+     */
+    public int add(
+            double x, double y, double z,
+            double velX, double velY, double velZ,
+            double omegaX, double omegaY, double omegaZ,
+            double quatW, double quatX, double quatY, double quatZ) {
+        if (count == px.length) {
+            allocate(px.length * 2);
+        }
+        int i = count++;
+        px[i] = x;
+        py[i] = y;
+        pz[i] = z;
+        prevX[i] = x;
+        prevY[i] = y;
+        prevZ[i] = z;
+        vx[i] = velX;
+        vy[i] = velY;
+        vz[i] = velZ;
+        wx[i] = omegaX;
+        wy[i] = omegaY;
+        wz[i] = omegaZ;
+        qw[i] = quatW;
+        qx[i] = quatX;
+        qy[i] = quatY;
+        qz[i] = quatZ;
+        stepHint[i] = integrator.getNextStep();
+        return i;
+    }
+
+    /**
+     * Removes a ball by moving the last ball into its slot.
+     *
+     * @param i the index of the ball to remove
+     */
+    public void remove(int i) {
+        int last = --count;
+        if (i != last) {
+            px[i] = px[last];
+            py[i] = py[last];
+            pz[i] = pz[last];
+            prevX[i] = prevX[last];
+            prevY[i] = prevY[last];
+            prevZ[i] = prevZ[last];
+            vx[i] = vx[last];
+            vy[i] = vy[last];
+            vz[i] = vz[last];
+            wx[i] = wx[last];
+            wy[i] = wy[last];
+            wz[i] = wz[last];
+            qw[i] = qw[last];
+            qx[i] = qx[last];
+            qy[i] = qy[last];
+            qz[i] = qz[last];
+            stepHint[i] = stepHint[last];
+        }
+    }
+
+    /**
+     * Removes every ball below a height.
+     *
+     * @param minZ the minimum height to keep a ball, in meters
+     * @return the number of balls removed
+     */
+    public int removeBelow(double minZ) {
+        int removed = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            if (pz[i] < minZ) {
+                remove(i);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Sets the method used to integrate the balls.
+     *
+     * @param method the integration method
+     */
+    public void setIntegrationMethod(BallIntegrator.Method method) {
+        integrator.setMethod(method);
+    }
+
+    public BallIntegrator.Method getIntegrationMethod() {
+        return integrator.getMethod();
+    }
+
+    /**
+     * Gets the integrator used for the non-Euler methods, to configure its
+     * tolerance and step bounds or read its force evaluation count.
+     *
+     * @return the integrator
+     */
+    public BallIntegrator getIntegrator() {
+        return integrator;
+    }
+
+    /**
+     * Advances every ball by {@code dt}. With Euler, this is one step of the same
+     * semi-implicit update as
+     * {@link BallPhysics#step(BallState, BallConstants, double)}; see
+     * {@link BallIntegrator#integrate(double[], double)} for the other methods.
+     *
+     * @param dt the time to advance, in seconds
+     * @return the largest error estimate of any ball over the step
+     */
+    public double step(double dt) {
+        if (integrator.getMethod() != BallIntegrator.Method.EULER) {
+            return stepIntegrator(dt);
+        }
+
+        final double decay = Math.exp(-dt / constants.spinDecayTau);
+        double maxAccelSquared = 0;
+        for (int i = 0; i < count; i++) {
+            BallPhysics.computeAcceleration(vx[i], vy[i], vz[i], wx[i], wy[i], wz[i], constants, accel);
+            maxAccelSquared = Math.max(maxAccelSquared,
+                    Math.max(accel[0] * accel[0], Math.max(accel[1] * accel[1], accel[2] * accel[2])));
+
+            wx[i] *= decay;
+            wy[i] *= decay;
+            wz[i] *= decay;
+
+            vx[i] += accel[0] * dt;
+            vy[i] += accel[1] * dt;
+            vz[i] += accel[2] * dt;
+
+            prevX[i] = px[i];
+            prevY[i] = py[i];
+            prevZ[i] = pz[i];
+            px[i] += vx[i] * dt;
+            py[i] += vy[i] * dt;
+            pz[i] += vz[i] * dt;
+
+            integrateRotation(i, wx[i] * dt, wy[i] * dt, wz[i] * dt);
+        }
+        return 0.5 * Math.sqrt(maxAccelSquared) * dt * dt;
+    }
+
+    private double stepIntegrator(double dt) {
+        double maxError = 0;
+        for (int i = 0; i < count; i++) {
+            state[0] = px[i];
+            state[1] = py[i];
+            state[2] = pz[i];
+            state[3] = vx[i];
+            state[4] = vy[i];
+            state[5] = vz[i];
+            state[6] = wx[i];
+            state[7] = wy[i];
+            state[8] = wz[i];
+
+            integrator.setNextStep(stepHint[i]);
+            maxError = Math.max(maxError, integrator.integrate(state, dt));
+            stepHint[i] = integrator.getNextStep();
+
+            // the spin axis is fixed and its magnitude decays exponentially, so the
+            // exact rotation over the step is (w0 - w1) * tau
+            double tau = constants.spinDecayTau;
+            integrateRotation(i, (wx[i] - state[6]) * tau, (wy[i] - state[7]) * tau, (wz[i] - state[8]) * tau);
+
+            prevX[i] = px[i];
+            prevY[i] = py[i];
+            prevZ[i] = pz[i];
+            px[i] = state[0];
+            py[i] = state[1];
+            pz[i] = state[2];
+            vx[i] = state[3];
+            vy[i] = state[4];
+            vz[i] = state[5];
+            wx[i] = state[6];
+            wy[i] = state[7];
+            wz[i] = state[8];
+        }
+        return maxError;
+    }
+
+    /**
+     * Rotates the orientation of a ball by extrinsic roll, pitch and yaw angles,
+     * equivalent to {@code current.plus(new Rotation3d(roll, pitch, yaw))}.
+     */
+    private void integrateRotation(int i, double roll, double pitch, double yaw) {
+        double cr = Math.cos(roll * 0.5);
+        double sr = Math.sin(roll * 0.5);
+        double cp = Math.cos(pitch * 0.5);
+        double sp = Math.sin(pitch * 0.5);
+        double cy = Math.cos(yaw * 0.5);
+        double sy = Math.sin(yaw * 0.5);
+
+        double dw = cr * cp * cy + sr * sp * sy;
+        double dx = sr * cp * cy - cr * sp * sy;
+        double dy = cr * sp * cy + sr * cp * sy;
+        double dz = cr * cp * sy - sr * sp * cy;
+
+        // delta * current
+        double w = dw * qw[i] - dx * qx[i] - dy * qy[i] - dz * qz[i];
+        double x = dw * qx[i] + dx * qw[i] + dy * qz[i] - dz * qy[i];
+        double y = dw * qy[i] - dx * qz[i] + dy * qw[i] + dz * qx[i];
+        double z = dw * qz[i] + dx * qy[i] - dy * qx[i] + dz * qw[i];
+
+        double norm = Math.sqrt(w * w + x * x + y * y + z * z);
+        qw[i] = w / norm;
+        qx[i] = x / norm;
+        qy[i] = y / norm;
+        qz[i] = z / norm;
+    }
+
+    public double getX(int i) {
+        return px[i];
+    }
+
+    public double getY(int i) {
+        return py[i];
+    }
+
+    public double getZ(int i) {
+        return pz[i];
+    }
+
+    /**
+     * Gets the x position of a ball at the start of the last step.
+     *
+     * @param i the index of the ball
+     * @return the x position, in meters
+     */
+    public double getPreviousX(int i) {
+        return prevX[i];
+    }
+
+    /**
+     * Gets the y position of a ball at the start of the last step.
+     *
+     * @param i the index of the ball
+     * @return the y position, in meters
+     */
+    public double getPreviousY(int i) {
+        return prevY[i];
+    }
+
+    /**
+     * Gets the z position of a ball at the start of the last step.
+     *
+     * @param i the index of the ball
+     * @return the z position, in meters
+     */
+    public double getPreviousZ(int i) {
+        return prevZ[i];
+    }
+
+    public double getVelocityX(int i) {
+        return vx[i];
+    }
+
+    public double getVelocityY(int i) {
+        return vy[i];
+    }
+
+    public double getVelocityZ(int i) {
+        return vz[i];
+    }
+
+    /**
+     * Moves a ball, such as when resolving a collision. The move is not a step,
+     * so the previous position is moved too.
+     *
+     * @param i the index of the ball
+     */
+    public void setPosition(int i, double x, double y, double z) {
+        px[i] = x;
+        py[i] = y;
+        pz[i] = z;
+        prevX[i] = x;
+        prevY[i] = y;
+        prevZ[i] = z;
+    }
+
+    /**
+     * Sets the velocity of a ball, such as when resolving a collision.
+     *
+     * @param i the index of the ball
+     */
+    public void setVelocity(int i, double velX, double velY, double velZ) {
+        vx[i] = velX;
+        vy[i] = velY;
+        vz[i] = velZ;
+    }
+
+    /**
+     * Builds the pose of a ball. This allocates, so it should only be used when
+     * the pose is actually needed, such as for logging.
+     *
+     * @param i the index of the ball
+     * @return the pose of the ball
+     */
+    public Pose3d getPose(int i) {
+        return new Pose3d(px[i], py[i], pz[i],
+                new Rotation3d(new Quaternion(qw[i], qx[i], qy[i], qz[i])));
+    }
+
+    /**
+     * Copies the state of a ball into a new BallState.
+     *
+     * @param i the index of the ball
+     * @return the state of the ball
+     */
+    public BallState getState(int i) {
+        return new BallState(getPose(i),
+                new Translation3d(vx[i], vy[i], vz[i]),
+                new Translation3d(wx[i], wy[i], wz[i]));
+    }
+}
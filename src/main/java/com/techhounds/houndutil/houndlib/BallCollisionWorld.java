@@ -0,0 +1,526 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.StringLogEntry;
+
+/**
+ * Field geometry for {@link BallSimulator}: solid elements that balls bounce
+ * off, and scoring volumes that count a score when a ball enters them.
+ *
+ * <p>
+ * Solid elements are axis-aligned boxes, vertical cylinders and infinite
+ * planes. Boxes, cylinders and scoring volumes are bucketed into a uniform grid
+ * over the field, so each ball only checks the few elements near it; planes
+ * are few (floor, walls) and are checked against every ball.
+ *
+ * <p>
+ * Every ball ends in one of two ways: a score, when it enters a scoring
+ * volume, or a miss, when it lands on the floor or leaves the field. Bounces
+ * off solid elements are counted as hits. Counts are kept per world and per
+ * scoring volume, and events can also be written to a {@link DataLog}.
+ */
+public class BallCollisionWorld {
+    private static final int BOX = 0;
+    private static final int CYLINDER = 1;
+    private static final int STRIDE = 6;
+
+    private final double fieldLength;
+    private final double fieldWidth;
+    private final double cellSize;
+    private final double ballRadius;
+    private double restitution = 0.5;
+    private boolean floorIsMiss = true;
+
+    // solid elements and scoring volumes share storage. boxes store min x, y, z
+    // and max x, y, z; cylinders store center x, y, radius, and min and max z
+    private final List<double[]> elementList = new ArrayList<>();
+    private final List<Integer> typeList = new ArrayList<>();
+    private final List<Boolean> scoringList = new ArrayList<>();
+    private final List<Boolean> descendingList = new ArrayList<>();
+    private final List<String> nameList = new ArrayList<>();
+
+    // planes store a unit normal pointing out of the solid side, and an offset
+    private final List<double[]> planeList = new ArrayList<>();
+
+    // frozen copies of the lists, rebuilt when elements change
+    private double[] elements = new double[0];
+    private int[] types = new int[0];
+    private boolean[] scoring = new boolean[0];
+    private boolean[] requireDescending = new boolean[0];
+    private String[] names = new String[0];
+    private double[] planes = new double[0];
+    private int[] scoresPerVolume = new int[0];
+
+    // uniform grid: the element indices in cell c are
+    // cellElements[cellStart[c] .. cellStart[c + 1]]
+    private final int cellsX;
+    private final int cellsY;
+    private int[] cellStart = new int[0];
+    private int[] cellElements = new int[0];
+    private boolean dirty = true;
+
+    private int hits = 0;
+    private int misses = 0;
+    private int scores = 0;
+
+    private StringLogEntry eventLog = null;
+
+    /**
+     * Creates an empty world.
+     *
+     * @param fieldLength the length of the field along x, in meters. balls
+     *                    leaving {@code [0, fieldLength]} are misses.
+     * @param fieldWidth  the width of the field along y, in meters. balls leaving
+     *                    {@code [0, fieldWidth]} are misses.
+     * @param cellSize    the size of each grid cell, in meters
+     * @param ballRadius  the radius of the balls, in meters
+     */
+    public BallCollisionWorld(double fieldLength, double fieldWidth, double cellSize, double ballRadius) {
+        this.fieldLength = fieldLength;
+        this.fieldWidth = fieldWidth;
+        this.cellSize = cellSize;
+        this.ballRadius = ballRadius;
+        this.cellsX = Math.max(1, (int) Math.ceil(fieldLength / cellSize));
+        this.cellsY = Math.max(1, (int) Math.ceil(fieldWidth / cellSize));
+    }
+
+    /**
+     * Sets the fraction of normal velocity kept after a bounce.
+     *
+     * @param restitution the coefficient of restitution, from 0 to 1
+     */
+    public void setRestitution(double restitution) {
+        this.restitution = restitution;
+    }
+
+    /**
+     * Sets whether a ball touching the floor (z = 0) is a miss. If false, balls
+     * bounce off the floor like any other plane and only miss by leaving the
+     * field. Defaults to true.
+     *
+     * @param floorIsMiss whether touching the floor is a miss
+     */
+    public void setFloorIsMiss(boolean floorIsMiss) {
+        this.floorIsMiss = floorIsMiss;
+    }
+
+    /**
+     * Writes every event ({@code "hit"}, {@code "miss"} or
+     * {@code "score:<volume name>"}) to a DataLog entry.
+     *
+     * @param log  the log, usually {@code DataLogManager.getLog()}
+     * @param name the name of the entry
+     */
+    public void enableDataLog(DataLog log, String name) {
+        eventLog = new StringLogEntry(log, name);
+    }
+
+    /**
+     * Adds a solid axis-aligned box.
+     *
+     * @return the index of the element
+     */
+    public int addBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return addElement(BOX, new double[] { minX, minY, minZ, maxX, maxY, maxZ }, false, false, null);
+    }
+
+    /**
+     * Adds a solid cylinder with a vertical axis.
+     *
+     * @return the index of the element
+     */
+    public int addCylinder(double centerX, double centerY, double radius, double minZ, double maxZ) {
+        return addElement(CYLINDER, new double[] { centerX, centerY, radius, minZ, maxZ, 0 }, false, false,
+                null);
+    }
+
+    /**
+     * Adds a solid half-space, bounded by the plane through {@code (px, py, pz)}
+     * with the given outward normal.
+     */
+    public void addPlane(double px, double py, double pz, double normalX, double normalY, double normalZ) {
+        double norm = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+        double nx = normalX / norm;
+        double ny = normalY / norm;
+        double nz = normalZ / norm;
+        planeList.add(new double[] { nx, ny, nz, nx * px + ny * py + nz * pz });
+        dirty = true;
+    }
+
+    /**
+     * Adds an axis-aligned box that counts a score when a ball's center enters
+     * it.
+     *
+     * @param name              the name of the volume, used in events
+     * @param requireDescending whether only descending balls score
+     * @return the index of the element
+     */
+    public int addScoringBox(String name, double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ, boolean requireDescending) {
+        return addElement(BOX, new double[] { minX, minY, minZ, maxX, maxY, maxZ }, true, requireDescending,
+                name);
+    }
+
+    /**
+     * Adds a vertical cylinder that counts a score when a ball's center enters
+     * it.
+     *
+     * @param name              the name of the volume, used in events
+     * @param requireDescending whether only descending balls score
+     * @return the index of the element
+     */
+    public int addScoringCylinder(String name, double centerX, double centerY, double radius,
+            double minZ, double maxZ, boolean requireDescending) {
+        return addElement(CYLINDER, new double[] { centerX, centerY, radius, minZ, maxZ, 0 }, true,
+                requireDescending, name);
+    }
+
+    private int addElement(int type, double[] params, boolean isScoring, boolean descending, String name) {
+        elementList.add(params);
+        typeList.add(type);
+        scoringList.add(isScoring);
+        descendingList.add(descending);
+        nameList.add(name);
+        dirty = true;
+        return elementList.size() - 1;
+    }
+
+    private void rebuild() {
+        int n = elementList.size();
+        elements = new double[n * STRIDE];
+        types = new int[n];
+        scoring = new boolean[n];
+        requireDescending = new boolean[n];
+        names = new String[n];
+        scoresPerVolume = Arrays.copyOf(scoresPerVolume, n);
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(elementList.get(i), 0, elements, i * STRIDE, STRIDE);
+            types[i] = typeList.get(i);
+            scoring[i] = scoringList.get(i);
+            requireDescending[i] = descendingList.get(i);
+            names[i] = nameList.get(i);
+        }
+        planes = new double[planeList.size() * 4];
+        for (int i = 0; i < planeList.size(); i++) {
+            System.arraycopy(planeList.get(i), 0, planes, i * 4, 4);
+        }
+
+        // bucket each element into every cell its footprint, grown by the ball
+        // radius, overlaps. two passes: count, then fill
+        int cells = cellsX * cellsY;
+        cellStart = new int[cells + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] fill = pass == 0 ? null : Arrays.copyOf(cellStart, cells);
+            for (int e = 0; e < n; e++) {
+                int base = e * STRIDE;
+                double minX, minY, maxX, maxY;
+                if (types[e] == BOX) {
+                    minX = elements[base];
+                    minY = elements[base + 1];
+                    maxX = elements[base + 3];
+                    maxY = elements[base + 4];
+                } else {
+                    minX = elements[base] - elements[base + 2];
+                    minY = elements[base + 1] - elements[base + 2];
+                    maxX = elements[base] + elements[base + 2];
+                    maxY = elements[base + 1] + elements[base + 2];
+                }
+                int x0 = cellX(minX - ballRadius);
+                int x1 = cellX(maxX + ballRadius);
+                int y0 = cellY(minY - ballRadius);
+                int y1 = cellY(maxY + ballRadius);
+                for (int cx = x0; cx <= x1; cx++) {
+                    for (int cy = y0; cy <= y1; cy++) {
+                        int c = cy * cellsX + cx;
+                        if (pass == 0) {
+                            cellStart[c + 1]++;
+                        } else {
+                            cellElements[fill[c]++] = e;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int c = 0; c < cells; c++) {
+                    cellStart[c + 1] += cellStart[c];
+                }
+                cellElements = new int[cellStart[cells]];
+            }
+        }
+        dirty = false;
+    }
+
+    private int cellX(double x) {
+        return Math.max(0, Math.min(cellsX - 1, (int) Math.floor(x / cellSize)));
+    }
+
+    private int cellY(double y) {
+        return Math.max(0, Math.min(cellsY - 1, (int) Math.floor(y / cellSize)));
+    }
+
+    /**
+     * Checks every ball against the field, bouncing balls off solid elements and
+     * removing balls that score or miss. Call after each
+     * {@link BallBatch#step(double)}, since each ball is checked along the path
+     * it moved in the last step.
+     *
+     * @param balls the balls to check
+     */
+    public void process(BallBatch balls) {
+        if (dirty) {
+            rebuild();
+        }
+        for (int i = balls.size() - 1; i >= 0; i--) {
+            if (processBall(balls, i)) {
+                balls.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Checks one ball. The path from the ball's previous position to its current
+     * one is sampled at most one ball radius apart, so a fast ball can't pass
+     * through a thin element or scoring volume between steps. The sweep stops at
+     * the first contact with a solid element, since the bounce changes the path.
+     * Planes are only checked at the end, since a ball can't pass through a
+     * half-space.
+     *
+     * @return true if the ball scored or missed and should be removed
+     */
+    private boolean processBall(BallBatch balls, int i) {
+        double startX = balls.getPreviousX(i);
+        double startY = balls.getPreviousY(i);
+        double startZ = balls.getPreviousZ(i);
+        double dx = balls.getX(i) - startX;
+        double dy = balls.getY(i) - startY;
+        double dz = balls.getZ(i) - startZ;
+        double travel = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        int samples = Math.max(1, (int) Math.ceil(travel / ballRadius));
+
+        for (int s = 1; s <= samples; s++) {
+            double t = (double) s / samples;
+            double x = startX + dx * t;
+            double y = startY + dy * t;
+            double z = startZ + dz * t;
+
+            if (x < 0 || x > fieldLength || y < 0 || y > fieldWidth) {
+                record(-1);
+                return true;
+            }
+            if (floorIsMiss && z <= ballRadius) {
+                record(-1);
+                return true;
+            }
+
+            boolean contact = false;
+            int c = cellY(y) * cellsX + cellX(x);
+            for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                int e = cellElements[k];
+                if (scoring[e]) {
+                    if (contains(e, x, y, z) && (!requireDescending[e] || balls.getVelocityZ(i) < 0)) {
+                        record(e);
+                        return true;
+                    }
+                } else if (collideElement(balls, i, e, x, y, z)) {
+                    // later elements are checked from where the ball was pushed to
+                    contact = true;
+                    x = balls.getX(i);
+                    y = balls.getY(i);
+                    z = balls.getZ(i);
+                }
+            }
+            if (contact) {
+                break;
+            }
+        }
+        for (int p = 0; p < planes.length; p += 4) {
+            collidePlane(balls, i, p);
+        }
+        return false;
+    }
+
+    private boolean contains(int e, double x, double y, double z) {
+        int b = e * STRIDE;
+        if (types[e] == BOX) {
+            return x >= elements[b] && x <= elements[b + 3]
+                    && y >= elements[b + 1] && y <= elements[b + 4]
+                    && z >= elements[b + 2] && z <= elements[b + 5];
+        }
+        double dx = x - elements[b];
+        double dy = y - elements[b + 1];
+        return dx * dx + dy * dy <= elements[b + 2] * elements[b + 2]
+                && z >= elements[b + 3] && z <= elements[b + 4];
+    }
+
+    /**
+     * Bounces a ball off a solid element if it touches it at a point on its path.
+     *
+     * @return true if the ball touched the element and was moved to that point
+     */
+    private boolean collideElement(BallBatch balls, int i, int e, double x, double y, double z) {
+        int b = e * STRIDE;
+
+        // closest point on the solid to the ball center
+        double qx, qy, qz;
+        if (types[e] == BOX) {
+            qx = Math.max(elements[b], Math.min(x, elements[b + 3]));
+            qy = Math.max(elements[b + 1], Math.min(y, elements[b + 4]));
+            qz = Math.max(elements[b + 2], Math.min(z, elements[b + 5]));
+        } else {
+            double dx = x - elements[b];
+            double dy = y - elements[b + 1];
+            double rho = Math.hypot(dx, dy);
+            double scale = rho > elements[b + 2] ? elements[b + 2] / rho : 1.0;
+            qx = elements[b] + dx * scale;
+            qy = elements[b + 1] + dy * scale;
+            qz = Math.max(elements[b + 3], Math.min(z, elements[b + 4]));
+        }
+
+        double nx = x - qx;
+        double ny = y - qy;
+        double nz = z - qz;
+        double dist = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (dist >= ballRadius) {
+            return false;
+        }
+
+        double depth;
+        if (dist > 1e-9) {
+            nx /= dist;
+            ny /= dist;
+            nz /= dist;
+            depth = ballRadius - dist;
+        } else {
+            // the center is inside the solid, so push out through the nearest face
+            double[] normal = insideNormal(e, x, y, z);
+            nx = normal[0];
+            ny = normal[1];
+            nz = normal[2];
+            depth = normal[3] + ballRadius;
+        }
+        bounce(balls, i, x, y, z, nx, ny, nz, depth);
+        return true;
+    }
+
+    private double[] insideNormal(int e, double x, double y, double z) {
+        int b = e * STRIDE;
+        double[] best = { 0, 0, 1, Double.POSITIVE_INFINITY };
+        if (types[e] == BOX) {
+            double[][] faces = {
+                    { -1, 0, 0, x - elements[b] }, { 1, 0, 0, elements[b + 3] - x },
+                    { 0, -1, 0, y - elements[b + 1] }, { 0, 1, 0, elements[b + 4] - y },
+                    { 0, 0, -1, z - elements[b + 2] }, { 0, 0, 1, elements[b + 5] - z } };
+            for (double[] face : faces) {
+                if (face[3] < best[3]) {
+                    best = face;
+                }
+            }
+        } else {
+            double dx = x - elements[b];
+            double dy = y - elements[b + 1];
+            double rho = Math.hypot(dx, dy);
+            best = new double[] { 0, 0, -1, z - elements[b + 3] };
+            if (elements[b + 4] - z < best[3]) {
+                best = new double[] { 0, 0, 1, elements[b + 4] - z };
+            }
+            if (elements[b + 2] - rho < best[3] && rho > 1e-9) {
+                best = new double[] { dx / rho, dy / rho, 0, elements[b + 2] - rho };
+            }
+        }
+        return best;
+    }
+
+    private void collidePlane(BallBatch balls, int i, int p) {
+        double x = balls.getX(i);
+        double y = balls.getY(i);
+        double z = balls.getZ(i);
+        double separation = planes[p] * x + planes[p + 1] * y + planes[p + 2] * z - planes[p + 3];
+        if (separation < ballRadius) {
+            bounce(balls, i, x, y, z, planes[p], planes[p + 1], planes[p + 2], ballRadius - separation);
+        }
+    }
+
+    /**
+     * Pushes a ball out along a normal, and reflects its velocity if it is moving
+     * into the surface.
+     */
+    private void bounce(BallBatch balls, int i, double x, double y, double z,
+            double nx, double ny, double nz, double depth) {
+        balls.setPosition(i, x + nx * depth, y + ny * depth, z + nz * depth);
+
+        double vx = balls.getVelocityX(i);
+        double vy = balls.getVelocityY(i);
+        double vz = balls.getVelocityZ(i);
+        double vn = vx * nx + vy * ny + vz * nz;
+        if (vn < 0) {
+            double impulse = -(1.0 + restitution) * vn;
+            balls.setVelocity(i, vx + impulse * nx, vy + impulse * ny, vz + impulse * nz);
+            hits++;
+            if (eventLog != null) {
+                eventLog.append("hit");
+            }
+        }
+    }
+
+    /**
+     * Records a score in a volume, or a miss if {@code volume} is -1.
+     */
+    private void record(int volume) {
+        if (volume < 0) {
+            misses++;
+            if (eventLog != null) {
+                eventLog.append("miss");
+            }
+        } else {
+            scores++;
+            scoresPerVolume[volume]++;
+            if (eventLog != null) {
+                eventLog.append("score:" + names[volume]);
+            }
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getScores() {
+        return scores;
+    }
+
+    /**
+     * Gets the number of scores in one scoring volume.
+     *
+     * @param volume the index returned when the volume was added
+     * @return the number of scores
+     */
+    public int getScores(int volume) {
+        return volume < scoresPerVolume.length ? scoresPerVolume[volume] : 0;
+    }
+
+    /**
+     * Gets the fraction of finished balls that scored.
+     *
+     * @return the accuracy, from 0 to 1, or NaN if no ball has finished
+     */
+    public double getAccuracy() {
+        int finished = scores + misses;
+        return finished == 0 ? Double.NaN : (double) scores / finished;
+    }
+
+    /** Resets every counter to zero. */
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+        scores = 0;
+        Arrays.fill(scoresPerVolume, 0);
+    }
+}
@@ -0,0 +1,300 @@
+package com.techhounds.houndutil.houndlib;
+
+/**
+ * Integrates the flight of a ball under gravity, drag and the Magnus effect,
+ * using a selectable method. Works on a primitive state vector of
+ * {@code [x, y, z, vx, vy, vz, wx, wy, wz]}, where the spin decays with the
+ * time constant in {@link BallConstants#spinDecayTau}.
+ *
+ * <p>
+ * Every step reports an estimate of its local position/velocity error, and the
+ * integrator counts force evaluations so methods can be compared. Scratch
+ * buffers are allocated once, so an instance should be reused and is not
+ * thread-safe.
+ */
+public class BallIntegrator {
+    /** The integration method. */
+    public enum Method {
+        /**
+         * Semi-implicit Euler, identical to
+         * {@link BallPhysics#step(BallState, BallConstants, double)}. One force
+         * evaluation per step. The reported error is the position truncation error,
+         * {@code |a| * dt^2 / 2}.
+         */
+        EULER,
+        /**
+         * Classic fourth-order Runge-Kutta with a fixed step. Four force evaluations
+         * per step. The reported error is the difference from the second-order
+         * midpoint solution built from the same stages, which overestimates the
+         * true error.
+         */
+        RK4,
+        /**
+         * Adaptive fifth-order Dormand-Prince with an embedded fourth-order error
+         * estimate. Six force evaluations per accepted step (the last stage is
+         * reused), with the step size chosen to keep the error within
+         * {@link BallIntegrator#setTolerance(double)}.
+         */
+        DORMAND_PRINCE
+    }
+
+    /** The size of the state vector. */
+    public static final int STATE_SIZE = 9;
+
+    // Dormand-Prince tableau
+    private static final double A21 = 1.0 / 5.0;
+    private static final double A31 = 3.0 / 40.0, A32 = 9.0 / 40.0;
+    private static final double A41 = 44.0 / 45.0, A42 = -56.0 / 15.0, A43 = 32.0 / 9.0;
+    private static final double A51 = 19372.0 / 6561.0, A52 = -25360.0 / 2187.0, A53 = 64448.0 / 6561.0,
+            A54 = -212.0 / 729.0;
+    private static final double A61 = 9017.0 / 3168.0, A62 = -355.0 / 33.0, A63 = 46732.0 / 5247.0,
+            A64 = 49.0 / 176.0, A65 = -5103.0 / 18656.0;
+    private static final double B1 = 35.0 / 384.0, B3 = 500.0 / 1113.0, B4 = 125.0 / 192.0,
+            B5 = -2187.0 / 6784.0, B6 = 11.0 / 84.0;
+    // difference between the fifth and fourth order weights
+    private static final double E1 = 71.0 / 57600.0, E3 = -71.0 / 16695.0, E4 = 71.0 / 1920.0,
+            E5 = -17253.0 / 339200.0, E6 = 22.0 / 525.0, E7 = -1.0 / 40.0;
+
+    private final BallConstants constants;
+    private Method method;
+
+    private double tolerance = 1e-6;
+    private double minStep = 1e-5;
+    private double maxStep = 0.1;
+    /** The step size the adaptive method will try first. */
+    private double nextStep = 0.01;
+
+    private long evaluations = 0;
+
+    private final double[] accel = new double[3];
+    private final double[] k1 = new double[STATE_SIZE];
+    private final double[] k2 = new double[STATE_SIZE];
+    private final double[] k3 = new double[STATE_SIZE];
+    private final double[] k4 = new double[STATE_SIZE];
+    private final double[] k5 = new double[STATE_SIZE];
+    private final double[] k6 = new double[STATE_SIZE];
+    private final double[] k7 = new double[STATE_SIZE];
+    private final double[] tmp = new double[STATE_SIZE];
+    private final double[] next = new double[STATE_SIZE];
+
+    public BallIntegrator(BallConstants constants, Method method) {
+        this.constants = constants;
+        this.method = method;
+    }
+
+    public BallConstants getConstants() {
+        return constants;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public void setMethod(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * Sets the maximum allowed local error of an adaptive step, in meters for
+     * position and m/s for velocity.
+     *
+     * @param tolerance the error tolerance
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Sets the bounds on the adaptive step size.
+     *
+     * @param minStep the smallest step, in seconds. Steps this small are accepted
+     *                even if they exceed the tolerance.
+     * @param maxStep the largest step, in seconds
+     */
+    public void setStepBounds(double minStep, double maxStep) {
+        this.minStep = minStep;
+        this.maxStep = maxStep;
+    }
+
+    /**
+     * Gets the step size the adaptive method will try first on the next call,
+     * which is the last accepted step size scaled by its error.
+     *
+     * @return the next step size, in seconds
+     */
+    public double getNextStep() {
+        return nextStep;
+    }
+
+    /**
+     * Sets the step size the adaptive method will try first on the next call.
+     * Useful to keep a separate step size per ball.
+     *
+     * @param nextStep the next step size, in seconds
+     */
+    public void setNextStep(double nextStep) {
+        this.nextStep = nextStep;
+    }
+
+    /**
+     * Gets the total number of force evaluations since construction or the last
+     * reset.
+     *
+     * @return the number of force evaluations
+     */
+    public long getEvaluationCount() {
+        return evaluations;
+    }
+
+    public void resetEvaluationCount() {
+        evaluations = 0;
+    }
+
+    /**
+     * Computes the time derivative of the state.
+     */
+    private void derivative(double[] y, double[] dydt) {
+        BallPhysics.computeAcceleration(y[3], y[4], y[5], y[6], y[7], y[8], constants, accel);
+        evaluations++;
+        dydt[0] = y[3];
+        dydt[1] = y[4];
+        dydt[2] = y[5];
+        dydt[3] = accel[0];
+        dydt[4] = accel[1];
+        dydt[5] = accel[2];
+        dydt[6] = -y[6] / constants.spinDecayTau;
+        dydt[7] = -y[7] / constants.spinDecayTau;
+        dydt[8] = -y[8] / constants.spinDecayTau;
+    }
+
+    /**
+     * Advances the state by {@code dt} in place. The Euler and RK4 methods take a
+     * single step of {@code dt}; the Dormand-Prince method takes as many adaptive
+     * steps as it needs to cover {@code dt}.
+     *
+     * @param y  the state vector, modified in place
+     * @param dt the time to advance, in seconds
+     * @return the estimated error accumulated over the step, in meters (position)
+     *         or m/s (velocity), whichever is larger
+     */
+    public double integrate(double[] y, double dt) {
+        switch (method) {
+            case RK4:
+                return stepRK4(y, dt);
+            case DORMAND_PRINCE:
+                return integrateDormandPrince(y, dt);
+            case EULER:
+            default:
+                return stepEuler(y, dt);
+        }
+    }
+
+    private double stepEuler(double[] y, double dt) {
+        derivative(y, k1);
+        double decay = Math.exp(-dt / constants.spinDecayTau);
+        double error = 0;
+        for (int j = 0; j < 3; j++) {
+            y[6 + j] *= decay;
+            y[3 + j] += k1[3 + j] * dt;
+            y[j] += y[3 + j] * dt;
+            error = Math.max(error, Math.abs(0.5 * k1[3 + j] * dt * dt));
+        }
+        return error;
+    }
+
+    private double stepRK4(double[] y, double dt) {
+        derivative(y, k1);
+        for (int j = 0; j < STATE_SIZE; j++) {
+            tmp[j] = y[j] + 0.5 * dt * k1[j];
+        }
+        derivative(tmp, k2);
+        for (int j = 0; j < STATE_SIZE; j++) {
+            tmp[j] = y[j] + 0.5 * dt * k2[j];
+        }
+        derivative(tmp, k3);
+        for (int j = 0; j < STATE_SIZE; j++) {
+            tmp[j] = y[j] + dt * k3[j];
+        }
+        derivative(tmp, k4);
+
+        double error = 0;
+        for (int j = 0; j < STATE_SIZE; j++) {
+            double rk4 = y[j] + dt / 6.0 * (k1[j] + 2.0 * k2[j] + 2.0 * k3[j] + k4[j]);
+            if (j < 6) {
+                // compare against the midpoint method, y + dt * k2
+                error = Math.max(error, Math.abs(rk4 - (y[j] + dt * k2[j])));
+            }
+            y[j] = rk4;
+        }
+        return error;
+    }
+
+    private double integrateDormandPrince(double[] y, double dt) {
+        double remaining = dt;
+        double h = Math.max(minStep, Math.min(nextStep, maxStep));
+        double totalError = 0;
+        boolean haveK1 = false;
+
+        while (remaining > 1e-12) {
+            // the step the controller chose, before it is cut short to end on dt
+            double proposed = h;
+            boolean lastStep = h >= remaining;
+            if (lastStep) {
+                h = remaining;
+            }
+            if (!haveK1) {
+                derivative(y, k1);
+                haveK1 = true;
+            }
+
+            for (int j = 0; j < STATE_SIZE; j++) {
+                tmp[j] = y[j] + h * A21 * k1[j];
+            }
+            derivative(tmp, k2);
+            for (int j = 0; j < STATE_SIZE; j++) {
+                tmp[j] = y[j] + h * (A31 * k1[j] + A32 * k2[j]);
+            }
+            derivative(tmp, k3);
+            for (int j = 0; j < STATE_SIZE; j++) {
+                tmp[j] = y[j] + h * (A41 * k1[j] + A42 * k2[j] + A43 * k3[j]);
+            }
+            derivative(tmp, k4);
+            for (int j = 0; j < STATE_SIZE; j++) {
+                tmp[j] = y[j] + h * (A51 * k1[j] + A52 * k2[j] + A53 * k3[j] + A54 * k4[j]);
+            }
+            derivative(tmp, k5);
+            for (int j = 0; j < STATE_SIZE; j++) {
+                tmp[j] = y[j] + h * (A61 * k1[j] + A62 * k2[j] + A63 * k3[j] + A64 * k4[j] + A65 * k5[j]);
+            }
+            derivative(tmp, k6);
+            for (int j = 0; j < STATE_SIZE; j++) {
+                next[j] = y[j] + h * (B1 * k1[j] + B3 * k3[j] + B4 * k4[j] + B5 * k5[j] + B6 * k6[j]);
+            }
+            derivative(next, k7);
+
+            double error = 0;
+            for (int j = 0; j < 6; j++) {
+                error = Math.max(error, Math.abs(h * (E1 * k1[j] + E3 * k3[j] + E4 * k4[j] + E5 * k5[j]
+                        + E6 * k6[j] + E7 * k7[j])));
+            }
+
+            // standard step size controller, with a safety factor and bounded growth
+            double scale = error == 0 ? 5.0 : Math.max(0.2, Math.min(5.0, 0.9 * Math.pow(tolerance / error, 0.2)));
+
+            if (error <= tolerance || h <= minStep) {
+                System.arraycopy(next, 0, y, 0, STATE_SIZE);
+                // first same as last: the last stage is the derivative at the new state
+                System.arraycopy(k7, 0, k1, 0, STATE_SIZE);
+                remaining -= h;
+                totalError += error;
+                // a cut-short step says little about the step size, so keep the one from
+                // before the cut for the next interval
+                nextStep = lastStep ? proposed : Math.max(minStep, Math.min(maxStep, h * scale));
+                h = nextStep;
+            } else {
+                h = Math.max(minStep, h * scale);
+            }
+        }
+        return totalError;
+    }
+}
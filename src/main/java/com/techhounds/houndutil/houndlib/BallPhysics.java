@@ -65,6 +65,52 @@ public final class BallPhysics {
         return current.plus(delta);
     }
 
+    /**
+     * Computes the acceleration of a ball from gravity, drag and the Magnus
+     * effect, without allocating. Equivalent to the forces used by
+     * {@link #step(BallState, BallConstants, double)}.
+     *
+     * @param vx  the x velocity of the ball, in m/s
+     * @param vy  the y velocity of the ball, in m/s
+     * @param vz  the z velocity of the ball, in m/s
+     * @param wx  the x angular velocity of the ball, in rad/s
+     * @param wy  the y angular velocity of the ball, in rad/s
+     * @param wz  the z angular velocity of the ball, in rad/s
+     * @param c   the ball constants
+     * @param out the array to write the x, y and z acceleration into, in m/s^2
+     */
+    public static void computeAcceleration(
+            double vx, double vy, double vz,
+            double wx, double wy, double wz,
+            BallConstants c, double[] out) {
+
+        double ax = 0;
+        double ay = 0;
+        double az = -c.gravity;
+
+        double speed = Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (speed >= 1e-6) {
+            double drag = -0.5 * c.rho * c.cd * c.area * speed / c.mass;
+            ax += vx * drag;
+            ay += vy * drag;
+            az += vz * drag;
+
+            double wMag = Math.sqrt(wx * wx + wy * wy + wz * wz);
+            if (wMag >= 1e-6) {
+                double cl = Math.min(c.clGain * wMag * c.radius / speed, c.clMax);
+                // cross(wHat, vHat) * 0.5 * rho * cl * A * speed^2 / mass
+                double magnus = 0.5 * c.rho * cl * c.area * speed / (wMag * c.mass);
+                ax += (wy * vz - wz * vy) * magnus;
+                ay += (wz * vx - wx * vz) * magnus;
+                az += (wx * vy - wy * vx) * magnus;
+            }
+        }
+
+        out[0] = ax;
+        out[1] = ay;
+        out[2] = az;
+    }
+
     public static void step(
             BallState s, BallConstants c, double dt) {
 
@@ -83,6 +129,41 @@ public final class BallPhysics {
                 integrateRotation(s.pose.getRotation(), s.omega, dt));
     }
 
+    /**
+     * Advances a ball by {@code dt} using the method of the given integrator.
+     * With {@link BallIntegrator.Method#EULER} this takes one Euler step, like
+     * {@link #step(BallState, BallConstants, double)}; the higher-order methods
+     * can cover a whole flight in far fewer force evaluations.
+     *
+     * @param s          the state of the ball, updated in place
+     * @param integrator the integrator to use, built with the ball's constants
+     * @param dt         the time to advance, in seconds
+     * @return the estimated error over the step, see
+     *         {@link BallIntegrator#integrate(double[], double)}
+     */
+    public static double step(
+            BallState s, BallIntegrator integrator, double dt) {
+
+        Translation3d p = s.pose.getTranslation();
+        double[] y = {
+                p.getX(), p.getY(), p.getZ(),
+                s.velocity.getX(), s.velocity.getY(), s.velocity.getZ(),
+                s.omega.getX(), s.omega.getY(), s.omega.getZ() };
+
+        double error = integrator.integrate(y, dt);
+
+        // the spin axis is fixed and its magnitude decays exponentially, so the
+        // exact rotation over the step is (w0 - w1) * tau
+        Translation3d newOmega = new Translation3d(y[6], y[7], y[8]);
+        Translation3d rotation = s.omega.minus(newOmega).times(integrator.getConstants().spinDecayTau);
+
+        s.omega = newOmega;
+        s.velocity = new Translation3d(y[3], y[4], y[5]);
+        s.pose = new Pose3d(new Translation3d(y[0], y[1], y[2]),
+                integrateRotation(s.pose.getRotation(), rotation, 1.0));
+        return error;
+    }
+
     public static ShotSolution solveBallisticWithIncomingAngle(
             Pose3d shooterPose,
             Pose3d targetPose,
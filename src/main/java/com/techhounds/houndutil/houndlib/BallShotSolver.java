@@ -0,0 +1,465 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+import com.techhounds.houndutil.houndlib.BallPhysics.ShotSolution;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Translation3d;
+
+/**
+ * Solves for launch parameters using the full drag and Magnus model in
+ * {@link BallConstants}, rather than the drag-free closed forms in
+ * {@link BallPhysics}. Uses the shooting method: candidate shots are simulated
+ * with {@link BallIntegrator} until they reach the horizontal distance of the
+ * target, and the miss is driven to zero with a secant (one unknown) or Newton
+ * (two unknowns) iteration.
+ *
+ * <p>
+ * Each solve is warm-started from the drag-free solution and from the previous
+ * answer of the same kind of solve, whichever misses by less, and is bounded
+ * by an iteration count and a wall-clock budget so it can run every loop. If
+ * the budget runs out, the best solution found so far is returned and
+ * {@link #isConverged()} is false.
+ *
+ * <p>
+ * Shots are modeled in the vertical plane through the shooter and the target,
+ * with optional backspin about the axis perpendicular to that plane. An
+ * instance keeps scratch state and is not thread-safe.
+ */
+public class BallShotSolver {
+    /** The kinds of solve, each of which keeps its own warm start. */
+    private enum Mode {
+        FIXED_SPEED,
+        FIXED_PITCH,
+        INCOMING_ANGLE
+    }
+
+    private final BallConstants constants;
+    private final BallIntegrator integrator;
+
+    private double stepSeconds = 0.02;
+    private double maxFlightTime = 5.0;
+    private int maxIterations = 8;
+    private double timeBudgetSeconds = 0.002;
+    private double heightTolerance = 0.005;
+    private double angleTolerance = 0.005;
+    private double backspin = 0.0;
+    private double radialVelocity = 0.0;
+
+    // the previous answer of each kind of solve, indexed by Mode
+    private final double[] previousPitch = new double[Mode.values().length];
+    private final double[] previousSpeed = new double[Mode.values().length];
+
+    private int lastIterations = 0;
+    private double lastResidual = Double.NaN;
+    private boolean lastConverged = false;
+
+    // the shot being solved for
+    private double targetDistance;
+    private double targetHeight;
+    private double fixedPitch;
+    private double fixedSpeed;
+
+    // results of the last simulation
+    private double simHeight;
+    private double simAngle;
+    private double simTime;
+
+    private final double[] state = new double[BallIntegrator.STATE_SIZE];
+    private final double[] saved = new double[BallIntegrator.STATE_SIZE];
+
+    private final DoubleUnaryOperator pitchResidual = pitch -> simulate(pitch, fixedSpeed)
+            ? simHeight - targetHeight
+            : Double.NaN;
+    private final DoubleUnaryOperator speedResidual = speed -> simulate(fixedPitch, speed)
+            ? simHeight - targetHeight
+            : Double.NaN;
+
+    public BallShotSolver(BallConstants constants) {
+        this.constants = constants;
+        this.integrator = new BallIntegrator(constants, BallIntegrator.Method.RK4);
+        reset();
+    }
+
+    public BallConstants getConstants() {
+        return constants;
+    }
+
+    /**
+     * Sets the fixed RK4 step used to simulate candidate shots.
+     *
+     * @param stepSeconds the step, in seconds
+     */
+    public void setStepSeconds(double stepSeconds) {
+        this.stepSeconds = stepSeconds;
+    }
+
+    /**
+     * Sets the limits on each solve.
+     *
+     * @param maxIterations     the maximum number of solver iterations
+     * @param timeBudgetSeconds the maximum wall-clock time, in seconds
+     */
+    public void setBudget(int maxIterations, double timeBudgetSeconds) {
+        this.maxIterations = maxIterations;
+        this.timeBudgetSeconds = timeBudgetSeconds;
+    }
+
+    /**
+     * Sets the tolerances for a solve to count as converged.
+     *
+     * @param heightTolerance the allowed height miss at the target, in meters
+     * @param angleTolerance  the allowed incoming pitch error, in radians
+     */
+    public void setTolerances(double heightTolerance, double angleTolerance) {
+        this.heightTolerance = heightTolerance;
+        this.angleTolerance = angleTolerance;
+    }
+
+    /**
+     * Sets the backspin of launched balls. Positive backspin lifts the ball.
+     *
+     * @param backspinRadPerSec the backspin, in rad/s
+     */
+    public void setBackspin(double backspinRadPerSec) {
+        this.backspin = backspinRadPerSec;
+    }
+
+    /**
+     * Sets the velocity of the robot toward the target, which the ball inherits.
+     * Launch speeds are relative to the robot.
+     *
+     * @param radialVelocity the velocity toward the target, in m/s. negative when
+     *                       moving away.
+     */
+    public void setRadialVelocity(double radialVelocity) {
+        this.radialVelocity = radialVelocity;
+    }
+
+    /**
+     * Sets the longest flight to simulate before giving up on a candidate shot.
+     *
+     * @param maxFlightTime the longest flight, in seconds
+     */
+    public void setMaxFlightTime(double maxFlightTime) {
+        this.maxFlightTime = maxFlightTime;
+    }
+
+    /**
+     * Forgets the previous solutions, so the next solve of each kind is
+     * warm-started from the drag-free solution only.
+     */
+    public void reset() {
+        Arrays.fill(previousPitch, Double.NaN);
+        Arrays.fill(previousSpeed, Double.NaN);
+    }
+
+    /**
+     * Gets the number of iterations the last solve took.
+     *
+     * @return the number of iterations
+     */
+    public int getIterations() {
+        return lastIterations;
+    }
+
+    /**
+     * Gets the height miss of the last solution at the target, in meters.
+     *
+     * @return the residual, or NaN if no candidate shot reached the target
+     */
+    public double getResidual() {
+        return lastResidual;
+    }
+
+    /**
+     * Gets whether the last solve met its tolerances within its budget.
+     *
+     * @return true if the last solve converged
+     */
+    public boolean isConverged() {
+        return lastConverged;
+    }
+
+    /**
+     * Simulates a shot until it reaches the target distance, storing the height,
+     * incoming pitch and flight time at that point.
+     *
+     * @return false if the shot never reaches the target distance
+     */
+    private boolean simulate(double pitch, double speed) {
+        state[0] = 0;
+        state[1] = 0;
+        state[2] = 0;
+        state[3] = speed * Math.cos(pitch) + radialVelocity;
+        state[4] = 0;
+        state[5] = speed * Math.sin(pitch);
+        // backspin about the axis that makes the Magnus force lift the ball
+        state[6] = 0;
+        state[7] = -backspin;
+        state[8] = 0;
+
+        double t = 0;
+        while (t < maxFlightTime) {
+            if (state[3] <= 1e-6) {
+                return false;
+            }
+            System.arraycopy(state, 0, saved, 0, state.length);
+            integrator.integrate(state, stepSeconds);
+            if (state[0] >= targetDistance) {
+                // back up and land on the target distance with short steps, which
+                // converge quickly since horizontal speed changes slowly
+                System.arraycopy(saved, 0, state, 0, state.length);
+                for (int i = 0; i < 3; i++) {
+                    double remaining = (targetDistance - state[0]) / state[3];
+                    integrator.integrate(state, remaining);
+                    t += remaining;
+                }
+                simHeight = state[2];
+                simAngle = Math.atan2(state[5], state[3]);
+                simTime = t;
+                return true;
+            }
+            t += stepSeconds;
+        }
+        return false;
+    }
+
+    private boolean setTarget(Pose3d shooterPose, Pose3d targetPose) {
+        Translation3d s = shooterPose.getTranslation();
+        Translation3d t = targetPose.getTranslation();
+        targetDistance = Math.hypot(t.getX() - s.getX(), t.getY() - s.getY());
+        targetHeight = t.getZ() - s.getZ();
+        return targetDistance >= 1e-9;
+    }
+
+    /**
+     * Finds a root of the residual with the secant method, starting from the
+     * better of two guesses.
+     *
+     * @return the value with the smallest residual of any evaluated, which is not
+     *         always the last iterate
+     */
+    private double secant(DoubleUnaryOperator residual, double x0, double x1, long deadline) {
+        double f0 = residual.applyAsDouble(x0);
+        double f1 = residual.applyAsDouble(x1);
+        if (Double.isNaN(f1) || (!Double.isNaN(f0) && Math.abs(f0) < Math.abs(f1))) {
+            double x = x0;
+            double f = f0;
+            x0 = x1;
+            f0 = f1;
+            x1 = x;
+            f1 = f;
+        }
+        double bestX = x1;
+        double bestF = f1;
+        lastIterations = 0;
+        while (!Double.isNaN(f1) && Math.abs(f1) > heightTolerance
+                && lastIterations < maxIterations && System.nanoTime() < deadline) {
+            lastIterations++;
+            double x2;
+            if (Double.isNaN(f0) || f1 == f0) {
+                // no usable slope, so probe a little way away
+                x2 = x1 + 0.01 * Math.max(Math.abs(x1), 1.0);
+            } else {
+                x2 = x1 - f1 * (x1 - x0) / (f1 - f0);
+            }
+            double f2 = residual.applyAsDouble(x2);
+            if (Double.isNaN(f2)) {
+                // the candidate fell short entirely, so retreat toward the last good
+                // value
+                x2 = 0.5 * (x1 + x2);
+                f2 = residual.applyAsDouble(x2);
+                if (Double.isNaN(f2)) {
+                    break;
+                }
+            }
+            if (Math.abs(f2) < Math.abs(bestF)) {
+                bestX = x2;
+                bestF = f2;
+            }
+            x0 = x1;
+            f0 = f1;
+            x1 = x2;
+            f1 = f2;
+        }
+        lastResidual = bestF;
+        lastConverged = !Double.isNaN(bestF) && Math.abs(bestF) <= heightTolerance;
+        return bestX;
+    }
+
+    /**
+     * Solves for the launch pitch that hits the target at a fixed launch speed.
+     * The drag-free warm start is
+     * {@link BallPhysics#solveBallisticWithSpeed(Pose3d, Pose3d, double)}, so the
+     * same arc is chosen.
+     *
+     * @param shooterPose the pose of the shooter exit
+     * @param targetPose  the pose of the target
+     * @param launchSpeed the launch speed, in m/s
+     * @return the solution, or all zeros if no candidate shot reached the target
+     */
+    public ShotSolution solveWithSpeed(Pose3d shooterPose, Pose3d targetPose, double launchSpeed) {
+        long deadline = System.nanoTime() + (long) (timeBudgetSeconds * 1e9);
+        if (!setTarget(shooterPose, targetPose)) {
+            throw new IllegalArgumentException("Horizontal distance too small");
+        }
+        fixedSpeed = launchSpeed;
+
+        ShotSolution analytic = BallPhysics.solveBallisticWithSpeed(shooterPose, targetPose, launchSpeed);
+        double x0 = analytic.launchSpeed() > 0 ? analytic.launchPitchRad() : Math.PI / 4.0;
+        double previous = previousPitch[Mode.FIXED_SPEED.ordinal()];
+        double x1 = Double.isNaN(previous) ? x0 + 0.01 : previous;
+
+        double pitch = secant(pitchResidual, x0, x1, deadline);
+        return finish(Mode.FIXED_SPEED, pitch, launchSpeed);
+    }
+
+    /**
+     * Solves for the launch speed that hits the target at a fixed launch pitch,
+     * such as for a shooter with a fixed hood.
+     *
+     * @param shooterPose    the pose of the shooter exit
+     * @param targetPose     the pose of the target
+     * @param launchPitchRad the launch pitch, in radians
+     * @return the solution, or all zeros if no candidate shot reached the target
+     */
+    public ShotSolution solveWithPitch(Pose3d shooterPose, Pose3d targetPose, double launchPitchRad) {
+        long deadline = System.nanoTime() + (long) (timeBudgetSeconds * 1e9);
+        if (!setTarget(shooterPose, targetPose)) {
+            throw new IllegalArgumentException("Horizontal distance too small");
+        }
+        fixedPitch = launchPitchRad;
+
+        // drag-free speed for a fixed pitch
+        double cos = Math.cos(launchPitchRad);
+        double rise = targetDistance * Math.tan(launchPitchRad) - targetHeight;
+        if (rise <= 0 || cos <= 1e-6) {
+            throw new IllegalArgumentException("No physical solution: the pitch does not clear the target");
+        }
+        double x0 = targetDistance / cos * Math.sqrt(constants.gravity / (2.0 * rise));
+        double previous = previousSpeed[Mode.FIXED_PITCH.ordinal()];
+        double x1 = Double.isNaN(previous) ? x0 * 1.05 : previous;
+
+        double speed = secant(speedResidual, x0, x1, deadline);
+        return finish(Mode.FIXED_PITCH, launchPitchRad, speed);
+    }
+
+    /**
+     * Solves for the launch pitch and speed that hit the target while arriving
+     * at a given incoming pitch, using Newton's method with a finite-difference
+     * Jacobian.
+     *
+     * @param shooterPose      the pose of the shooter exit
+     * @param targetPose       the pose of the target
+     * @param incomingPitchRad the pitch of the ball as it reaches the target, in
+     *                         radians. negative when descending.
+     * @return the solution, or all zeros if no candidate shot reached the target
+     */
+    public ShotSolution solveWithIncomingAngle(Pose3d shooterPose, Pose3d targetPose,
+            double incomingPitchRad) {
+        long deadline = System.nanoTime() + (long) (timeBudgetSeconds * 1e9);
+        if (!setTarget(shooterPose, targetPose)) {
+            throw new IllegalArgumentException("Horizontal distance too small");
+        }
+
+        ShotSolution analytic = BallPhysics.solveBallisticWithIncomingAngle(shooterPose, targetPose,
+                incomingPitchRad);
+        // the drag-free solution is in the field frame, so take out the robot's
+        // velocity to get the launch relative to the robot
+        double horizontal = analytic.launchSpeed() * Math.cos(analytic.launchPitchRad()) - radialVelocity;
+        double vertical = analytic.launchSpeed() * Math.sin(analytic.launchPitchRad());
+        double pitch = Math.atan2(vertical, horizontal);
+        double speed = Math.hypot(horizontal, vertical);
+        double heightError = Double.NaN;
+        double angleError = Double.NaN;
+        if (simulate(pitch, speed)) {
+            heightError = simHeight - targetHeight;
+            angleError = simAngle - incomingPitchRad;
+        }
+        double previousPitch = this.previousPitch[Mode.INCOMING_ANGLE.ordinal()];
+        double previousSpeed = this.previousSpeed[Mode.INCOMING_ANGLE.ordinal()];
+        if (!Double.isNaN(previousPitch) && simulate(previousPitch, previousSpeed)) {
+            double h = simHeight - targetHeight;
+            double a = simAngle - incomingPitchRad;
+            if (Double.isNaN(heightError) || miss(h, a) < miss(heightError, angleError)) {
+                pitch = previousPitch;
+                speed = previousSpeed;
+                heightError = h;
+                angleError = a;
+            }
+        }
+
+        final double pitchDelta = 1e-4;
+        final double speedDelta = 1e-3;
+        lastIterations = 0;
+        while (!Double.isNaN(heightError)
+                && (Math.abs(heightError) > heightTolerance || Math.abs(angleError) > angleTolerance)
+                && lastIterations < maxIterations && System.nanoTime() < deadline) {
+            lastIterations++;
+            if (!simulate(pitch + pitchDelta, speed)) {
+                break;
+            }
+            double dhdp = (simHeight - targetHeight - heightError) / pitchDelta;
+            double dadp = (simAngle - incomingPitchRad - angleError) / pitchDelta;
+            if (!simulate(pitch, speed + speedDelta)) {
+                break;
+            }
+            double dhds = (simHeight - targetHeight - heightError) / speedDelta;
+            double dads = (simAngle - incomingPitchRad - angleError) / speedDelta;
+
+            double det = dhdp * dads - dhds * dadp;
+            if (Math.abs(det) < 1e-12) {
+                break;
+            }
+            double stepPitch = (heightError * dads - angleError * dhds) / det;
+            double stepSpeed = (angleError * dhdp - heightError * dadp) / det;
+
+            // halve the step until the candidate stays in range and misses by less
+            double scale = 1.0;
+            double nextPitch = pitch;
+            double nextSpeed = speed;
+            boolean improved = false;
+            while (scale > 0.01 && !improved) {
+                nextPitch = pitch - scale * stepPitch;
+                nextSpeed = speed - scale * stepSpeed;
+                improved = Math.abs(nextPitch) < Math.PI / 2.0 && nextSpeed > 0
+                        && simulate(nextPitch, nextSpeed)
+                        && miss(simHeight - targetHeight, simAngle - incomingPitchRad) < miss(heightError,
+                                angleError);
+                scale *= 0.5;
+            }
+            if (!improved) {
+                break;
+            }
+            pitch = nextPitch;
+            speed = nextSpeed;
+            heightError = simHeight - targetHeight;
+            angleError = simAngle - incomingPitchRad;
+        }
+
+        lastResidual = heightError;
+        lastConverged = !Double.isNaN(heightError) && Math.abs(heightError) <= heightTolerance
+                && Math.abs(angleError) <= angleTolerance;
+        return finish(Mode.INCOMING_ANGLE, pitch, speed);
+    }
+
+    /**
+     * Combines a height and incoming pitch error into one miss distance, in
+     * meters.
+     */
+    private double miss(double heightError, double angleError) {
+        return Math.abs(heightError) + Math.abs(angleError) * targetDistance;
+    }
+
+    private ShotSolution finish(Mode mode, double pitch, double speed) {
+        if (Double.isNaN(lastResidual) || !simulate(pitch, speed)) {
+            return new ShotSolution(0, 0, 0);
+        }
+        previousPitch[mode.ordinal()] = pitch;
+        previousSpeed[mode.ordinal()] = speed;
+        return new ShotSolution(pitch, speed, simTime);
+    }
+}
@@ -1,26 +1,89 @@
 package com.techhounds.houndutil.houndlib;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import edu.wpi.first.math.geometry.Pose3d;
-import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.RobotController;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import com.techhounds.houndutil.houndlog.annotations.Log;
 import com.techhounds.houndutil.houndlog.annotations.LoggedObject;
 
+/**
+ * Simulates balls in flight and their interactions with the field.
+ *
+ * <p>
+ * By default, {@link #update()} advances the simulation from the main loop by
+ * the time since the last call, clamped to 50 ms. {@link TimingMode} selects
+ * modes that carry time over instead of dropping it: deterministic catch-up
+ * from the main loop, or a dedicated physics thread that publishes immutable
+ * snapshots of the poses and scoring counts.
+ */
 @LoggedObject
 public class BallSimulator {
+    /** How the simulation is advanced. */
+    public enum TimingMode {
+        /**
+         * {@link #update()} advances by the time since the last call, clamped to 50
+         * ms, finishing with a partial step. Time beyond the clamp is dropped.
+         */
+        MAIN_LOOP,
+        /**
+         * {@link #update()} advances in fixed steps by the time since the last call,
+         * with no clamp. Time that does not fill a step, or that exceeds the
+         * per-call step limit, is carried into the next call rather than dropped,
+         * so the trajectory only depends on the total elapsed time. If the
+         * simulation falls more than 250 ms behind, the excess is dropped and
+         * counted, so a long stall can't leave it catching up forever.
+         */
+        CATCH_UP,
+        /**
+         * A notifier thread advances in fixed steps like {@link #CATCH_UP}, and
+         * publishes a snapshot after each tick. {@link #update()} does nothing, and
+         * the poses, ball count and scoring counts are read from the latest snapshot
+         * without locking. The collision world and integrator belong to the thread
+         * while it runs, so accessing them throws.
+         */
+        THREAD
+    }
+
     private static final double OUT_OF_BOUNDS_MARGIN = 1.0;
     private static final double FIXED_DT = 0.001; // 1 ms
+    private static final double HIGHER_ORDER_DT = 0.02; // fixed step for RK4 and Dormand-Prince when decoupled
     private static final double MAX_FRAME_TIME = 0.05; // 50 ms safety clamp
+    private static final double MAX_CATCH_UP_TIME = 0.25; // most physics time per call, and most carried, when decoupled
+    private static final double THREAD_PERIOD = 0.005;
+    private static final double GRID_CELL_SIZE = 1.0;
 
-    private long lastUpdateMicros = System.nanoTime();
+    private long lastUpdateMicros = -1;
     private double timeAccumulator = 0.0;
 
+    private volatile TimingMode timingMode = TimingMode.MAIN_LOOP;
+    private Notifier notifier = null;
+    // balls added from other threads, drained by whichever thread steps physics
+    private final ConcurrentLinkedQueue<BallState> pendingBalls = new ConcurrentLinkedQueue<>();
+
+    /** The state published by the physics thread, which is never modified. */
+    private record Snapshot(Pose3d[] poses, int scores, int misses, int hits) {
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(new Pose3d[0], 0, 0, 0);
+
     private final BallConstants constants;
-    private final List<BallState> balls = new ArrayList<>();
+    private final BallBatch balls;
+    private final BallCollisionWorld world;
+
+    // poses are only built when requested, and reused until the next update
+    private Pose3d[] cachedPoses = new Pose3d[0];
+    private boolean posesDirty = true;
+
+    /** The largest error estimate of any ball over the last update. */
+    @Log
+    private volatile double lastStepError = 0.0;
+
+    /** The total time dropped because the simulation fell too far behind. */
+    @Log
+    private volatile double droppedTime = 0.0;
 
     public BallSimulator(
             BallConstants constants,
@@ -28,15 +91,167 @@ public class BallSimulator {
             double fieldWidth) {
 
         this.constants = constants;
+        this.balls = new BallBatch(constants);
+        this.world = new BallCollisionWorld(fieldLength, fieldWidth, GRID_CELL_SIZE, constants.radius);
     }
 
+    /**
+     * Adds a ball. In {@link TimingMode#THREAD}, the ball is queued for the
+     * physics thread and appears after its next tick.
+     *
+     * @param initialState the initial state of the ball
+     * @return the index of the ball, or -1 if it was queued
+     */
     public int addBall(BallState initialState) {
-        balls.add(initialState);
-        return balls.size() - 1;
+        if (timingMode == TimingMode.THREAD) {
+            pendingBalls.add(initialState);
+            return -1;
+        }
+        posesDirty = true;
+        return balls.add(initialState);
+    }
+
+    public int getBallCount() {
+        if (timingMode == TimingMode.THREAD) {
+            return snapshot.poses().length;
+        }
+        return balls.size();
     }
 
+    public BallConstants getConstants() {
+        return constants;
+    }
+
+    /**
+     * Gets the field geometry, to add field elements and scoring volumes. Balls
+     * that land on the floor or leave the field are misses.
+     *
+     * @return the collision world
+     * @throws IllegalStateException in {@link TimingMode#THREAD}, since the
+     *                               physics thread owns the world while it runs
+     */
+    public BallCollisionWorld getCollisionWorld() {
+        requireNotThreaded("the collision world");
+        return world;
+    }
+
+    @Log
+    public int getScores() {
+        if (timingMode == TimingMode.THREAD) {
+            return snapshot.scores();
+        }
+        return world.getScores();
+    }
+
+    @Log
+    public int getMisses() {
+        if (timingMode == TimingMode.THREAD) {
+            return snapshot.misses();
+        }
+        return world.getMisses();
+    }
+
+    @Log
+    public int getHits() {
+        if (timingMode == TimingMode.THREAD) {
+            return snapshot.hits();
+        }
+        return world.getHits();
+    }
+
+    private void requireNotThreaded(String what) {
+        if (timingMode == TimingMode.THREAD) {
+            throw new IllegalStateException(
+                    "Can't access " + what + " while the physics thread runs; switch out of TimingMode.THREAD first");
+        }
+    }
+
+    /**
+     * Sets the method used to integrate the balls. Euler advances in fixed 1 ms
+     * steps. RK4 advances each frame in a single step, and Dormand-Prince
+     * advances each frame with as many adaptive steps as its tolerance needs.
+     * Outside {@link TimingMode#MAIN_LOOP}, both use fixed 20 ms steps instead.
+     *
+     * @param method the integration method
+     * @throws IllegalStateException in {@link TimingMode#THREAD}
+     */
+    public void setIntegrationMethod(BallIntegrator.Method method) {
+        requireNotThreaded("the integration method");
+        balls.setIntegrationMethod(method);
+        timeAccumulator = 0.0;
+    }
+
+    public BallIntegrator.Method getIntegrationMethod() {
+        return balls.getIntegrationMethod();
+    }
+
+    /**
+     * Gets the integrator used for the non-Euler methods, to configure its
+     * tolerance or read its force evaluation count.
+     *
+     * @return the integrator
+     * @throws IllegalStateException in {@link TimingMode#THREAD}
+     */
+    public BallIntegrator getIntegrator() {
+        requireNotThreaded("the integrator");
+        return balls.getIntegrator();
+    }
+
+    /**
+     * Sets how the simulation is advanced, starting or stopping the physics
+     * thread as needed. Configure the integration method and the collision world
+     * before switching to {@link TimingMode#THREAD}; they can't be accessed while
+     * the thread runs.
+     *
+     * @param mode the timing mode
+     */
+    public synchronized void setTimingMode(TimingMode mode) {
+        if (mode == timingMode) {
+            return;
+        }
+        if (notifier != null) {
+            notifier.stop();
+            notifier.close();
+            notifier = null;
+        }
+        timingMode = mode;
+        lastUpdateMicros = -1;
+        timeAccumulator = 0.0;
+        // balls queued for the stopped thread would otherwise never be added
+        addPendingBalls();
+        if (mode == TimingMode.THREAD) {
+            // readers see the current state until the first tick
+            publishSnapshot();
+            notifier = new Notifier(this::advanceFromClock);
+            notifier.setName("BallSimulator");
+            notifier.startPeriodic(THREAD_PERIOD);
+        }
+    }
+
+    public TimingMode getTimingMode() {
+        return timingMode;
+    }
+
+    /**
+     * Advances the simulation by the time since the last call, as set by
+     * {@link #setTimingMode(TimingMode)}. Call this every loop; in
+     * {@link TimingMode#THREAD} it is called by the physics thread instead.
+     */
     public void update() {
+        if (timingMode == TimingMode.THREAD) {
+            return;
+        }
+        if (timingMode == TimingMode.CATCH_UP) {
+            advanceFromClock();
+            return;
+        }
+        addPendingBalls();
+
         long now = RobotController.getFPGATime();
+        if (lastUpdateMicros < 0) {
+            lastUpdateMicros = now;
+            return;
+        }
         double frameDt = (now - lastUpdateMicros) * 1e-6;
         lastUpdateMicros = now;
 
@@ -46,41 +261,136 @@ public class BallSimulator {
 
         frameDt = Math.min(frameDt, MAX_FRAME_TIME);
 
-        timeAccumulator += frameDt;
+        if (balls.getIntegrationMethod() != BallIntegrator.Method.EULER) {
+            lastStepError = balls.step(frameDt);
+            world.process(balls);
+        } else {
+            lastStepError = 0.0;
+            timeAccumulator += frameDt;
 
-        while (timeAccumulator >= FIXED_DT) {
-            for (BallState ball : balls) {
-                BallPhysics.step(ball, constants, FIXED_DT);
+            while (timeAccumulator >= FIXED_DT) {
+                lastStepError = Math.max(lastStepError, balls.step(FIXED_DT));
+                world.process(balls);
+                timeAccumulator -= FIXED_DT;
             }
-            timeAccumulator -= FIXED_DT;
-        }
 
-        if (timeAccumulator > 0.0) {
-            for (BallState ball : balls) {
-                BallPhysics.step(ball, constants, timeAccumulator);
+            if (timeAccumulator > 0.0) {
+                lastStepError = Math.max(lastStepError, balls.step(timeAccumulator));
+                world.process(balls);
+                timeAccumulator = 0.0;
             }
-            timeAccumulator = 0.0;
         }
 
-        for (int i = balls.size() - 1; i >= 0; i--) {
-            if (isOutOfBounds(balls.get(i).pose.getTranslation())) {
-                balls.remove(i);
-            }
+        balls.removeBelow(-OUT_OF_BOUNDS_MARGIN);
+        posesDirty = true;
+    }
+
+    /**
+     * Advances by the time since the last call, without dropping any.
+     */
+    private void advanceFromClock() {
+        long now = RobotController.getFPGATime();
+        if (lastUpdateMicros < 0) {
+            lastUpdateMicros = now;
+            return;
+        }
+        double dt = (now - lastUpdateMicros) * 1e-6;
+        lastUpdateMicros = now;
+        if (dt > 0.0) {
+            advance(dt);
         }
     }
 
-    @Log
-    public Pose3d[] getBallPoses() {
-        Pose3d[] poses = new Pose3d[balls.size()];
+    /**
+     * Advances the simulation by exactly {@code dt} in fixed steps, without
+     * reading the clock. Time that does not fill a step is carried into the next
+     * call, up to 250 ms; anything beyond that is dropped and added to
+     * {@link #getDroppedTime()}. Advancing the same balls by the same total time,
+     * in calls of at most 250 ms, always gives the same result, which makes this
+     * suitable for tests.
+     *
+     * @param dt the time to advance, in seconds
+     */
+    public void advance(double dt) {
+        addPendingBalls();
 
-        for (int i = 0; i < balls.size(); i++) {
-            poses[i] = balls.get(i).pose;
+        double step = balls.getIntegrationMethod() == BallIntegrator.Method.EULER ? FIXED_DT : HIGHER_ORDER_DT;
+        // carry any time beyond the per-call limit into the next call
+        timeAccumulator += dt;
+        int maxSteps = (int) Math.ceil(MAX_CATCH_UP_TIME / step);
+        double error = 0.0;
+        for (int i = 0; i < maxSteps && timeAccumulator >= step; i++) {
+            error = Math.max(error, balls.step(step));
+            world.process(balls);
+            timeAccumulator -= step;
+        }
+        lastStepError = error;
+        if (timeAccumulator > MAX_CATCH_UP_TIME) {
+            droppedTime += timeAccumulator - MAX_CATCH_UP_TIME;
+            timeAccumulator = MAX_CATCH_UP_TIME;
         }
 
-        return poses;
+        balls.removeBelow(-OUT_OF_BOUNDS_MARGIN);
+        posesDirty = true;
+        if (timingMode == TimingMode.THREAD) {
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Adds balls queued by {@link #addBall(BallState)} while the physics thread
+     * was running, or that raced with a change of timing mode.
+     */
+    private void addPendingBalls() {
+        BallState pending;
+        while ((pending = pendingBalls.poll()) != null) {
+            balls.add(pending);
+            posesDirty = true;
+        }
+    }
+
+    /**
+     * Gets the total simulated time dropped because the simulation fell more
+     * than 250 ms behind outside {@link TimingMode#MAIN_LOOP}.
+     *
+     * @return the dropped time, in seconds
+     */
+    public double getDroppedTime() {
+        return droppedTime;
     }
 
-    private boolean isOutOfBounds(Translation3d p) {
-        return p.getZ() < -OUT_OF_BOUNDS_MARGIN;
+    /**
+     * Publishes the poses and scoring counts in a new snapshot. The arrays of
+     * earlier snapshots are never touched again, so readers may keep them.
+     */
+    private void publishSnapshot() {
+        Pose3d[] poses = new Pose3d[balls.size()];
+        for (int i = 0; i < poses.length; i++) {
+            poses[i] = balls.getPose(i);
+        }
+        snapshot = new Snapshot(poses, world.getScores(), world.getMisses(), world.getHits());
+    }
+
+    /**
+     * Gets the poses of every ball. In {@link TimingMode#THREAD}, this is the
+     * latest snapshot published by the physics thread, read without locking.
+     *
+     * @return the poses of every ball
+     */
+    @Log
+    public Pose3d[] getBallPoses() {
+        if (timingMode == TimingMode.THREAD) {
+            return snapshot.poses();
+        }
+        if (posesDirty) {
+            if (cachedPoses.length != balls.size()) {
+                cachedPoses = new Pose3d[balls.size()];
+            }
+            for (int i = 0; i < cachedPoses.length; i++) {
+                cachedPoses[i] = balls.getPose(i);
+            }
+            posesDirty = false;
+        }
+        return cachedPoses;
     }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.function.DoubleUnaryOperator;
+
+import com.techhounds.houndutil.houndlib.ShootOnTheFlyCalculator.InterceptResult;
+
+/**
+ * Evaluates shots at many candidate targets for one robot state in a single
+ * pass, and ranks them. Useful for auto-aim target selection, where a
+ * per-target call to {@link ShootOnTheFlyCalculator} and {@link BallPhysics}
+ * would allocate and repeat setup for every candidate.
+ *
+ * <p>
+ * Targets and results are stored in primitive arrays sized at construction,
+ * and {@link #evaluate(double, double, double, double, double, Ranking)} does
+ * not allocate. Each target is solved with
+ * {@link ShootOnTheFlyCalculator#solveIntercept}, then the launch is taken
+ * from a {@link ShotTable} if one is set, or from the minimum-speed drag-free
+ * shot otherwise.
+ *
+ * <p>
+ * An instance is not thread-safe.
+ */
+public class MultiTargetShotEvaluator {
+    /** How to rank targets. Infeasible targets always rank last. */
+    public enum Ranking {
+        /** Lowest required launch speed first. */
+        MIN_LAUNCH_SPEED,
+        /**
+         * Largest aim margin first, the horizontal aim error (in radians) the target
+         * opening can absorb at the effective distance.
+         */
+        MAX_AIM_MARGIN,
+        /** Shortest flight time first. */
+        MIN_FLIGHT_TIME
+    }
+
+    private final int capacity;
+    private int count = 0;
+
+    private final double[] targetX;
+    private final double[] targetY;
+    private final double[] targetZ;
+    private final double[] targetRadius;
+
+    private final double[] effectiveX;
+    private final double[] effectiveY;
+    private final double[] flightTime;
+    private final double[] launchSpeed;
+    private final double[] launchPitch;
+    private final double[] aimMargin;
+    private final boolean[] feasible;
+    private final int[] order;
+    private final double[] sortKey;
+
+    private ShotTable table = null;
+    private double maxLaunchSpeed = Double.POSITIVE_INFINITY;
+    private double maxFlightTime = 5.0;
+    private int maxIterations = 10;
+    private double timeTolerance = 1e-3;
+
+    // the height of the target being solved, read by the time function
+    private double currentHeight;
+    private final InterceptResult intercept = new InterceptResult();
+    private final DoubleUnaryOperator distanceToTime = d -> table != null
+            ? table.getFlightTime(d, currentHeight, 0)
+            : minSpeedFlightTime(d, currentHeight);
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param capacity the maximum number of targets
+     */
+    public MultiTargetShotEvaluator(int capacity) {
+        this.capacity = capacity;
+        targetX = new double[capacity];
+        targetY = new double[capacity];
+        targetZ = new double[capacity];
+        targetRadius = new double[capacity];
+        effectiveX = new double[capacity];
+        effectiveY = new double[capacity];
+        flightTime = new double[capacity];
+        launchSpeed = new double[capacity];
+        launchPitch = new double[capacity];
+        aimMargin = new double[capacity];
+        feasible = new boolean[capacity];
+        order = new int[capacity];
+        sortKey = new double[capacity];
+    }
+
+    /**
+     * Sets the table to take launches from. If null, the minimum-speed drag-free
+     * shot is used.
+     *
+     * @param table the shot table
+     */
+    public void setShotTable(ShotTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Sets the fastest launch the shooter can make. Targets that need more are
+     * infeasible.
+     *
+     * @param maxLaunchSpeed the maximum launch speed, in m/s
+     */
+    public void setMaxLaunchSpeed(double maxLaunchSpeed) {
+        this.maxLaunchSpeed = maxLaunchSpeed;
+    }
+
+    /**
+     * Sets the limits of each intercept solve.
+     *
+     * @param maxIterations the maximum number of flight time updates
+     * @param timeTolerance the allowed flight time residual, in seconds
+     * @param maxFlightTime the longest flight to consider, in seconds
+     */
+    public void setSolverLimits(int maxIterations, double timeTolerance, double maxFlightTime) {
+        this.maxIterations = maxIterations;
+        this.timeTolerance = timeTolerance;
+        this.maxFlightTime = maxFlightTime;
+    }
+
+    /**
+     * Copies the candidate targets. Arrays may be longer than {@code count}.
+     *
+     * @param x      the target x coordinates, in meters
+     * @param y      the target y coordinates, in meters
+     * @param z      the target heights, in meters
+     * @param radius the radius of each target opening, in meters
+     * @param count  the number of targets
+     */
+    public void setTargets(double[] x, double[] y, double[] z, double[] radius, int count) {
+        if (count > capacity) {
+            throw new IllegalArgumentException("Too many targets: " + count + " > " + capacity);
+        }
+        System.arraycopy(x, 0, targetX, 0, count);
+        System.arraycopy(y, 0, targetY, 0, count);
+        System.arraycopy(z, 0, targetZ, 0, count);
+        System.arraycopy(radius, 0, targetRadius, 0, count);
+        this.count = count;
+    }
+
+    /**
+     * Sets a single candidate target, growing the target count if needed.
+     *
+     * @param i      the index of the target
+     * @param x      the target x coordinate, in meters
+     * @param y      the target y coordinate, in meters
+     * @param z      the target height, in meters
+     * @param radius the radius of the target opening, in meters
+     */
+    public void setTarget(int i, double x, double y, double z, double radius) {
+        if (i >= capacity) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        targetX[i] = x;
+        targetY[i] = y;
+        targetZ[i] = z;
+        targetRadius[i] = radius;
+        count = Math.max(count, i + 1);
+    }
+
+    public int getTargetCount() {
+        return count;
+    }
+
+    /**
+     * Solves a shot at every target and ranks them.
+     *
+     * @param shooterX the x coordinate of the shooter, in meters
+     * @param shooterY the y coordinate of the shooter, in meters
+     * @param shooterZ the height of the shooter, in meters
+     * @param vx       the field-relative x velocity the shot inherits, in m/s
+     * @param vy       the field-relative y velocity the shot inherits, in m/s
+     * @param ranking  how to rank the targets
+     * @return the number of feasible targets
+     */
+    public int evaluate(double shooterX, double shooterY, double shooterZ, double vx, double vy,
+            Ranking ranking) {
+        int feasibleCount = 0;
+        for (int i = 0; i < count; i++) {
+            currentHeight = targetZ[i] - shooterZ;
+            ShootOnTheFlyCalculator.solveIntercept(shooterX, shooterY, targetX[i], targetY[i], vx, vy,
+                    0.0, maxFlightTime, distanceToTime, maxIterations, timeTolerance, intercept);
+
+            double d = intercept.distance;
+            effectiveX[i] = intercept.effectiveTargetX;
+            effectiveY[i] = intercept.effectiveTargetY;
+            flightTime[i] = intercept.flightTime;
+            aimMargin[i] = Math.atan2(targetRadius[i], d);
+            if (table != null) {
+                launchSpeed[i] = table.getLaunchSpeed(d, currentHeight, 0);
+                launchPitch[i] = table.getLaunchPitch(d, currentHeight, 0);
+            } else {
+                // minimum-speed drag-free shot, see BallPhysics.minSpeedForAnyArc
+                double range = Math.hypot(d, currentHeight);
+                launchSpeed[i] = Math.sqrt(BallPhysics.GRAVITY * (range + currentHeight));
+                launchPitch[i] = Math.atan2(range + currentHeight, d);
+            }
+
+            feasible[i] = intercept.converged && !Double.isNaN(launchSpeed[i])
+                    && launchSpeed[i] <= maxLaunchSpeed;
+            if (feasible[i]) {
+                feasibleCount++;
+            }
+
+            switch (ranking) {
+                case MAX_AIM_MARGIN:
+                    sortKey[i] = -aimMargin[i];
+                    break;
+                case MIN_FLIGHT_TIME:
+                    sortKey[i] = flightTime[i];
+                    break;
+                case MIN_LAUNCH_SPEED:
+                default:
+                    sortKey[i] = launchSpeed[i];
+                    break;
+            }
+            if (!feasible[i]) {
+                sortKey[i] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        // insertion sort, since target counts are small and this does not allocate
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            int j = i - 1;
+            while (j >= 0 && sortKey[order[j]] > sortKey[index]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+        return feasibleCount;
+    }
+
+    /**
+     * Computes the flight time of the minimum-speed drag-free shot.
+     */
+    private static double minSpeedFlightTime(double distance, double height) {
+        double range = Math.hypot(distance, height);
+        double speed = Math.sqrt(BallPhysics.GRAVITY * (range + height));
+        double pitch = Math.atan2(range + height, distance);
+        return distance / (speed * Math.cos(pitch));
+    }
+
+    /**
+     * Gets the index of the target at a rank.
+     *
+     * @param rank the rank, where 0 is best
+     * @return the index of the target
+     */
+    public int getRanked(int rank) {
+        return order[rank];
+    }
+
+    /**
+     * Gets the index of the best feasible target.
+     *
+     * @return the index of the target, or -1 if no target is feasible
+     */
+    public int getBest() {
+        return count > 0 && feasible[order[0]] ? order[0] : -1;
+    }
+
+    public boolean isFeasible(int i) {
+        return feasible[i];
+    }
+
+    public double getEffectiveTargetX(int i) {
+        return effectiveX[i];
+    }
+
+    public double getEffectiveTargetY(int i) {
+        return effectiveY[i];
+    }
+
+    public double getFlightTime(int i) {
+        return flightTime[i];
+    }
+
+    public double getLaunchSpeed(int i) {
+        return launchSpeed[i];
+    }
+
+    public double getLaunchPitch(int i) {
+        return launchPitch[i];
+    }
+
+    public double getAimMargin(int i) {
+        return aimMargin[i];
+    }
+}
@@ -0,0 +1,172 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.Optional;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * A fixed-size, timestamped history of robot poses, used to find where the
+ * robot was when a sensor measurement was captured. Written by the odometry
+ * thread and read by vision, so every method is synchronized. Samples are
+ * stored in primitive ring buffers, so adding and sampling do not allocate
+ * (other than the {@link Pose2d} returned by {@link #getPoseAt(double)}).
+ *
+ * <p>
+ * Samples must be added in increasing timestamp order. Out-of-order samples
+ * are dropped.
+ */
+public class OdometryHistory {
+    private final int capacity;
+    private final double[] timestamps;
+    private final double[] x;
+    private final double[] y;
+    private final double[] theta;
+
+    /** The index of the oldest sample. */
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Creates a history.
+     *
+     * @param capacity the number of samples to keep. at 250Hz odometry, 500
+     *                 samples covers two seconds.
+     */
+    public OdometryHistory(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("An odometry history needs at least two samples");
+        }
+        this.capacity = capacity;
+        timestamps = new double[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        theta = new double[capacity];
+    }
+
+    /**
+     * Adds a sample.
+     *
+     * @param timestampSeconds the FPGA timestamp of the sample, in seconds
+     * @param pose             the pose of the robot
+     */
+    public void addSample(double timestampSeconds, Pose2d pose) {
+        addSample(timestampSeconds, pose.getX(), pose.getY(), pose.getRotation().getRadians());
+    }
+
+    /**
+     * Adds a sample.
+     *
+     * @param timestampSeconds the FPGA timestamp of the sample, in seconds
+     * @param x                the x coordinate of the robot, in meters
+     * @param y                the y coordinate of the robot, in meters
+     * @param theta            the heading of the robot, in radians
+     */
+    public synchronized void addSample(double timestampSeconds, double x, double y, double theta) {
+        if (size > 0 && timestampSeconds <= timestamps[index(size - 1)]) {
+            return;
+        }
+        int i;
+        if (size < capacity) {
+            i = index(size);
+            size++;
+        } else {
+            i = head;
+            head = (head + 1) % capacity;
+        }
+        timestamps[i] = timestampSeconds;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.theta[i] = theta;
+    }
+
+    /**
+     * Removes all samples. Should be called when the pose is reset, so that
+     * measurements from before the reset are not compared against the new pose.
+     */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Interpolates the pose at a timestamp. Timestamps newer than the latest
+     * sample use the latest sample, since camera and FPGA clocks can disagree by a
+     * few milliseconds.
+     *
+     * @param timestampSeconds the FPGA timestamp, in seconds
+     * @param out              an array of at least three elements, filled with the
+     *                         x, y and heading (in radians) of the robot
+     * @return false if the timestamp is older than the history, or the history is
+     *         empty
+     */
+    public synchronized boolean sample(double timestampSeconds, double[] out) {
+        if (size == 0 || timestampSeconds < timestamps[head]) {
+            return false;
+        }
+        int newest = index(size - 1);
+        if (timestampSeconds >= timestamps[newest]) {
+            out[0] = x[newest];
+            out[1] = y[newest];
+            out[2] = theta[newest];
+            return true;
+        }
+
+        // binary search for the last sample at or before the timestamp
+        int lo = 0;
+        int hi = size - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[index(mid)] <= timestampSeconds) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        int a = index(lo);
+        int b = index(hi);
+        double t = (timestampSeconds - timestamps[a]) / (timestamps[b] - timestamps[a]);
+        out[0] = x[a] + (x[b] - x[a]) * t;
+        out[1] = y[a] + (y[b] - y[a]) * t;
+        out[2] = MathUtil.angleModulus(theta[a] + MathUtil.angleModulus(theta[b] - theta[a]) * t);
+        return true;
+    }
+
+    /**
+     * Interpolates the pose at a timestamp.
+     *
+     * @param timestampSeconds the FPGA timestamp, in seconds
+     * @return the pose of the robot, or empty if the timestamp is older than the
+     *         history
+     * @see #sample(double, double[])
+     */
+    public Optional<Pose2d> getPoseAt(double timestampSeconds) {
+        double[] out = new double[3];
+        if (!sample(timestampSeconds, out)) {
+            return Optional.empty();
+        }
+        return Optional.of(new Pose2d(out[0], out[1], new Rotation2d(out[2])));
+    }
+
+    /**
+     * Gets the timestamp of the latest sample.
+     *
+     * @return the timestamp, in seconds, or NaN if the history is empty
+     */
+    public synchronized double getLatestTimestamp() {
+        return size == 0 ? Double.NaN : timestamps[index(size - 1)];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private int index(int i) {
+        return (head + i) % capacity;
+    }
+}
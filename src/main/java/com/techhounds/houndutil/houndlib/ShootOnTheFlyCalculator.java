@@ -1,5 +1,6 @@
 package com.techhounds.houndutil.houndlib;
 
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 
 import com.techhounds.houndutil.houndlib.BallPhysics.ShotSolution;
@@ -185,8 +186,9 @@ public class ShootOnTheFlyCalculator {
             double newShotTime = getTimeToShoot(robotPose, correctedTargetPose,
                     xyDistanceToProjectileVelocity);
 
+            boolean converged = Math.abs(newShotTime - shotTime) <= 0.010;
             shotTime = newShotTime;
-            if (Math.abs(newShotTime - shotTime) <= 0.010) {
+            if (converged) {
                 break;
             }
         }
@@ -216,8 +218,9 @@ public class ShootOnTheFlyCalculator {
         //         shooterPose,
         //         targetPose,
         //         targetSpeedRps); // SORRY DAVID
-        ShotSolution sol = new ShotSolution(0.0, 0.0, xyDistanceToTime.apply(Math
-                .hypot(shooterPose.minus(targetPose).getX(), shooterPose.minus(targetPose).getY())));
+        Transform3d toTarget = shooterPose.minus(targetPose);
+        ShotSolution sol = new ShotSolution(0.0, 0.0,
+                xyDistanceToTime.apply(Math.hypot(toTarget.getX(), toTarget.getY())));
 
         double t = sol.flightTimeSeconds();
         Pose3d effectiveTarget = targetPose;
@@ -240,7 +243,9 @@ public class ShootOnTheFlyCalculator {
             //         shooterPose,
             //         effectiveTarget,
             //         targetSpeedRps); // SORRY DAVID
-            ShotSolution newSol = new ShotSolution(0.0, 0.0, xyDistanceToTime.apply(Math.hypot(shooterPose.minus(effectiveTarget).getX(), shooterPose.minus(effectiveTarget).getY())));
+            Transform3d toEffectiveTarget = shooterPose.minus(effectiveTarget);
+            ShotSolution newSol = new ShotSolution(0.0, 0.0,
+                    xyDistanceToTime.apply(Math.hypot(toEffectiveTarget.getX(), toEffectiveTarget.getY())));
 
             if (Math.abs(newSol.flightTimeSeconds() - t) < timeTolerance) {
                 return new InterceptSolution(
@@ -262,4 +267,124 @@ public class ShootOnTheFlyCalculator {
                 sol.flightTimeSeconds(),
                 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * The mutable result of
+     * {@link ShootOnTheFlyCalculator#solveIntercept(double, double, double, double, double, double, double, double, DoubleUnaryOperator, int, double, InterceptResult)}.
+     * Reuse one instance per loop to avoid allocating.
+     */
+    public static class InterceptResult {
+        /** The x coordinate of the effective target, in meters. */
+        public double effectiveTargetX;
+        /** The y coordinate of the effective target, in meters. */
+        public double effectiveTargetY;
+        /** The horizontal distance to the effective target, in meters. */
+        public double distance;
+        /** The flight time of the shot, in seconds. */
+        public double flightTime;
+        /** The number of flight time updates it took to converge. */
+        public int iterations;
+        /**
+         * The difference between the flight time to the effective target and the
+         * flight time used to place it, in seconds.
+         */
+        public double residual;
+        /** Whether the residual is within the tolerance. */
+        public boolean converged;
+    }
+
+    /**
+     * Solves for the effective target to aim at while moving, without allocating.
+     * Equivalent to
+     * {@link #calculateEffectiveTargetLocation(Pose2d, Pose3d, ChassisSpeeds, ChassisAccelerations, Function, double, double)},
+     * but works on primitive coordinates and solves for the flight time with the
+     * secant method instead of fixed-point iteration.
+     *
+     * <p>
+     * The flight time {@code t} is the root of {@code f(D(t)) - t}, where
+     * {@code D(t)} is the distance from the shooter to the target shifted by
+     * {@code -v * t}. The first update is a fixed-point step, and the rest are
+     * secant steps, which usually converge in two or three updates where
+     * fixed-point iteration needs many more at high robot speeds.
+     *
+     * @param shooterX                 the x coordinate of the shooter, in meters
+     * @param shooterY                 the y coordinate of the shooter, in meters
+     * @param targetX                  the x coordinate of the target, in meters
+     * @param targetY                  the y coordinate of the target, in meters
+     * @param vx                       the field-relative x velocity the shot
+     *                                 inherits, in m/s. include any acceleration
+     *                                 compensation here.
+     * @param vy                       the field-relative y velocity the shot
+     *                                 inherits, in m/s
+     * @param minFlightTime            the smallest flight time to consider, in
+     *                                 seconds, which keeps the iteration from
+     *                                 going negative. 0 is usually fine.
+     * @param maxFlightTime            the largest flight time to consider, in
+     *                                 seconds
+     * @param xyDistanceToTime         a function that takes the horizontal
+     *                                 distance to the target, and returns the
+     *                                 flight time of the shot, such as
+     *                                 {@link ShotTable#getFlightTime}
+     * @param maxIterations            the maximum number of flight time updates
+     * @param timeTolerance            the allowed residual, in seconds
+     * @param out                      the result to write into
+     * @return {@code out.converged}
+     */
+    public static boolean solveIntercept(
+            double shooterX, double shooterY,
+            double targetX, double targetY,
+            double vx, double vy,
+            double minFlightTime, double maxFlightTime,
+            DoubleUnaryOperator xyDistanceToTime,
+            int maxIterations,
+            double timeTolerance,
+            InterceptResult out) {
+
+        double t0 = xyDistanceToTime.applyAsDouble(Math.hypot(targetX - shooterX, targetY - shooterY));
+        t0 = Math.max(minFlightTime, Math.min(maxFlightTime, t0));
+        double g0 = interceptResidual(shooterX, shooterY, targetX, targetY, vx, vy, t0, xyDistanceToTime);
+
+        // the first update is a fixed-point step, since there is no slope yet
+        double t1 = t0;
+        double g1 = g0;
+        int iterations = 0;
+        while (Math.abs(g1) > timeTolerance && iterations < maxIterations) {
+            iterations++;
+            double t2;
+            if (iterations == 1 || g1 == g0) {
+                t2 = t1 + g1;
+            } else {
+                t2 = t1 - g1 * (t1 - t0) / (g1 - g0);
+            }
+            t2 = Math.max(minFlightTime, Math.min(maxFlightTime, t2));
+
+            t0 = t1;
+            g0 = g1;
+            t1 = t2;
+            g1 = interceptResidual(shooterX, shooterY, targetX, targetY, vx, vy, t1, xyDistanceToTime);
+        }
+
+        out.effectiveTargetX = targetX - vx * t1;
+        out.effectiveTargetY = targetY - vy * t1;
+        out.distance = Math.hypot(out.effectiveTargetX - shooterX, out.effectiveTargetY - shooterY);
+        out.flightTime = t1;
+        out.iterations = iterations;
+        out.residual = g1;
+        out.converged = Math.abs(g1) <= timeTolerance;
+        return out.converged;
+    }
+
+    /**
+     * Computes the flight time to the target shifted by {@code -v * t}, minus
+     * {@code t}.
+     */
+    private static double interceptResidual(
+            double shooterX, double shooterY,
+            double targetX, double targetY,
+            double vx, double vy, double t,
+            DoubleUnaryOperator xyDistanceToTime) {
+        double dx = targetX - vx * t - shooterX;
+        double dy = targetY - vy * t - shooterY;
+        return xyDistanceToTime.applyAsDouble(Math.hypot(dx, dy)) - t;
+    }
+}
@@ -0,0 +1,317 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.techhounds.houndutil.houndlib.BallPhysics.ShotSolution;
+import com.techhounds.houndutil.houndlib.ShotTableGenerator.Axis;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+/**
+ * Estimates the probability of scoring from each location on the field by
+ * Monte Carlo simulation over the ball physics model. Runs headless, with the
+ * field cells spread across every core with a parallel stream.
+ *
+ * <p>
+ * For each cell, the nominal shot is solved with {@link BallShotSolver} to
+ * arrive at the target at a fixed incoming pitch. Each sample perturbs the
+ * robot position, the robot velocity the ball inherits (the part the shooter
+ * failed to compensate for), and the launch speed, pitch and yaw, using
+ * independent normal distributions. Samples are flown in a {@link BallBatch}
+ * against a {@link BallCollisionWorld} with a single scoring cylinder.
+ *
+ * <p>
+ * Run with the {@code analyzeShotAccuracy} Gradle task. Results are written as
+ * CSV with one row per cell, ready to plot as a heatmap.
+ */
+public class ShotAccuracyAnalyzer {
+    /**
+     * The standard deviations of the errors applied to each sample.
+     *
+     * @param positionStdDev the robot position error along each axis, in meters
+     * @param velocityStdDev the uncompensated robot velocity along each axis, in
+     *                       m/s
+     * @param speedStdDev    the launch speed error, in m/s
+     * @param pitchStdDev    the launch pitch error, in radians
+     * @param yawStdDev      the launch yaw error, in radians
+     */
+    public record Errors(
+            double positionStdDev,
+            double velocityStdDev,
+            double speedStdDev,
+            double pitchStdDev,
+            double yawStdDev) {
+    }
+
+    /**
+     * The result for one field cell.
+     *
+     * @param x           the x coordinate of the shooter, in meters
+     * @param y           the y coordinate of the shooter, in meters
+     * @param distance    the horizontal distance to the target, in meters
+     * @param launchSpeed the nominal launch speed, in m/s, or NaN if there is no
+     *                    nominal shot
+     * @param launchPitch the nominal launch pitch, in radians
+     * @param flightTime  the nominal flight time, in seconds
+     * @param samples     the number of samples flown
+     * @param scores      the number of samples that scored
+     */
+    public record CellResult(
+            double x,
+            double y,
+            double distance,
+            double launchSpeed,
+            double launchPitch,
+            double flightTime,
+            int samples,
+            int scores) {
+        /**
+         * Gets the fraction of samples that scored.
+         *
+         * @return the hit probability, or 0 if there is no nominal shot
+         */
+        public double hitProbability() {
+            return samples == 0 ? 0.0 : (double) scores / samples;
+        }
+    }
+
+    private static final double STEP = 0.005;
+
+    private final BallConstants constants;
+    private final Errors errors;
+    private final double fieldLength;
+    private final double fieldWidth;
+    private final double targetX;
+    private final double targetY;
+    private final double targetZ;
+    private final double targetRadius;
+    private double shooterHeight = 0.5;
+    private double backspin = 0.0;
+    private double incomingPitch = Math.toRadians(-45);
+    private double maxFlightTime = 4.0;
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param constants    the ball constants
+     * @param errors       the error distributions
+     * @param fieldLength  the length of the field, in meters
+     * @param fieldWidth   the width of the field, in meters
+     * @param targetX      the x coordinate of the center of the target, in meters
+     * @param targetY      the y coordinate of the center of the target, in meters
+     * @param targetZ      the height of the target opening, in meters
+     * @param targetRadius the radius of the target opening, in meters
+     */
+    public ShotAccuracyAnalyzer(BallConstants constants, Errors errors, double fieldLength, double fieldWidth,
+            double targetX, double targetY, double targetZ, double targetRadius) {
+        this.constants = constants;
+        this.errors = errors;
+        this.fieldLength = fieldLength;
+        this.fieldWidth = fieldWidth;
+        this.targetX = targetX;
+        this.targetY = targetY;
+        this.targetZ = targetZ;
+        this.targetRadius = targetRadius;
+    }
+
+    /**
+     * Sets the height the ball leaves the shooter at.
+     *
+     * @param shooterHeight the height, in meters
+     */
+    public void setShooterHeight(double shooterHeight) {
+        this.shooterHeight = shooterHeight;
+    }
+
+    /**
+     * Sets the backspin of launched balls.
+     *
+     * @param backspin the backspin, in rad/s
+     */
+    public void setBackspin(double backspin) {
+        this.backspin = backspin;
+    }
+
+    /**
+     * Sets the pitch nominal shots arrive at the target with.
+     *
+     * @param incomingPitchRad the incoming pitch, in radians. negative when
+     *                         descending.
+     */
+    public void setIncomingPitch(double incomingPitchRad) {
+        this.incomingPitch = incomingPitchRad;
+    }
+
+    /**
+     * Runs every cell of a grid in parallel.
+     *
+     * @param x       the shooter x axis
+     * @param y       the shooter y axis
+     * @param samples the number of samples per cell
+     * @param seed    the random seed. each cell derives its own stream from it,
+     *                so results do not depend on scheduling.
+     * @return the result of each cell, in x-major order
+     */
+    public List<CellResult> run(Axis x, Axis y, int samples, long seed) {
+        return IntStream.range(0, x.count() * y.count())
+                .parallel()
+                .mapToObj(cell -> runCell(x.get(cell / y.count()), y.get(cell % y.count()), samples,
+                        new SplittableRandom(seed * 31 + cell)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Flies every sample for one shooter location.
+     */
+    public CellResult runCell(double x, double y, int samples, SplittableRandom random) {
+        double dx = targetX - x;
+        double dy = targetY - y;
+        double distance = Math.hypot(dx, dy);
+
+        BallShotSolver solver = new BallShotSolver(constants);
+        solver.setBackspin(backspin);
+        solver.setBudget(50, 1.0);
+        solver.setTolerances(0.001, 0.001);
+        ShotSolution nominal = null;
+        try {
+            nominal = solver.solveWithIncomingAngle(new Pose3d(x, y, shooterHeight, new Rotation3d()),
+                    new Pose3d(targetX, targetY, targetZ, new Rotation3d()), incomingPitch);
+        } catch (IllegalArgumentException e) {
+            // too close, or the incoming pitch is unreachable
+        }
+        if (nominal == null || !solver.isConverged()) {
+            return new CellResult(x, y, distance, Double.NaN, Double.NaN, Double.NaN, 0, 0);
+        }
+
+        BallCollisionWorld world = new BallCollisionWorld(fieldLength, fieldWidth, 1.0, constants.radius);
+        world.addScoringCylinder("target", targetX, targetY, targetRadius, targetZ - 0.1, targetZ, true);
+
+        BallBatch balls = new BallBatch(constants, samples);
+        balls.setIntegrationMethod(BallIntegrator.Method.RK4);
+
+        double yaw = Math.atan2(dy, dx);
+        for (int i = 0; i < samples; i++) {
+            double speed = nominal.launchSpeed() + errors.speedStdDev() * gaussian(random);
+            double pitch = nominal.launchPitchRad() + errors.pitchStdDev() * gaussian(random);
+            double sampleYaw = yaw + errors.yawStdDev() * gaussian(random);
+            double cosYaw = Math.cos(sampleYaw);
+            double sinYaw = Math.sin(sampleYaw);
+            double horizontal = speed * Math.cos(pitch);
+            balls.add(
+                    x + errors.positionStdDev() * gaussian(random),
+                    y + errors.positionStdDev() * gaussian(random),
+                    shooterHeight,
+                    horizontal * cosYaw + errors.velocityStdDev() * gaussian(random),
+                    horizontal * sinYaw + errors.velocityStdDev() * gaussian(random),
+                    speed * Math.sin(pitch),
+                    // backspin about the horizontal axis perpendicular to the shot
+                    backspin * sinYaw, -backspin * cosYaw, 0,
+                    1, 0, 0, 0);
+        }
+
+        for (double t = 0; t < maxFlightTime && balls.size() > 0; t += STEP) {
+            balls.step(STEP);
+            world.process(balls);
+        }
+
+        return new CellResult(x, y, distance, nominal.launchSpeed(), nominal.launchPitchRad(),
+                nominal.flightTimeSeconds(), samples, world.getScores());
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller, since SplittableRandom has no nextGaussian on Java 17
+        double u = 1.0 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+    }
+
+    /**
+     * Writes results as CSV, with a header row.
+     *
+     * @param results the results
+     * @param output  the file to write
+     * @throws IOException if the file could not be written
+     */
+    public static void writeCsv(List<CellResult> results, Path output) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output))) {
+            writer.println("x,y,distance,launch_speed,launch_pitch_deg,flight_time,samples,scores,hit_probability");
+            for (CellResult r : results) {
+                writer.printf("%.3f,%.3f,%.3f,%.3f,%.2f,%.3f,%d,%d,%.4f%n",
+                        r.x(), r.y(), r.distance(), r.launchSpeed(), Math.toDegrees(r.launchPitch()),
+                        r.flightTime(), r.samples(), r.scores(), r.hitProbability());
+            }
+        }
+    }
+
+    /**
+     * Runs an analysis from {@code key=value} arguments. Ball constants use the
+     * same keys as {@link ShotTableGenerator#main(String[])}. The other keys and
+     * their defaults are:
+     *
+     * <ul>
+     * <li>{@code output=build/shot_accuracy.csv}
+     * <li>{@code fieldLength=16.54}, {@code fieldWidth=8.07}
+     * <li>{@code targetX=4.63}, {@code targetY=4.03}, {@code targetZ=1.83},
+     * {@code targetRadius=0.53}
+     * <li>{@code shooterHeight=0.5}, {@code backspin=0},
+     * {@code incomingPitchDeg=-45}
+     * <li>{@code x=0.5:8:0.25}, {@code y=0.5:7.5:0.25}
+     * <li>{@code samples=1000}, {@code seed=0}
+     * <li>{@code positionStdDev=0.03}, {@code velocityStdDev=0.1},
+     * {@code speedStdDev=0.1}, {@code pitchStdDevDeg=0.5},
+     * {@code yawStdDevDeg=1.0}
+     * </ul>
+     *
+     * @param args the arguments
+     * @throws IOException if the results could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = ShotTableGenerator.parseOptions(args);
+        BallConstants constants = ShotTableGenerator.parseConstants(options);
+
+        Errors errors = new Errors(
+                Double.parseDouble(options.getOrDefault("positionStdDev", "0.03")),
+                Double.parseDouble(options.getOrDefault("velocityStdDev", "0.1")),
+                Double.parseDouble(options.getOrDefault("speedStdDev", "0.1")),
+                Math.toRadians(Double.parseDouble(options.getOrDefault("pitchStdDevDeg", "0.5"))),
+                Math.toRadians(Double.parseDouble(options.getOrDefault("yawStdDevDeg", "1.0"))));
+
+        ShotAccuracyAnalyzer analyzer = new ShotAccuracyAnalyzer(constants, errors,
+                Double.parseDouble(options.getOrDefault("fieldLength", "16.54")),
+                Double.parseDouble(options.getOrDefault("fieldWidth", "8.07")),
+                Double.parseDouble(options.getOrDefault("targetX", "4.63")),
+                Double.parseDouble(options.getOrDefault("targetY", "4.03")),
+                Double.parseDouble(options.getOrDefault("targetZ", "1.83")),
+                Double.parseDouble(options.getOrDefault("targetRadius", "0.53")));
+        analyzer.setShooterHeight(Double.parseDouble(options.getOrDefault("shooterHeight", "0.5")));
+        analyzer.setBackspin(Double.parseDouble(options.getOrDefault("backspin", "0")));
+        analyzer.setIncomingPitch(Math.toRadians(Double.parseDouble(options.getOrDefault("incomingPitchDeg", "-45"))));
+
+        Axis x = ShotTableGenerator.parseAxis(options.getOrDefault("x", "0.5:8:0.25"));
+        Axis y = ShotTableGenerator.parseAxis(options.getOrDefault("y", "0.5:7.5:0.25"));
+        int samples = Integer.parseInt(options.getOrDefault("samples", "1000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "0"));
+        Path output = Paths.get(options.getOrDefault("output", "build/shot_accuracy.csv"));
+
+        long start = System.nanoTime();
+        List<CellResult> results = analyzer.run(x, y, samples, seed);
+        writeCsv(results, output);
+        System.out.printf("Flew %d shots over %d cells on %d cores in %.1f s, wrote %s%n",
+                (long) samples * results.size(), results.size(), Runtime.getRuntime().availableProcessors(),
+                (System.nanoTime() - start) * 1e-9, output);
+    }
+}
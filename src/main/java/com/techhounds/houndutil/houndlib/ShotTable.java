@@ -0,0 +1,222 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import edu.wpi.first.wpilibj.Filesystem;
+
+/**
+ * A precomputed table of shots, generated offline by
+ * {@link ShotTableGenerator} and read at runtime. The table is indexed by
+ * horizontal distance to the target, height of the target above the shooter,
+ * and robot velocity toward the target, and stores the launch speed, launch
+ * pitch and flight time at each grid point.
+ *
+ * <p>
+ * The file is memory-mapped rather than read into the heap, and lookups
+ * trilinearly interpolate between the eight surrounding grid points without
+ * allocating, so a lookup takes about a microsecond. Inputs outside the grid
+ * are clamped to its edges.
+ *
+ * <p>
+ * The file is little-endian: a magic number and version, then the minimum,
+ * step and count of each axis, then three floats per grid point, with the
+ * radial velocity axis varying fastest. Grid points the generator could not
+ * solve are NaN.
+ */
+public class ShotTable {
+    /** The magic number at the start of every table, "SHOT". */
+    public static final int MAGIC = 0x53484F54;
+    /** The version of the file format. */
+    public static final int VERSION = 1;
+    /** The size of the header, in bytes. */
+    public static final int HEADER_BYTES = 8 + 3 * (8 + 8 + 4);
+    /** The number of values stored at each grid point. */
+    public static final int CHANNELS = 3;
+
+    private static final int SPEED = 0;
+    private static final int PITCH = 1;
+    private static final int TIME = 2;
+
+    private final ByteBuffer buffer;
+
+    private final double distanceMin;
+    private final double distanceStep;
+    private final int distanceCount;
+    private final double heightMin;
+    private final double heightStep;
+    private final int heightCount;
+    private final double radialMin;
+    private final double radialStep;
+    private final int radialCount;
+
+    /**
+     * Creates a table from a buffer holding a table file.
+     *
+     * @param buffer the buffer, positioned at the start of the table
+     */
+    public ShotTable(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (this.buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a shot table");
+        }
+        if (this.buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported shot table version " + this.buffer.getInt(4));
+        }
+        distanceMin = this.buffer.getDouble(8);
+        distanceStep = this.buffer.getDouble(16);
+        distanceCount = this.buffer.getInt(24);
+        heightMin = this.buffer.getDouble(28);
+        heightStep = this.buffer.getDouble(36);
+        heightCount = this.buffer.getInt(44);
+        radialMin = this.buffer.getDouble(48);
+        radialStep = this.buffer.getDouble(56);
+        radialCount = this.buffer.getInt(64);
+
+        long expected = HEADER_BYTES + 4L * CHANNELS * distanceCount * heightCount * radialCount;
+        if (this.buffer.capacity() < expected) {
+            throw new IllegalArgumentException("Shot table is truncated");
+        }
+    }
+
+    /**
+     * Memory-maps a table file.
+     *
+     * @param path the path to the file
+     * @return the table
+     * @throws IOException if the file could not be mapped
+     */
+    public static ShotTable load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new ShotTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Memory-maps a table file from the deploy directory.
+     *
+     * @param fileName the name of the file in the deploy directory
+     * @return the table
+     * @throws IOException if the file could not be mapped
+     */
+    public static ShotTable loadFromDeploy(String fileName) throws IOException {
+        return load(new File(Filesystem.getDeployDirectory(), fileName).toPath());
+    }
+
+    /**
+     * Gets the launch speed, pitch and flight time for a shot.
+     *
+     * @param distance       the horizontal distance to the target, in meters
+     * @param height         the height of the target above the shooter, in meters
+     * @param radialVelocity the velocity of the robot toward the target, in m/s
+     * @param out            an array to write the launch speed (m/s), launch
+     *                       pitch (rad) and flight time (s) into
+     * @return false if the table has no solution near this shot, in which case
+     *         {@code out} holds NaN
+     */
+    public boolean lookup(double distance, double height, double radialVelocity, double[] out) {
+        out[SPEED] = interpolate(distance, height, radialVelocity, SPEED);
+        out[PITCH] = interpolate(distance, height, radialVelocity, PITCH);
+        out[TIME] = interpolate(distance, height, radialVelocity, TIME);
+        return !Double.isNaN(out[SPEED]);
+    }
+
+    /**
+     * Gets the launch speed for a shot.
+     *
+     * @see #lookup(double, double, double, double[])
+     * @return the launch speed, in m/s
+     */
+    public double getLaunchSpeed(double distance, double height, double radialVelocity) {
+        return interpolate(distance, height, radialVelocity, SPEED);
+    }
+
+    /**
+     * Gets the launch pitch for a shot.
+     *
+     * @see #lookup(double, double, double, double[])
+     * @return the launch pitch, in radians
+     */
+    public double getLaunchPitch(double distance, double height, double radialVelocity) {
+        return interpolate(distance, height, radialVelocity, PITCH);
+    }
+
+    /**
+     * Gets the flight time of a shot. Can be passed to
+     * {@link ShootOnTheFlyCalculator} as its distance-to-time function for a
+     * fixed height and a stationary robot.
+     *
+     * @see #lookup(double, double, double, double[])
+     * @return the flight time, in seconds
+     */
+    public double getFlightTime(double distance, double height, double radialVelocity) {
+        return interpolate(distance, height, radialVelocity, TIME);
+    }
+
+    private float value(int d, int h, int r, int channel) {
+        int index = ((d * heightCount + h) * radialCount + r) * CHANNELS + channel;
+        return buffer.getFloat(HEADER_BYTES + 4 * index);
+    }
+
+    private double interpolate(double distance, double height, double radialVelocity, int channel) {
+        // fractional grid coordinates, clamped to the grid
+        double fd = clampIndex((distance - distanceMin) / distanceStep, distanceCount);
+        double fh = clampIndex((height - heightMin) / heightStep, heightCount);
+        double fr = clampIndex((radialVelocity - radialMin) / radialStep, radialCount);
+
+        int d0 = Math.min((int) fd, Math.max(distanceCount - 2, 0));
+        int h0 = Math.min((int) fh, Math.max(heightCount - 2, 0));
+        int r0 = Math.min((int) fr, Math.max(radialCount - 2, 0));
+        int d1 = Math.min(d0 + 1, distanceCount - 1);
+        int h1 = Math.min(h0 + 1, heightCount - 1);
+        int r1 = Math.min(r0 + 1, radialCount - 1);
+        double td = fd - d0;
+        double th = fh - h0;
+        double tr = fr - r0;
+
+        double c00 = lerp(value(d0, h0, r0, channel), value(d0, h0, r1, channel), tr);
+        double c01 = lerp(value(d0, h1, r0, channel), value(d0, h1, r1, channel), tr);
+        double c10 = lerp(value(d1, h0, r0, channel), value(d1, h0, r1, channel), tr);
+        double c11 = lerp(value(d1, h1, r0, channel), value(d1, h1, r1, channel), tr);
+
+        return lerp(lerp(c00, c01, th), lerp(c10, c11, th), td);
+    }
+
+    private static double clampIndex(double index, int count) {
+        return Math.max(0.0, Math.min(index, count - 1));
+    }
+
+    private static double lerp(double a, double b, double t) {
+        return a + (b - a) * t;
+    }
+
+    public double getMinDistance() {
+        return distanceMin;
+    }
+
+    public double getMaxDistance() {
+        return distanceMin + distanceStep * (distanceCount - 1);
+    }
+
+    public double getMinHeight() {
+        return heightMin;
+    }
+
+    public double getMaxHeight() {
+        return heightMin + heightStep * (heightCount - 1);
+    }
+
+    public double getMinRadialVelocity() {
+        return radialMin;
+    }
+
+    public double getMaxRadialVelocity() {
+        return radialMin + radialStep * (radialCount - 1);
+    }
+}
@@ -0,0 +1,220 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.techhounds.houndutil.houndlib.BallPhysics.ShotSolution;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+/**
+ * Generates a {@link ShotTable} offline by sweeping distance, target height and
+ * robot radial velocity through {@link BallShotSolver}. Every shot is solved to
+ * arrive at the same incoming pitch, which fixes the one free parameter between
+ * launch speed and launch pitch.
+ *
+ * <p>
+ * Run with the {@code generateShotTable} Gradle task, passing arguments as
+ * {@code key=value} pairs, for example:
+ *
+ * <pre>
+ * ./gradlew generateShotTable -PshotTableArgs="mass=0.215 radius=0.075 backspin=100 distance=1:8:0.25"
+ * </pre>
+ *
+ * Axes are given as {@code min:max:step}. Unspecified values use the defaults
+ * in {@link #main(String[])}.
+ */
+public class ShotTableGenerator {
+    /** The range of one axis of the table. */
+    public record Axis(double min, double step, int count) {
+        public Axis {
+            if (count < 1) {
+                throw new IllegalArgumentException("An axis needs at least one point");
+            }
+            if (count > 1 && step <= 0) {
+                throw new IllegalArgumentException("The axis step must be positive");
+            }
+        }
+
+        /**
+         * Creates an axis covering {@code [min, max]} in steps of {@code step}.
+         */
+        public static Axis of(double min, double max, double step) {
+            int count = (int) Math.floor((max - min) / step + 1e-9) + 1;
+            return new Axis(min, count > 1 ? step : 1.0, count);
+        }
+
+        public double get(int i) {
+            return min + step * i;
+        }
+    }
+
+    private ShotTableGenerator() {
+    }
+
+    /**
+     * Solves every grid point and writes the table to a file.
+     *
+     * @param solver           the solver to use, configured with the ball's
+     *                         backspin and a generous budget
+     * @param incomingPitchRad the pitch every shot should arrive at, in radians.
+     *                         negative when descending.
+     * @param distance         the horizontal distance axis, in meters
+     * @param height           the target height axis, in meters above the shooter
+     * @param radial           the radial velocity axis, in m/s toward the target
+     * @param output           the file to write
+     * @return the number of grid points that could not be solved
+     * @throws IOException if the file could not be written
+     */
+    public static int generate(BallShotSolver solver, double incomingPitchRad,
+            Axis distance, Axis height, Axis radial, Path output) throws IOException {
+        int points = distance.count() * height.count() * radial.count();
+        ByteBuffer buffer = ByteBuffer
+                .allocate(ShotTable.HEADER_BYTES + 4 * ShotTable.CHANNELS * points)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(ShotTable.MAGIC);
+        buffer.putInt(ShotTable.VERSION);
+        for (Axis axis : new Axis[] { distance, height, radial }) {
+            buffer.putDouble(axis.min());
+            buffer.putDouble(axis.step());
+            buffer.putInt(axis.count());
+        }
+
+        Pose3d shooter = new Pose3d();
+        int failures = 0;
+        for (int d = 0; d < distance.count(); d++) {
+            for (int h = 0; h < height.count(); h++) {
+                // neighbouring points have similar solutions, so sweeping the radial
+                // axis in order keeps the warm start close
+                for (int r = 0; r < radial.count(); r++) {
+                    solver.setRadialVelocity(radial.get(r));
+                    ShotSolution solution = null;
+                    try {
+                        solution = solver.solveWithIncomingAngle(shooter,
+                                new Pose3d(distance.get(d), 0, height.get(h), new Rotation3d()),
+                                incomingPitchRad);
+                    } catch (IllegalArgumentException e) {
+                        // no drag-free solution to start from, so leave the point unsolved
+                    }
+                    if (solution != null && solver.isConverged()) {
+                        buffer.putFloat((float) solution.launchSpeed());
+                        buffer.putFloat((float) solution.launchPitchRad());
+                        buffer.putFloat((float) solution.flightTimeSeconds());
+                    } else {
+                        failures++;
+                        solver.reset();
+                        buffer.putFloat(Float.NaN);
+                        buffer.putFloat(Float.NaN);
+                        buffer.putFloat(Float.NaN);
+                    }
+                }
+            }
+        }
+
+        buffer.flip();
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return failures;
+    }
+
+    static Axis parseAxis(String value) {
+        String[] parts = value.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Axes must be given as min:max:step, got " + value);
+        }
+        return Axis.of(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+    }
+
+    /**
+     * Parses {@code key=value} arguments. Each argument may hold several
+     * whitespace-separated pairs, as Gradle passes a single property string.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            for (String token : arg.trim().split("\\s+")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                int split = token.indexOf('=');
+                if (split < 0) {
+                    throw new IllegalArgumentException("Arguments must be key=value, got " + token);
+                }
+                options.put(token.substring(0, split), token.substring(split + 1));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Builds ball constants from {@code key=value} options, using the defaults
+     * listed in {@link #main(String[])}.
+     */
+    static BallConstants parseConstants(Map<String, String> options) {
+        return new BallConstants(
+                Double.parseDouble(options.getOrDefault("mass", "0.215")),
+                Double.parseDouble(options.getOrDefault("radius", "0.075")),
+                Double.parseDouble(options.getOrDefault("rho", "1.2")),
+                Double.parseDouble(options.getOrDefault("cd", "0.47")),
+                Double.parseDouble(options.getOrDefault("clGain", "0.2")),
+                Double.parseDouble(options.getOrDefault("clMax", "0.4")),
+                BallPhysics.GRAVITY,
+                Double.parseDouble(options.getOrDefault("spinDecayTau", "3.0")));
+    }
+
+    /**
+     * Generates a table from {@code key=value} arguments. The keys and their
+     * defaults are:
+     *
+     * <ul>
+     * <li>{@code output=src/main/deploy/shot_table.bin}
+     * <li>{@code mass=0.215}, {@code radius=0.075} (kg, m)
+     * <li>{@code rho=1.2}, {@code cd=0.47}, {@code clGain=0.2}, {@code clMax=0.4}
+     * <li>{@code spinDecayTau=3.0} (s), {@code backspin=0} (rad/s)
+     * <li>{@code incomingPitchDeg=-45}
+     * <li>{@code distance=1:8:0.25}, {@code height=0:3:0.25},
+     * {@code radial=-3:3:0.5}
+     * </ul>
+     *
+     * @param args the arguments
+     * @throws IOException if the table could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        BallConstants constants = parseConstants(options);
+
+        BallShotSolver solver = new BallShotSolver(constants);
+        solver.setBackspin(Double.parseDouble(options.getOrDefault("backspin", "0")));
+        solver.setBudget(50, 1.0);
+        solver.setTolerances(0.001, 0.001);
+
+        Path output = Paths.get(options.getOrDefault("output", "src/main/deploy/shot_table.bin"));
+        Axis distance = parseAxis(options.getOrDefault("distance", "1:8:0.25"));
+        Axis height = parseAxis(options.getOrDefault("height", "0:3:0.25"));
+        Axis radial = parseAxis(options.getOrDefault("radial", "-3:3:0.5"));
+        double incomingPitch = Math.toRadians(Double.parseDouble(options.getOrDefault("incomingPitchDeg", "-45")));
+
+        long start = System.nanoTime();
+        int failures = generate(solver, incomingPitch, distance, height, radial, output);
+        int points = distance.count() * height.count() * radial.count();
+        System.out.printf("Wrote %d shots (%d unsolved) to %s in %.1f s%n",
+                points, failures, output, (System.nanoTime() - start) * 1e-9);
+    }
+}
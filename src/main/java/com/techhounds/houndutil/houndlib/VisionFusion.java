@@ -0,0 +1,399 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.function.Supplier;
+
+import com.techhounds.houndutil.houndlog.annotations.Log;
+import com.techhounds.houndutil.houndlog.annotations.LoggedObject;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * A filtering stage between vision and the pose estimator. Measurements are
+ * collected with {@link #add} during a cycle, then {@link #flush()}:
+ *
+ * <ol>
+ * <li>drops measurements with unusable standard deviations,
+ * <li>keeps only the newest few measurements from each camera,
+ * <li>rejects measurements whose Mahalanobis distance from the estimated pose
+ * at their timestamp is past a threshold,
+ * <li>combines measurements from different cameras taken within a short window
+ * into one inverse-variance weighted measurement,
+ * </ol>
+ *
+ * and sends the results to the output consumer, usually
+ * {@code drivetrain::addVisionMeasurement}. This means fewer, better
+ * measurements reach the pose estimator.
+ *
+ * <p>
+ * So that a bad estimate cannot lock vision out forever, gating is skipped
+ * when no measurement has passed it for {@link #setGateTimeout(double)}
+ * seconds.
+ *
+ * <p>
+ * Buffers are sized at construction, and only the fused measurements sent to
+ * the output allocate. Not thread-safe.
+ */
+@LoggedObject
+public class VisionFusion {
+    /** The 99% point of the chi-squared distribution with three degrees of freedom. */
+    public static final double DEFAULT_GATE_THRESHOLD = 11.34;
+    /** Standard deviations at or above this are treated as "ignore this measurement". */
+    private static final double MAX_USABLE_STD_DEV = 1e6;
+
+    private final int capacity;
+    private final int cameraCount;
+    private final TriConsumer<Pose2d, Double, Matrix<N3, N1>> output;
+
+    private OdometryHistory odometryHistory = null;
+    private Supplier<Pose2d> poseSupplier = null;
+    private double gateThreshold = DEFAULT_GATE_THRESHOLD;
+    private double gateTimeout = 1.0;
+    private int maxPerCamera = 2;
+    private double batchWindow = 0.005;
+    private double estimateStdDevX = 0.1;
+    private double estimateStdDevY = 0.1;
+    private double estimateStdDevTheta = 0.05;
+
+    private int count = 0;
+    private final int[] camera;
+    private final double[] timestamps;
+    private final double[] x;
+    private final double[] y;
+    private final double[] theta;
+    private final double[] stdDevX;
+    private final double[] stdDevY;
+    private final double[] stdDevTheta;
+    private final boolean[] accepted;
+    private final int[] order;
+    private final int[] cameraCounts;
+    private final double[] reference = new double[3];
+
+    private double lastAcceptedTimestamp = Double.NEGATIVE_INFINITY;
+
+    @Log
+    private int receivedCount = 0;
+    @Log
+    private int ignoredCount = 0;
+    @Log
+    private int limitedCount = 0;
+    @Log
+    private int gatedCount = 0;
+    @Log
+    private int fusedCount = 0;
+    @Log
+    private double lastMahalanobisSquared = 0;
+
+    /**
+     * Creates a fusion stage.
+     *
+     * @param capacity    the most measurements held per cycle. measurements past
+     *                    this are ignored
+     * @param cameraCount the number of cameras, with indices starting at 0
+     * @param output      the consumer of fused measurements, taking in the pose,
+     *                    the timestamp, and the standard deviations
+     */
+    public VisionFusion(int capacity, int cameraCount, TriConsumer<Pose2d, Double, Matrix<N3, N1>> output) {
+        this.capacity = capacity;
+        this.cameraCount = cameraCount;
+        this.output = output;
+        camera = new int[capacity];
+        timestamps = new double[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        theta = new double[capacity];
+        stdDevX = new double[capacity];
+        stdDevY = new double[capacity];
+        stdDevTheta = new double[capacity];
+        accepted = new boolean[capacity];
+        order = new int[capacity];
+        cameraCounts = new int[cameraCount];
+    }
+
+    /**
+     * Sets the history used to find the estimated pose at each measurement's
+     * timestamp. Takes priority over {@link #setPoseSupplier(Supplier)}.
+     *
+     * @param odometryHistory the odometry history
+     */
+    public void setOdometryHistory(OdometryHistory odometryHistory) {
+        this.odometryHistory = odometryHistory;
+    }
+
+    /**
+     * Sets the supplier of the current estimated pose, used for gating if there is
+     * no odometry history or a measurement is older than it.
+     *
+     * @param poseSupplier the pose supplier
+     */
+    public void setPoseSupplier(Supplier<Pose2d> poseSupplier) {
+        this.poseSupplier = poseSupplier;
+    }
+
+    /**
+     * Sets the Mahalanobis gate. A measurement is rejected if its squared
+     * Mahalanobis distance from the estimate is above the threshold.
+     *
+     * @param threshold           the squared distance threshold. use
+     *                            {@link Double#POSITIVE_INFINITY} to disable
+     *                            gating
+     * @param estimateStdDevX     the standard deviation of the estimate in x, in
+     *                            meters
+     * @param estimateStdDevY     the standard deviation of the estimate in y, in
+     *                            meters
+     * @param estimateStdDevTheta the standard deviation of the estimate heading,
+     *                            in radians
+     */
+    public void setGate(double threshold, double estimateStdDevX, double estimateStdDevY,
+            double estimateStdDevTheta) {
+        this.gateThreshold = threshold;
+        this.estimateStdDevX = estimateStdDevX;
+        this.estimateStdDevY = estimateStdDevY;
+        this.estimateStdDevTheta = estimateStdDevTheta;
+    }
+
+    /**
+     * Sets how long gating may reject every measurement before it is skipped.
+     *
+     * @param gateTimeout the timeout, in seconds
+     */
+    public void setGateTimeout(double gateTimeout) {
+        this.gateTimeout = gateTimeout;
+    }
+
+    /**
+     * Sets the most measurements fused from each camera per cycle. The newest are
+     * kept.
+     *
+     * @param maxPerCamera the limit per camera
+     */
+    public void setMaxPerCamera(int maxPerCamera) {
+        this.maxPerCamera = maxPerCamera;
+    }
+
+    /**
+     * Sets the window within which measurements from different cameras are
+     * combined.
+     *
+     * @param batchWindow the window, in seconds. 0 combines only identical
+     *                    timestamps
+     */
+    public void setBatchWindow(double batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    /**
+     * Skips gating until the next measurement is accepted. Should be called when
+     * the pose is reset, since the estimate may jump.
+     */
+    public void resetGate() {
+        lastAcceptedTimestamp = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Adds a measurement for the next {@link #flush()}.
+     *
+     * @param cameraIndex      the index of the camera
+     * @param timestampSeconds the capture timestamp, in seconds
+     * @param x                the x coordinate of the robot, in meters
+     * @param y                the y coordinate of the robot, in meters
+     * @param theta            the heading of the robot, in radians
+     * @param stdDevX          the x standard deviation, in meters
+     * @param stdDevY          the y standard deviation, in meters
+     * @param stdDevTheta      the heading standard deviation, in radians
+     */
+    public void add(int cameraIndex, double timestampSeconds, double x, double y, double theta,
+            double stdDevX, double stdDevY, double stdDevTheta) {
+        receivedCount++;
+        if (count >= capacity || cameraIndex < 0 || cameraIndex >= cameraCount
+                || !usable(stdDevX) || !usable(stdDevY)) {
+            ignoredCount++;
+            return;
+        }
+        int i = count++;
+        camera[i] = cameraIndex;
+        timestamps[i] = timestampSeconds;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.theta[i] = theta;
+        this.stdDevX[i] = stdDevX;
+        this.stdDevY[i] = stdDevY;
+        // a heading that should be ignored is kept, and just gets no weight
+        this.stdDevTheta[i] = usable(stdDevTheta) ? stdDevTheta : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Adds a measurement for the next {@link #flush()}.
+     *
+     * @param cameraIndex      the index of the camera
+     * @param pose             the pose of the robot
+     * @param timestampSeconds the capture timestamp, in seconds
+     * @param stdDevs          the standard deviations of x, y and heading
+     */
+    public void add(int cameraIndex, Pose2d pose, double timestampSeconds, Matrix<N3, N1> stdDevs) {
+        add(cameraIndex, timestampSeconds, pose.getX(), pose.getY(), pose.getRotation().getRadians(),
+                stdDevs.get(0, 0), stdDevs.get(1, 0), stdDevs.get(2, 0));
+    }
+
+    /**
+     * Adds every measurement of one kind from a camera's buffer.
+     *
+     * @param cameraIndex  the index of the camera
+     * @param observations the camera's measurements
+     * @param precise      whether to add the trig-solve measurements instead of
+     *                     the global ones
+     */
+    public void addAll(int cameraIndex, VisionObservationBuffer observations, boolean precise) {
+        for (int i = 0; i < observations.size(); i++) {
+            if (observations.isPrecise(i) == precise) {
+                add(cameraIndex, observations.getTimestamp(i), observations.getX(i), observations.getY(i),
+                        observations.getHeading(i), observations.getStdDevX(i), observations.getStdDevY(i),
+                        observations.getStdDevTheta(i));
+            }
+        }
+    }
+
+    /**
+     * Filters and combines the measurements added since the last flush, and sends
+     * the results to the output.
+     *
+     * @return the number of measurements sent
+     */
+    public int flush() {
+        // sort by timestamp; an insertion sort, since counts are small and it does not
+        // allocate
+        for (int i = 0; i < count; i++) {
+            int j = i - 1;
+            while (j >= 0 && timestamps[order[j]] > timestamps[i]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = i;
+        }
+
+        // keep the newest measurements from each camera
+        for (int c = 0; c < cameraCount; c++) {
+            cameraCounts[c] = 0;
+        }
+        for (int k = count - 1; k >= 0; k--) {
+            int i = order[k];
+            accepted[i] = cameraCounts[camera[i]]++ < maxPerCamera;
+            if (!accepted[i]) {
+                limitedCount++;
+            }
+        }
+
+        Pose2d currentPose = odometryHistory == null && poseSupplier != null ? poseSupplier.get() : null;
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+            if (!accepted[i]) {
+                continue;
+            }
+            boolean hasReference = odometryHistory != null && odometryHistory.sample(timestamps[i], reference);
+            if (!hasReference && poseSupplier != null) {
+                if (currentPose == null) {
+                    currentPose = poseSupplier.get();
+                }
+                reference[0] = currentPose.getX();
+                reference[1] = currentPose.getY();
+                reference[2] = currentPose.getRotation().getRadians();
+                hasReference = true;
+            }
+            if (!hasReference || timestamps[i] - lastAcceptedTimestamp > gateTimeout) {
+                // nothing to gate against, or gating has rejected everything for too long
+                lastAcceptedTimestamp = Math.max(lastAcceptedTimestamp, timestamps[i]);
+                continue;
+            }
+
+            double dx = x[i] - reference[0];
+            double dy = y[i] - reference[1];
+            double dTheta = MathUtil.angleModulus(theta[i] - reference[2]);
+            double d2 = dx * dx / (stdDevX[i] * stdDevX[i] + estimateStdDevX * estimateStdDevX)
+                    + dy * dy / (stdDevY[i] * stdDevY[i] + estimateStdDevY * estimateStdDevY)
+                    + dTheta * dTheta / (stdDevTheta[i] * stdDevTheta[i] + estimateStdDevTheta * estimateStdDevTheta);
+            lastMahalanobisSquared = d2;
+            if (d2 > gateThreshold) {
+                accepted[i] = false;
+                gatedCount++;
+            } else {
+                lastAcceptedTimestamp = Math.max(lastAcceptedTimestamp, timestamps[i]);
+            }
+        }
+
+        int sent = 0;
+        int k = 0;
+        while (k < count) {
+            int first = order[k];
+            if (!accepted[first]) {
+                k++;
+                continue;
+            }
+
+            // inverse-variance weighted mean of this measurement and any close to it
+            double wxSum = 0, wySum = 0, wThetaSum = 0;
+            double xSum = 0, ySum = 0, thetaSum = 0, tSum = 0;
+            int n = 0;
+            int end = k;
+            while (end < count && timestamps[order[end]] - timestamps[first] <= batchWindow) {
+                int i = order[end++];
+                if (!accepted[i]) {
+                    continue;
+                }
+                double wx = 1 / (stdDevX[i] * stdDevX[i]);
+                double wy = 1 / (stdDevY[i] * stdDevY[i]);
+                double wTheta = 1 / (stdDevTheta[i] * stdDevTheta[i]);
+                xSum += wx * x[i];
+                ySum += wy * y[i];
+                // average headings relative to the first, so they do not wrap
+                thetaSum += wTheta * MathUtil.angleModulus(theta[i] - theta[first]);
+                wxSum += wx;
+                wySum += wy;
+                wThetaSum += wTheta;
+                tSum += timestamps[i];
+                n++;
+            }
+            k = end;
+
+            double fusedTheta = theta[first] + (wThetaSum > 0 ? thetaSum / wThetaSum : 0);
+            output.accept(
+                    new Pose2d(xSum / wxSum, ySum / wySum, new Rotation2d(fusedTheta)),
+                    tSum / n,
+                    VecBuilder.fill(1 / Math.sqrt(wxSum), 1 / Math.sqrt(wySum),
+                            wThetaSum > 0 ? 1 / Math.sqrt(wThetaSum) : Double.MAX_VALUE));
+            sent++;
+        }
+
+        fusedCount += sent;
+        count = 0;
+        return sent;
+    }
+
+    private static boolean usable(double stdDev) {
+        return stdDev > 0 && stdDev < MAX_USABLE_STD_DEV;
+    }
+
+    public int getReceivedCount() {
+        return receivedCount;
+    }
+
+    public int getIgnoredCount() {
+        return ignoredCount;
+    }
+
+    public int getLimitedCount() {
+        return limitedCount;
+    }
+
+    public int getGatedCount() {
+        return gatedCount;
+    }
+
+    public int getFusedCount() {
+        return fusedCount;
+    }
+}
@@ -0,0 +1,187 @@
+package com.techhounds.houndutil.houndlib;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * A reusable, fixed-capacity buffer of vision pose measurements. Poses and
+ * standard deviations are stored in primitive arrays, so filling and reading
+ * the buffer does not allocate. Sized for the most measurements a camera can
+ * produce in one cycle; measurements past the capacity are dropped and
+ * counted.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+public class VisionObservationBuffer {
+    private final int capacity;
+    private int count = 0;
+    private int droppedCount = 0;
+
+    private final double[] timestamps;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final double[] heading;
+    private final double[] stdDevX;
+    private final double[] stdDevY;
+    private final double[] stdDevTheta;
+    private final int[] tagCount;
+    private final double[] averageTagDistance;
+    private final boolean[] precise;
+
+    /**
+     * Creates a buffer.
+     *
+     * @param capacity the maximum number of measurements
+     */
+    public VisionObservationBuffer(int capacity) {
+        this.capacity = capacity;
+        timestamps = new double[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        heading = new double[capacity];
+        stdDevX = new double[capacity];
+        stdDevY = new double[capacity];
+        stdDevTheta = new double[capacity];
+        tagCount = new int[capacity];
+        averageTagDistance = new double[capacity];
+        precise = new boolean[capacity];
+    }
+
+    /**
+     * Removes all measurements. Does not reset the dropped count.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Adds a measurement.
+     *
+     * @param timestampSeconds   the capture timestamp, in seconds
+     * @param x                  the x coordinate of the robot, in meters
+     * @param y                  the y coordinate of the robot, in meters
+     * @param z                  the height of the robot, in meters
+     * @param heading            the heading of the robot, in radians
+     * @param stdDevX            the x standard deviation, in meters
+     * @param stdDevY            the y standard deviation, in meters
+     * @param stdDevTheta        the heading standard deviation, in radians
+     * @param tagCount           the number of tags used
+     * @param averageTagDistance the average distance to the tags used, in meters
+     * @param precise            whether the measurement came from the
+     *                           trig-solve estimator
+     * @return the index of the measurement, or -1 if the buffer is full
+     */
+    public int add(double timestampSeconds, double x, double y, double z, double heading,
+            double stdDevX, double stdDevY, double stdDevTheta, int tagCount, double averageTagDistance,
+            boolean precise) {
+        if (count >= capacity) {
+            droppedCount++;
+            return -1;
+        }
+        int i = count++;
+        timestamps[i] = timestampSeconds;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.z[i] = z;
+        this.heading[i] = heading;
+        this.stdDevX[i] = stdDevX;
+        this.stdDevY[i] = stdDevY;
+        this.stdDevTheta[i] = stdDevTheta;
+        this.tagCount[i] = tagCount;
+        this.averageTagDistance[i] = averageTagDistance;
+        this.precise[i] = precise;
+        return i;
+    }
+
+    /**
+     * Copies the standard deviations of a measurement into an existing matrix.
+     *
+     * @param i   the index of the measurement
+     * @param out the matrix to fill
+     * @return {@code out}
+     */
+    public Matrix<N3, N1> fillStdDevs(int i, Matrix<N3, N1> out) {
+        out.set(0, 0, stdDevX[i]);
+        out.set(1, 0, stdDevY[i]);
+        out.set(2, 0, stdDevTheta[i]);
+        return out;
+    }
+
+    /**
+     * Creates the 2D pose of a measurement. Allocates, so avoid in hot paths.
+     *
+     * @param i the index of the measurement
+     * @return the pose
+     */
+    public Pose2d getPose2d(int i) {
+        return new Pose2d(x[i], y[i], new Rotation2d(heading[i]));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of measurements dropped because the buffer was full, since
+     * it was created.
+     *
+     * @return the dropped count
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    public double getTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public double getZ(int i) {
+        return z[i];
+    }
+
+    public double getHeading(int i) {
+        return heading[i];
+    }
+
+    public double getStdDevX(int i) {
+        return stdDevX[i];
+    }
+
+    public double getStdDevY(int i) {
+        return stdDevY[i];
+    }
+
+    public double getStdDevTheta(int i) {
+        return stdDevTheta[i];
+    }
+
+    public int getTagCount(int i) {
+        return tagCount[i];
+    }
+
+    public double getAverageTagDistance(int i) {
+        return averageTagDistance[i];
+    }
+
+    public boolean isPrecise(int i) {
+        return precise[i];
+    }
+}
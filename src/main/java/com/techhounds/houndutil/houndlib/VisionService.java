@@ -0,0 +1,358 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.techhounds.houndutil.houndlog.annotations.Log;
+import com.techhounds.houndutil.houndlog.annotations.LoggedObject;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Processes several {@link AprilTagPhotonCamera}s off the main thread, and
+ * delivers their measurements to the pose estimator in timestamp order. Each
+ * camera is polled by its own {@link Notifier}, so reading results and solving
+ * poses for one camera does not delay the others or the main loop.
+ *
+ * <p>
+ * A {@link com.techhounds.houndutil.houndlib.subsystems.BaseVision}
+ * implementation should call {@link #update()} from
+ * {@code updateVisionEstimates()}, which only drains the queued measurements.
+ * Until {@link #start()} is called, {@link #update()} processes every camera
+ * serially on the calling thread instead.
+ *
+ * <p>
+ * Each camera publishes an immutable snapshot of its logged values at the end
+ * of every update on its worker thread, so the logger reads one complete
+ * update rather than fields that are being written. The service's own
+ * statistics are kept in atomic arrays and copied when logged.
+ */
+@LoggedObject
+public class VisionService {
+    /** A measurement from one camera. */
+    public record Observation(int camera, Pose2d pose, double timestampSeconds, Matrix<N3, N1> stdDevs,
+            boolean precise) {
+    }
+
+    /** The most measurements kept per camera while waiting for {@link #update()}. */
+    public static final int MAX_QUEUE_DEPTH = 32;
+
+    private final AprilTagPhotonCamera[] cameras;
+    private final Notifier[] notifiers;
+    private double period = 0.01;
+    private boolean running = false;
+
+    private Matrix<N3, N1> singleTagStdDevs = VecBuilder.fill(1, 1, 1);
+    private Matrix<N3, N1> multiTagStdDevs = VecBuilder.fill(0.5, 0.5, 0.5);
+    private Matrix<N3, N1> preciseStdDevs = VecBuilder.fill(0.2, 0.2, Double.MAX_VALUE);
+    private TriConsumer<Pose2d, Double, Matrix<N3, N1>> visionMeasurementConsumer = null;
+    private TriConsumer<Pose2d, Double, Matrix<N3, N1>> preciseVisionMeasurementConsumer = null;
+    private VisionFusion fusion = null;
+    private VisionFusion preciseFusion = null;
+
+    private final ConcurrentLinkedQueue<Observation> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicIntegerArray queueDepths;
+    private final List<Observation> lastObservations = new ArrayList<>();
+
+    // written by the worker threads, so doubles are stored as their raw bits
+    /** The time taken by the last update of each camera, in seconds. */
+    private final AtomicLongArray processingTimes;
+    /** The pipeline results read per second from each camera. */
+    private final AtomicLongArray frameRates;
+    /** The measurements dropped from each camera because the queue was full. */
+    private final AtomicIntegerArray droppedCounts;
+    private final int[] windowFrames;
+    private final long[] windowStartMicros;
+
+    /**
+     * Creates a vision service. The cameras are not polled until
+     * {@link #start()} is called.
+     *
+     * @param cameras the cameras to process
+     */
+    public VisionService(AprilTagPhotonCamera... cameras) {
+        this.cameras = cameras;
+        notifiers = new Notifier[cameras.length];
+        queueDepths = new AtomicIntegerArray(cameras.length);
+        processingTimes = new AtomicLongArray(cameras.length);
+        frameRates = new AtomicLongArray(cameras.length);
+        droppedCounts = new AtomicIntegerArray(cameras.length);
+        windowFrames = new int[cameras.length];
+        windowStartMicros = new long[cameras.length];
+    }
+
+    /**
+     * Sets the period at which each camera is polled. Takes effect on the next
+     * {@link #start()}.
+     *
+     * @param period the period, in seconds
+     */
+    public void setPeriod(double period) {
+        this.period = period;
+    }
+
+    /**
+     * Sets the base standard deviations of each kind of measurement.
+     *
+     * @param singleTagStdDevs the standard deviations of single-tag measurements,
+     *                         scaled by distance
+     * @param multiTagStdDevs  the standard deviations of multi-tag measurements,
+     *                         scaled by distance
+     * @param preciseStdDevs   the standard deviations of trig-solve measurements
+     */
+    public void setStdDevs(Matrix<N3, N1> singleTagStdDevs, Matrix<N3, N1> multiTagStdDevs,
+            Matrix<N3, N1> preciseStdDevs) {
+        this.singleTagStdDevs = singleTagStdDevs;
+        this.multiTagStdDevs = multiTagStdDevs;
+        this.preciseStdDevs = preciseStdDevs;
+    }
+
+    /**
+     * Sets the consumer for vision measurements, taking in the pose, the
+     * timestamp, and the standard deviations of a given measurement.
+     *
+     * @param visionMeasurementConsumer the consumer to use
+     */
+    public void setVisionMeasurementConsumer(
+            TriConsumer<Pose2d, Double, Matrix<N3, N1>> visionMeasurementConsumer) {
+        this.visionMeasurementConsumer = visionMeasurementConsumer;
+    }
+
+    /**
+     * Sets the consumer for trig-solve vision measurements, taking in the pose,
+     * the timestamp, and the standard deviations of a given measurement.
+     *
+     * @param preciseVisionMeasurementConsumer the consumer to use
+     */
+    public void setPreciseVisionMeasurementConsumer(
+            TriConsumer<Pose2d, Double, Matrix<N3, N1>> preciseVisionMeasurementConsumer) {
+        this.preciseVisionMeasurementConsumer = preciseVisionMeasurementConsumer;
+    }
+
+    /**
+     * Sets the fusion stages that measurements pass through. A stage replaces the
+     * matching consumer, and sends to its own output instead. Camera indices are
+     * the order the cameras were given in.
+     *
+     * @param fusion        the stage for global measurements, or null to send
+     *                      them straight to the vision measurement consumer
+     * @param preciseFusion the stage for trig-solve measurements, or null to send
+     *                      them straight to the precise vision measurement
+     *                      consumer
+     */
+    public void setFusion(VisionFusion fusion, VisionFusion preciseFusion) {
+        this.fusion = fusion;
+        this.preciseFusion = preciseFusion;
+    }
+
+    /**
+     * Starts polling every camera on its own thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        for (int i = 0; i < cameras.length; i++) {
+            final int camera = i;
+            windowStartMicros[i] = RobotController.getFPGATime();
+            notifiers[i] = new Notifier(() -> process(camera));
+            notifiers[i].setName("Vision-" + cameras[i].getName());
+            notifiers[i].startPeriodic(period);
+        }
+        running = true;
+    }
+
+    /**
+     * Stops the worker threads. Later calls to {@link #update()} process the
+     * cameras on the calling thread.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        for (int i = 0; i < cameras.length; i++) {
+            notifiers[i].stop();
+            notifiers[i].close();
+            notifiers[i] = null;
+        }
+        running = false;
+    }
+
+    /**
+     * Delivers all queued measurements to the consumers, oldest first. Should be
+     * called periodically from the main loop.
+     *
+     * @return the number of measurements delivered
+     */
+    public int update() {
+        if (!running) {
+            for (int i = 0; i < cameras.length; i++) {
+                process(i);
+            }
+        }
+
+        lastObservations.clear();
+        Observation observation;
+        while ((observation = queue.poll()) != null) {
+            queueDepths.decrementAndGet(observation.camera());
+            lastObservations.add(observation);
+        }
+        // each camera's measurements arrive in order, but cameras interleave
+        lastObservations.sort(Comparator.comparingDouble(Observation::timestampSeconds));
+
+        for (Observation o : lastObservations) {
+            VisionFusion stage = o.precise() ? preciseFusion : fusion;
+            if (stage != null) {
+                stage.add(o.camera(), o.pose(), o.timestampSeconds(), o.stdDevs());
+                continue;
+            }
+            TriConsumer<Pose2d, Double, Matrix<N3, N1>> consumer = o.precise()
+                    ? preciseVisionMeasurementConsumer
+                    : visionMeasurementConsumer;
+            if (consumer != null) {
+                consumer.accept(o.pose(), o.timestampSeconds(), o.stdDevs());
+            }
+        }
+        if (fusion != null) {
+            fusion.flush();
+        }
+        if (preciseFusion != null) {
+            preciseFusion.flush();
+        }
+        return lastObservations.size();
+    }
+
+    /**
+     * Reads and solves the latest results of one camera, and queues its
+     * measurements. Runs on the camera's worker thread.
+     */
+    private void process(int i) {
+        long start = RobotController.getFPGATime();
+        AprilTagPhotonCamera camera = cameras[i];
+        camera.update(null, singleTagStdDevs, multiTagStdDevs);
+
+        VisionObservationBuffer observations = camera.getObservations();
+        for (int j = 0; j < observations.size(); j++) {
+            boolean precise = observations.isPrecise(j);
+            offer(new Observation(i, observations.getPose2d(j), observations.getTimestamp(j),
+                    precise ? preciseStdDevs
+                            : observations.fillStdDevs(j, new Matrix<>(N3.instance, N1.instance)),
+                    precise));
+        }
+
+        long end = RobotController.getFPGATime();
+        processingTimes.set(i, Double.doubleToRawLongBits((end - start) / 1e6));
+        windowFrames[i] += camera.getLastResultCount();
+        if (end - windowStartMicros[i] >= 1_000_000) {
+            frameRates.set(i, Double.doubleToRawLongBits(windowFrames[i] / ((end - windowStartMicros[i]) / 1e6)));
+            windowFrames[i] = 0;
+            windowStartMicros[i] = end;
+        }
+    }
+
+    private void offer(Observation observation) {
+        if (queueDepths.get(observation.camera()) >= MAX_QUEUE_DEPTH) {
+            droppedCounts.incrementAndGet(observation.camera());
+            return;
+        }
+        queueDepths.incrementAndGet(observation.camera());
+        queue.add(observation);
+    }
+
+    /**
+     * Gets the measurements delivered by the last {@link #update()}, oldest
+     * first.
+     *
+     * @return the measurements
+     */
+    public List<Observation> getLastObservations() {
+        return lastObservations;
+    }
+
+    public AprilTagPhotonCamera[] getCameras() {
+        return cameras;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Gets the number of measurements waiting for {@link #update()} from each
+     * camera.
+     *
+     * @return the queue depth of each camera
+     */
+    @Log
+    public int[] getQueueDepths() {
+        int[] depths = new int[cameras.length];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = queueDepths.get(i);
+        }
+        return depths;
+    }
+
+    /**
+     * Gets the time taken by the last update of each camera.
+     *
+     * @return the processing time of each camera, in seconds
+     */
+    @Log(name = "processingTimes")
+    public double[] getProcessingTimes() {
+        double[] times = new double[cameras.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = getProcessingTime(i);
+        }
+        return times;
+    }
+
+    /**
+     * Gets the pipeline results read per second from each camera.
+     *
+     * @return the frame rate of each camera
+     */
+    @Log(name = "frameRates")
+    public double[] getFrameRates() {
+        double[] rates = new double[cameras.length];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = getFrameRate(i);
+        }
+        return rates;
+    }
+
+    /**
+     * Gets the measurements dropped from each camera because the queue was full.
+     *
+     * @return the dropped count of each camera
+     */
+    @Log(name = "droppedCounts")
+    public int[] getDroppedCounts() {
+        int[] counts = new int[cameras.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = droppedCounts.get(i);
+        }
+        return counts;
+    }
+
+    public double getProcessingTime(int camera) {
+        return Double.longBitsToDouble(processingTimes.get(camera));
+    }
+
+    public double getFrameRate(int camera) {
+        return Double.longBitsToDouble(frameRates.get(camera));
+    }
+
+    public int getQueueDepth(int camera) {
+        return queueDepths.get(camera);
+    }
+}
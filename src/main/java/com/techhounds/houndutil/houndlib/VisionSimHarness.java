@@ -0,0 +1,382 @@
+package com.techhounds.houndutil.houndlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleFunction;
+
+import org.photonvision.simulation.PhotonCameraSim;
+import org.photonvision.simulation.VisionSystemSim;
+
+import com.techhounds.houndutil.houndlib.AprilTagPhotonCamera.PhotonCameraConstants;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+
+/**
+ * Runs {@link AprilTagPhotonCamera}s through PhotonVision's simulator along a
+ * scripted robot path, faster than real time, and reports how far their
+ * measurements are from the true pose and how long each update takes. Intended
+ * for regression testing and benchmarking vision and {@link VisionFusion}
+ * changes headless, for example on CI.
+ *
+ * <p>
+ * The robot clock is paused and stepped with {@link SimHooks}, so results do
+ * not depend on how fast the machine is. Noise comes from a seeded
+ * {@link Random}: the pose given to the simulator is jittered, and the
+ * odometry history the cameras check against drifts as a random walk. For a
+ * run to be repeatable, build the cameras with zero calibration error and
+ * latency standard deviation, since PhotonVision's own noise is not seeded.
+ *
+ * <p>
+ * Run with the {@code simulateVision} Gradle task, passing arguments as
+ * {@code key=value} pairs, see {@link #main(String[])}.
+ */
+public class VisionSimHarness {
+    /**
+     * A summary of measurement errors.
+     *
+     * @param count       the number of measurements
+     * @param mean        the mean position error, in meters
+     * @param rms         the root mean square position error, in meters
+     * @param p95         the 95th percentile position error, in meters
+     * @param max         the largest position error, in meters
+     * @param meanHeading the mean absolute heading error, in radians
+     */
+    public record ErrorSummary(int count, double mean, double rms, double p95, double max, double meanHeading) {
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.4f rms=%.4f p95=%.4f max=%.4f m, heading=%.3f deg",
+                    count, mean, rms, p95, max, Math.toDegrees(meanHeading));
+        }
+    }
+
+    /**
+     * The results of a run.
+     *
+     * @param global           the errors of the global measurements
+     * @param precise          the errors of the trig-solve measurements
+     * @param fused            the errors of the measurements sent by the fusion
+     *                         stage, if one was set
+     * @param frames           the number of pipeline results read
+     * @param meanUpdateMicros the mean time of one camera update, in
+     *                         microseconds
+     * @param maxUpdateMicros  the longest camera update, in microseconds
+     * @param meanFrameMicros  the mean camera update time per pipeline result,
+     *                         in microseconds
+     * @param simulatedSeconds the length of the path
+     * @param wallSeconds      the time the run took
+     */
+    public record Result(ErrorSummary global, ErrorSummary precise, ErrorSummary fused, int frames,
+            double meanUpdateMicros, double maxUpdateMicros, double meanFrameMicros, double simulatedSeconds,
+            double wallSeconds) {
+    }
+
+    /** Collects errors for an {@link ErrorSummary}. */
+    private static class ErrorAccumulator {
+        private double[] errors = new double[256];
+        private int count = 0;
+        private double headingSum = 0;
+
+        void add(double error, double headingError) {
+            if (count == errors.length) {
+                errors = Arrays.copyOf(errors, count * 2);
+            }
+            errors[count++] = error;
+            headingSum += Math.abs(headingError);
+        }
+
+        ErrorSummary summarize() {
+            if (count == 0) {
+                return new ErrorSummary(0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            }
+            double[] sorted = Arrays.copyOf(errors, count);
+            Arrays.sort(sorted);
+            double sum = 0;
+            double sumSquares = 0;
+            for (double e : sorted) {
+                sum += e;
+                sumSquares += e * e;
+            }
+            return new ErrorSummary(count, sum / count, Math.sqrt(sumSquares / count),
+                    sorted[Math.min(count - 1, (int) Math.ceil(0.95 * count) - 1)], sorted[count - 1],
+                    headingSum / count);
+        }
+    }
+
+    private final VisionSystemSim visionSim;
+    private final List<AprilTagPhotonCamera> cameras = new ArrayList<>();
+    private final Random random;
+    private final OdometryHistory odometryHistory = new OdometryHistory(1000);
+
+    private double poseNoise = 0.0;
+    private double headingNoise = 0.0;
+    private double odometryDrift = 0.0;
+    private Matrix<N3, N1> singleTagStdDevs = VecBuilder.fill(1, 1, 1);
+    private Matrix<N3, N1> multiTagStdDevs = VecBuilder.fill(0.5, 0.5, 0.5);
+    private VisionFusion fusion = null;
+
+    // the start of the current run and the path, used to find the true pose of
+    // fused measurements
+    private double startTime;
+    private DoubleFunction<Pose2d> path;
+    private ErrorAccumulator fusedErrors;
+
+    /**
+     * Creates a harness. Initializes the HAL, and pauses the robot clock so that
+     * it only advances when the harness steps it.
+     *
+     * @param fieldLayout the field layout to simulate
+     * @param seed        the seed for the harness's noise
+     */
+    public VisionSimHarness(AprilTagFieldLayout fieldLayout, long seed) {
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+        visionSim = new VisionSystemSim("harness");
+        visionSim.addAprilTags(fieldLayout);
+        random = new Random(seed);
+    }
+
+    /**
+     * Adds a camera. Its simulation streams are disabled, since drawing frames
+     * would dominate the run time.
+     *
+     * @param camera the camera, which must have been created in simulation
+     */
+    public void addCamera(AprilTagPhotonCamera camera) {
+        PhotonCameraSim sim = camera.getSim();
+        if (sim == null) {
+            throw new IllegalStateException("Camera " + camera.getName() + " has no simulation");
+        }
+        sim.enableRawStream(false);
+        sim.enableProcessedStream(false);
+        sim.enableDrawWireframe(false);
+        visionSim.addCamera(sim, camera.getRobotToCam());
+        camera.setOdometryHistory(odometryHistory);
+        cameras.add(camera);
+    }
+
+    /**
+     * Sets the seeded noise of the run.
+     *
+     * @param poseNoise     the standard deviation of the jitter applied to the pose
+     *                      given to the simulator, in meters
+     * @param headingNoise  the standard deviation of the heading jitter, in
+     *                      radians
+     * @param odometryDrift the standard deviation of the odometry random walk per
+     *                      meter travelled
+     */
+    public void setNoise(double poseNoise, double headingNoise, double odometryDrift) {
+        this.poseNoise = poseNoise;
+        this.headingNoise = headingNoise;
+        this.odometryDrift = odometryDrift;
+    }
+
+    /**
+     * Sets the base standard deviations passed to each camera update.
+     *
+     * @param singleTagStdDevs the single-tag standard deviations
+     * @param multiTagStdDevs  the multi-tag standard deviations
+     */
+    public void setStdDevs(Matrix<N3, N1> singleTagStdDevs, Matrix<N3, N1> multiTagStdDevs) {
+        this.singleTagStdDevs = singleTagStdDevs;
+        this.multiTagStdDevs = multiTagStdDevs;
+    }
+
+    /**
+     * Creates a fusion stage whose output is scored against the true pose. Global
+     * measurements from every camera are passed through it each step. Call after
+     * adding the cameras.
+     *
+     * @param capacity the most measurements held per step
+     * @return the fusion stage, to configure
+     */
+    public VisionFusion createFusion(int capacity) {
+        fusion = new VisionFusion(capacity, Math.max(1, cameras.size()), (pose, timestamp, stdDevs) -> {
+            Pose2d truth = path.apply(timestamp - startTime);
+            fusedErrors.add(pose.getTranslation().getDistance(truth.getTranslation()),
+                    MathUtil.angleModulus(pose.getRotation().getRadians() - truth.getRotation().getRadians()));
+        });
+        fusion.setOdometryHistory(odometryHistory);
+        return fusion;
+    }
+
+    /**
+     * Drives the robot along a path and runs every camera each step.
+     *
+     * @param path     the true robot pose at each time since the start, in
+     *                 seconds
+     * @param duration the length of the run, in seconds
+     * @param dt       the length of each step, in seconds
+     * @return the results
+     */
+    public Result run(DoubleFunction<Pose2d> path, double duration, double dt) {
+        this.path = path;
+        startTime = Timer.getFPGATimestamp();
+        odometryHistory.clear();
+        fusedErrors = new ErrorAccumulator();
+        ErrorAccumulator globalErrors = new ErrorAccumulator();
+        ErrorAccumulator preciseErrors = new ErrorAccumulator();
+
+        double driftX = 0;
+        double driftY = 0;
+        Pose2d previous = path.apply(0);
+        int frames = 0;
+        int updates = 0;
+        long updateNanos = 0;
+        long maxUpdateNanos = 0;
+        long wallStart = System.nanoTime();
+
+        for (double t = 0; t <= duration; t += dt) {
+            SimHooks.stepTiming(dt);
+            double now = Timer.getFPGATimestamp();
+            Pose2d truth = path.apply(now - startTime);
+
+            double travelled = truth.getTranslation().getDistance(previous.getTranslation());
+            previous = truth;
+            driftX += odometryDrift * Math.sqrt(travelled) * random.nextGaussian();
+            driftY += odometryDrift * Math.sqrt(travelled) * random.nextGaussian();
+            odometryHistory.addSample(now, truth.getX() + driftX, truth.getY() + driftY,
+                    truth.getRotation().getRadians());
+
+            visionSim.update(new Pose2d(
+                    truth.getX() + poseNoise * random.nextGaussian(),
+                    truth.getY() + poseNoise * random.nextGaussian(),
+                    truth.getRotation().plus(new Rotation2d(headingNoise * random.nextGaussian()))));
+
+            for (int c = 0; c < cameras.size(); c++) {
+                AprilTagPhotonCamera camera = cameras.get(c);
+                long start = System.nanoTime();
+                camera.update(null, singleTagStdDevs, multiTagStdDevs);
+                long elapsed = System.nanoTime() - start;
+                updateNanos += elapsed;
+                maxUpdateNanos = Math.max(maxUpdateNanos, elapsed);
+                updates++;
+                frames += camera.getLastResultCount();
+
+                VisionObservationBuffer observations = camera.getObservations();
+                for (int i = 0; i < observations.size(); i++) {
+                    Pose2d captured = path.apply(observations.getTimestamp(i) - startTime);
+                    double error = Math.hypot(observations.getX(i) - captured.getX(),
+                            observations.getY(i) - captured.getY());
+                    double headingError = MathUtil.angleModulus(
+                            observations.getHeading(i) - captured.getRotation().getRadians());
+                    (observations.isPrecise(i) ? preciseErrors : globalErrors).add(error, headingError);
+                }
+                if (fusion != null) {
+                    fusion.addAll(c, observations, false);
+                }
+            }
+            if (fusion != null) {
+                fusion.flush();
+            }
+        }
+
+        return new Result(globalErrors.summarize(), preciseErrors.summarize(), fusedErrors.summarize(), frames,
+                updates == 0 ? 0 : updateNanos / 1e3 / updates, maxUpdateNanos / 1e3,
+                frames == 0 ? 0 : updateNanos / 1e3 / frames, duration, (System.nanoTime() - wallStart) * 1e-9);
+    }
+
+    /**
+     * Creates a path that drives around an ellipse at a constant rate, facing
+     * along the direction of travel.
+     *
+     * @param centerX the x coordinate of the center, in meters
+     * @param centerY the y coordinate of the center, in meters
+     * @param radiusX the radius along x, in meters
+     * @param radiusY the radius along y, in meters
+     * @param period  the time for one lap, in seconds
+     * @return the path
+     */
+    public static DoubleFunction<Pose2d> ellipse(double centerX, double centerY, double radiusX, double radiusY,
+            double period) {
+        double rate = 2 * Math.PI / period;
+        return t -> {
+            double angle = rate * t;
+            return new Pose2d(centerX + radiusX * Math.cos(angle), centerY + radiusY * Math.sin(angle),
+                    new Rotation2d(Math.atan2(radiusY * Math.cos(angle), -radiusX * Math.sin(angle))));
+        };
+    }
+
+    /**
+     * Runs a harness from {@code key=value} arguments. Four cameras are placed at
+     * the corners of the robot, facing outwards. The keys and their defaults are:
+     *
+     * <ul>
+     * <li>{@code seed=0}, {@code duration=20} (s), {@code dt=0.02} (s)
+     * <li>{@code centerX=8.27}, {@code centerY=4.03}, {@code radiusX=5},
+     * {@code radiusY=2.5}, {@code period=10} (m, s), the ellipse driven
+     * <li>{@code poseNoise=0.01} (m), {@code headingNoiseDeg=0.5},
+     * {@code odometryDrift=0.02} (m per sqrt(m))
+     * <li>{@code width=1280}, {@code height=800}, {@code fov=90} (deg),
+     * {@code fps=30}, {@code latency=30} (ms)
+     * <li>{@code fusion=true}
+     * </ul>
+     *
+     * @param args the arguments
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = ShotTableGenerator.parseOptions(args);
+
+        PhotonCameraConstants constants = new PhotonCameraConstants();
+        constants.WIDTH = Integer.parseInt(options.getOrDefault("width", "1280"));
+        constants.HEIGHT = Integer.parseInt(options.getOrDefault("height", "800"));
+        constants.FOV = Double.parseDouble(options.getOrDefault("fov", "90"));
+        constants.FPS = Double.parseDouble(options.getOrDefault("fps", "30"));
+        constants.AVG_LATENCY = Double.parseDouble(options.getOrDefault("latency", "30"));
+        // the harness supplies its own seeded noise
+        constants.STDDEV_LATENCY = 0;
+
+        AprilTagFieldLayout layout = AprilTagFieldLayout.loadField(AprilTagFields.kDefaultField);
+        VisionSimHarness harness = new VisionSimHarness(layout, Long.parseLong(options.getOrDefault("seed", "0")));
+        harness.setNoise(
+                Double.parseDouble(options.getOrDefault("poseNoise", "0.01")),
+                Math.toRadians(Double.parseDouble(options.getOrDefault("headingNoiseDeg", "0.5"))),
+                Double.parseDouble(options.getOrDefault("odometryDrift", "0.02")));
+
+        String[] names = { "frontLeft", "frontRight", "backLeft", "backRight" };
+        double[] yaws = { 45, -45, 135, -135 };
+        for (int i = 0; i < names.length; i++) {
+            double yaw = Math.toRadians(yaws[i]);
+            Transform3d robotToCam = new Transform3d(
+                    new Translation3d(0.3 * Math.signum(Math.cos(yaw)), 0.3 * Math.signum(Math.sin(yaw)), 0.3),
+                    new Rotation3d(0, Math.toRadians(-15), yaw));
+            harness.addCamera(new AprilTagPhotonCamera(names[i], robotToCam, constants, 0, 0, layout));
+        }
+        if (Boolean.parseBoolean(options.getOrDefault("fusion", "true"))) {
+            harness.createFusion(64);
+        }
+
+        Result result = harness.run(
+                ellipse(Double.parseDouble(options.getOrDefault("centerX", "8.27")),
+                        Double.parseDouble(options.getOrDefault("centerY", "4.03")),
+                        Double.parseDouble(options.getOrDefault("radiusX", "5")),
+                        Double.parseDouble(options.getOrDefault("radiusY", "2.5")),
+                        Double.parseDouble(options.getOrDefault("period", "10"))),
+                Double.parseDouble(options.getOrDefault("duration", "20")),
+                Double.parseDouble(options.getOrDefault("dt", "0.02")));
+
+        System.out.printf("Simulated %.1f s in %.2f s, %d frames%n", result.simulatedSeconds(), result.wallSeconds(),
+                result.frames());
+        System.out.printf("Camera update: mean %.1f us, max %.1f us, %.1f us per frame%n",
+                result.meanUpdateMicros(), result.maxUpdateMicros(), result.meanFrameMicros());
+        System.out.println("Global:  " + result.global());
+        System.out.println("Precise: " + result.precise());
+        System.out.println("Fused:   " + result.fused());
+    }
+}
@@ -0,0 +1,18 @@
+package com.techhounds.houndutil.houndlib.leds;
+
+/**
+ * A pattern that renders into an {@link LEDFrame} as a function of time, used
+ * by {@link LEDEngine}. Unlike the consumers in {@link LEDPatterns}, frame
+ * patterns are given the time rather than reading a clock, so they can be
+ * rendered ahead of time or on another thread.
+ */
+@FunctionalInterface
+public interface FramePattern {
+    /**
+     * Renders the pattern into its section of a frame.
+     *
+     * @param frame       the frame to render into
+     * @param timeSeconds the time of the frame, in seconds, from a monotonic clock
+     */
+    public void render(LEDFrame frame, double timeSeconds);
+}
@@ -0,0 +1,359 @@
+package com.techhounds.houndutil.houndlib.leds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link FramePattern} that stacks patterns in layers, each assigned to a
+ * {@link BaseLEDSection} with a priority and an alpha. Higher priority layers
+ * are blended over lower ones, so status, alert, and alignment overlays can
+ * share a strip without overwriting each other.
+ *
+ * <p>
+ * Layers that are completely covered by opaque higher priority layers are not
+ * rendered. Each rendered layer is compared with its previous output, and only
+ * the pixels in the changed range are blended again.
+ */
+public class LEDCompositor implements FramePattern {
+    /**
+     * A pattern on one section of the strip.
+     */
+    public static class Layer {
+        private final String name;
+        private final int priority;
+        private final BaseLEDSection section;
+        private final FramePattern pattern;
+        private int alpha;
+        private boolean enabled = true;
+
+        private final LEDFrame frame;
+        private final byte[] previous;
+        // whether the previous output is current, false after being hidden
+        private boolean valid = false;
+        private boolean visible = false;
+
+        private Layer(String name, int priority, BaseLEDSection section, FramePattern pattern, int alpha,
+                int length) {
+            this.name = name;
+            this.priority = priority;
+            this.section = section;
+            this.pattern = pattern;
+            this.alpha = alpha;
+            frame = new LEDFrame(length);
+            previous = new byte[section.length() * 3];
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public BaseLEDSection getSection() {
+            return section;
+        }
+
+        public FramePattern getPattern() {
+            return pattern;
+        }
+
+        public int getAlpha() {
+            return alpha;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Gets whether the layer was rendered in the last frame, meaning it was
+         * enabled and not fully covered.
+         *
+         * @return whether the layer is visible
+         */
+        public boolean isVisible() {
+            return visible;
+        }
+    }
+
+    private final int length;
+    // sorted by ascending priority
+    private final List<Layer> layers = new ArrayList<>();
+    private final LEDFrame composite;
+    // for each LED, the position in layers of the highest opaque layer covering
+    // it, or -1
+    private final int[] opaqueLayer;
+
+    private boolean structureChanged = true;
+    private int dirtyStart = -1;
+    private int dirtyEnd = -1;
+    private int renderedLayerCount = 0;
+
+    /**
+     * Creates a compositor with no layers.
+     *
+     * @param length the number of LEDs on the strip
+     */
+    public LEDCompositor(int length) {
+        this.length = length;
+        composite = new LEDFrame(length);
+        opaqueLayer = new int[length];
+    }
+
+    /**
+     * Adds a layer, replacing any layer with the same name.
+     *
+     * @param name     the name of the layer
+     * @param priority the priority, where higher priority layers are drawn on top
+     * @param section  the section the layer covers
+     * @param pattern  the pattern to render, which should only write to its
+     *                 section
+     * @param alpha    the opacity of the layer [0-255], where 255 fully covers
+     *                 the layers below
+     * @return the layer
+     */
+    public synchronized Layer setLayer(String name, int priority, BaseLEDSection section, FramePattern pattern,
+            int alpha) {
+        removeLayer(name);
+        Layer layer = new Layer(name, priority, section, pattern, clampAlpha(alpha), length);
+        int index = 0;
+        while (index < layers.size() && layers.get(index).priority <= priority) {
+            index++;
+        }
+        layers.add(index, layer);
+        structureChanged = true;
+        return layer;
+    }
+
+    /**
+     * Adds an opaque layer, replacing any layer with the same name.
+     *
+     * @param name     the name of the layer
+     * @param priority the priority, where higher priority layers are drawn on top
+     * @param section  the section the layer covers
+     * @param pattern  the pattern to render
+     * @return the layer
+     */
+    public Layer setLayer(String name, int priority, BaseLEDSection section, FramePattern pattern) {
+        return setLayer(name, priority, section, pattern, 255);
+    }
+
+    /**
+     * Removes a layer.
+     *
+     * @param name the name of the layer
+     * @return whether a layer was removed
+     */
+    public synchronized boolean removeLayer(String name) {
+        boolean removed = layers.removeIf(layer -> layer.name.equals(name));
+        structureChanged |= removed;
+        return removed;
+    }
+
+    /**
+     * Removes every layer.
+     */
+    public synchronized void clearLayers() {
+        layers.clear();
+        structureChanged = true;
+    }
+
+    /**
+     * Sets the opacity of a layer.
+     *
+     * @param name  the name of the layer
+     * @param alpha the opacity [0-255]
+     */
+    public synchronized void setAlpha(String name, int alpha) {
+        Layer layer = getLayer(name);
+        if (layer != null && layer.alpha != clampAlpha(alpha)) {
+            layer.alpha = clampAlpha(alpha);
+            structureChanged = true;
+        }
+    }
+
+    /**
+     * Sets whether a layer is drawn, without removing it.
+     *
+     * @param name    the name of the layer
+     * @param enabled whether the layer is drawn
+     */
+    public synchronized void setEnabled(String name, boolean enabled) {
+        Layer layer = getLayer(name);
+        if (layer != null && layer.enabled != enabled) {
+            layer.enabled = enabled;
+            structureChanged = true;
+        }
+    }
+
+    /**
+     * Gets a layer by name.
+     *
+     * @param name the name of the layer
+     * @return the layer, or null if there is none
+     */
+    public synchronized Layer getLayer(String name) {
+        for (Layer layer : layers) {
+            if (layer.name.equals(name)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void render(LEDFrame frame, double timeSeconds) {
+        if (structureChanged) {
+            updateVisibility();
+        }
+
+        // render visible layers and collect the range that changed
+        int start = structureChanged ? 0 : Integer.MAX_VALUE;
+        int end = structureChanged ? length - 1 : -1;
+        renderedLayerCount = 0;
+        for (Layer layer : layers) {
+            if (!layer.visible) {
+                continue;
+            }
+            BaseLEDSection section = layer.section;
+            byte[] data = layer.frame.getData();
+            int offset = section.start() * 3;
+            Arrays.fill(data, offset, offset + layer.previous.length, (byte) 0);
+            layer.pattern.render(layer.frame, timeSeconds);
+            renderedLayerCount++;
+
+            int first = 0;
+            if (layer.valid) {
+                while (first < layer.previous.length && data[offset + first] == layer.previous[first]) {
+                    first++;
+                }
+            }
+            if (first == layer.previous.length) {
+                continue;
+            }
+            int last = layer.previous.length - 1;
+            if (layer.valid) {
+                while (data[offset + last] == layer.previous[last]) {
+                    last--;
+                }
+            }
+            System.arraycopy(data, offset, layer.previous, 0, layer.previous.length);
+            layer.valid = true;
+            start = Math.min(start, section.start() + first / 3);
+            end = Math.max(end, section.start() + last / 3);
+        }
+        structureChanged = false;
+
+        if (end >= start) {
+            compose(start, end);
+            dirtyStart = start;
+            dirtyEnd = end;
+        } else {
+            dirtyStart = -1;
+            dirtyEnd = -1;
+        }
+        composite.copyTo(frame);
+    }
+
+    /**
+     * Finds which layers are covered by opaque layers above them.
+     */
+    private void updateVisibility() {
+        Arrays.fill(opaqueLayer, -1);
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Layer layer = layers.get(i);
+            boolean visible = false;
+            if (layer.enabled && layer.alpha > 0) {
+                int start = Math.max(0, layer.section.start());
+                int end = Math.min(length - 1, layer.section.end());
+                for (int p = start; p <= end; p++) {
+                    if (opaqueLayer[p] == -1) {
+                        visible = true;
+                        if (layer.alpha == 255) {
+                            opaqueLayer[p] = i;
+                        }
+                    }
+                }
+            }
+            if (!visible) {
+                layer.valid = false;
+            }
+            layer.visible = visible;
+        }
+    }
+
+    /**
+     * Blends the visible layers over a range of LEDs, starting at the highest
+     * opaque layer for each LED.
+     */
+    private void compose(int start, int end) {
+        byte[] out = composite.getData();
+        Arrays.fill(out, start * 3, (end + 1) * 3, (byte) 0);
+
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (!layer.visible) {
+                continue;
+            }
+            int from = Math.max(start, layer.section.start());
+            int to = Math.min(end, layer.section.end());
+            byte[] data = layer.frame.getData();
+            int alpha = layer.alpha;
+            for (int p = from; p <= to; p++) {
+                if (i < opaqueLayer[p]) {
+                    continue;
+                }
+                int j = p * 3;
+                if (alpha == 255) {
+                    out[j] = data[j];
+                    out[j + 1] = data[j + 1];
+                    out[j + 2] = data[j + 2];
+                } else {
+                    out[j] = blend(out[j], data[j], alpha);
+                    out[j + 1] = blend(out[j + 1], data[j + 1], alpha);
+                    out[j + 2] = blend(out[j + 2], data[j + 2], alpha);
+                }
+            }
+        }
+    }
+
+    private static byte blend(byte below, byte above, int alpha) {
+        int b = below & 0xFF;
+        int a = above & 0xFF;
+        return (byte) ((a * alpha + b * (255 - alpha) + 127) / 255);
+    }
+
+    private static int clampAlpha(int alpha) {
+        return Math.max(0, Math.min(255, alpha));
+    }
+
+    /**
+     * Gets the first LED recomputed in the last frame.
+     *
+     * @return the index, or -1 if nothing changed
+     */
+    public int getDirtyStart() {
+        return dirtyStart;
+    }
+
+    /**
+     * Gets the last LED recomputed in the last frame.
+     *
+     * @return the index, or -1 if nothing changed
+     */
+    public int getDirtyEnd() {
+        return dirtyEnd;
+    }
+
+    /**
+     * Gets the number of layers rendered in the last frame.
+     *
+     * @return the number of layers
+     */
+    public int getRenderedLayerCount() {
+        return renderedLayerCount;
+    }
+}
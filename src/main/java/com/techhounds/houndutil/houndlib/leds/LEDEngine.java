@@ -0,0 +1,170 @@
+package com.techhounds.houndutil.houndlib.leds;
+
+import edu.wpi.first.wpilibj.AddressableLED;
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Renders {@link FramePattern}s into a double-buffered {@link LEDFrame} and
+ * sends it to an {@link AddressableLED}. The new frame is compared with the
+ * last one sent, and the strip is only written when something changed, and
+ * only the changed range is copied into the {@link AddressableLEDBuffer}.
+ *
+ * <p>
+ * Call {@link #update()} periodically, or hand the engine to an
+ * {@link LEDScheduler} to render off the main thread.
+ */
+public class LEDEngine {
+    private final AddressableLED led;
+    private final AddressableLEDBuffer buffer;
+    private final int length;
+
+    // the frame last sent, and the frame being rendered
+    private LEDFrame front;
+    private LEDFrame back;
+
+    private volatile FramePattern pattern = null;
+
+    private int dirtyStart = -1;
+    private int dirtyEnd = -1;
+    private long frameCount = 0;
+    private long pushCount = 0;
+
+    /**
+     * Creates an engine and starts the LED output.
+     *
+     * @param led    the LED output, or null to render without sending (for
+     *               testing)
+     * @param length the number of LEDs on the strip
+     */
+    public LEDEngine(AddressableLED led, int length) {
+        this.led = led;
+        this.length = length;
+        buffer = new AddressableLEDBuffer(length);
+        front = new LEDFrame(length);
+        back = new LEDFrame(length);
+        if (led != null) {
+            led.setLength(length);
+            led.setData(buffer);
+            led.start();
+        }
+    }
+
+    /**
+     * Sets the pattern rendered each frame. LEDs the pattern does not write are
+     * black.
+     *
+     * @param pattern the pattern, or null for all black
+     */
+    public void setPattern(FramePattern pattern) {
+        this.pattern = pattern;
+    }
+
+    public FramePattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Renders and sends a frame at the current FPGA time.
+     *
+     * @return whether the strip was written
+     */
+    public boolean update() {
+        return update(Timer.getFPGATimestamp());
+    }
+
+    /**
+     * Renders a frame, and sends it if it differs from the last one.
+     *
+     * @param timeSeconds the time of the frame, in seconds
+     * @return whether the strip was written
+     */
+    public synchronized boolean update(double timeSeconds) {
+        back.clear();
+        FramePattern current = pattern;
+        if (current != null) {
+            current.render(back, timeSeconds);
+        }
+        frameCount++;
+
+        // find the first and last changed LEDs
+        byte[] next = back.getData();
+        byte[] previous = front.getData();
+        int first = 0;
+        while (first < next.length && next[first] == previous[first]) {
+            first++;
+        }
+        if (first == next.length) {
+            dirtyStart = -1;
+            dirtyEnd = -1;
+            return false;
+        }
+        int last = next.length - 1;
+        while (next[last] == previous[last]) {
+            last--;
+        }
+        dirtyStart = first / 3;
+        dirtyEnd = last / 3;
+
+        back.copyTo(buffer, dirtyStart, dirtyEnd);
+        if (led != null) {
+            led.setData(buffer);
+        }
+        pushCount++;
+
+        LEDFrame sent = back;
+        back = front;
+        front = sent;
+        return true;
+    }
+
+    /**
+     * Gets the frame last sent to the strip. Not safe to read while another
+     * thread is updating the engine.
+     *
+     * @return the frame
+     */
+    public LEDFrame getFrame() {
+        return front;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the first LED changed by the last update.
+     *
+     * @return the index, or -1 if nothing changed
+     */
+    public int getDirtyStart() {
+        return dirtyStart;
+    }
+
+    /**
+     * Gets the last LED changed by the last update.
+     *
+     * @return the index, or -1 if nothing changed
+     */
+    public int getDirtyEnd() {
+        return dirtyEnd;
+    }
+
+    /**
+     * Gets the number of frames rendered.
+     *
+     * @return the frame count
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of frames that changed and were sent to the strip.
+     *
+     * @return the push count
+     */
+    public long getPushCount() {
+        return pushCount;
+    }
+}
@@ -0,0 +1,197 @@
+package com.techhounds.houndutil.houndlib.leds;
+
+import java.util.Arrays;
+
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.util.Color;
+
+/**
+ * One frame of an LED strip, stored as packed RGB bytes (three per LED). Unlike
+ * {@link AddressableLEDBuffer}, setting a color never allocates, and frames can
+ * be compared and copied in bulk.
+ */
+public class LEDFrame {
+    private final byte[] data;
+    private final int length;
+
+    /**
+     * Creates a black frame.
+     *
+     * @param length the number of LEDs
+     */
+    public LEDFrame(int length) {
+        this.length = length;
+        data = new byte[length * 3];
+    }
+
+    /**
+     * Gets the number of LEDs in the frame.
+     *
+     * @return the number of LEDs
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the backing RGB data. Modifying it modifies the frame.
+     *
+     * @return the data, three bytes per LED
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Sets an LED to an RGB color.
+     *
+     * @param index the index of the LED
+     * @param r     the red value [0-255]
+     * @param g     the green value [0-255]
+     * @param b     the blue value [0-255]
+     */
+    public void setRGB(int index, int r, int g, int b) {
+        int i = index * 3;
+        data[i] = (byte) r;
+        data[i + 1] = (byte) g;
+        data[i + 2] = (byte) b;
+    }
+
+    /**
+     * Sets an LED to a packed {@code 0xRRGGBB} color.
+     *
+     * @param index the index of the LED
+     * @param rgb   the packed color
+     */
+    public void setPacked(int index, int rgb) {
+        int i = index * 3;
+        data[i] = (byte) (rgb >> 16);
+        data[i + 1] = (byte) (rgb >> 8);
+        data[i + 2] = (byte) rgb;
+    }
+
+    /**
+     * Sets an LED to an HSV color, with the same conversion as
+     * {@link AddressableLEDBuffer#setHSV(int, int, int, int)}.
+     *
+     * @param index the index of the LED
+     * @param h     the hue [0-180)
+     * @param s     the saturation [0-255]
+     * @param v     the value [0-255]
+     */
+    public void setHSV(int index, int h, int s, int v) {
+        setPacked(index, hsvToPacked(h, s, v));
+    }
+
+    /**
+     * Sets an LED to a {@link Color}.
+     *
+     * @param index the index of the LED
+     * @param color the color
+     */
+    public void setLED(int index, Color color) {
+        setRGB(index, (int) (color.red * 255), (int) (color.green * 255), (int) (color.blue * 255));
+    }
+
+    public int getRed(int index) {
+        return data[index * 3] & 0xFF;
+    }
+
+    public int getGreen(int index) {
+        return data[index * 3 + 1] & 0xFF;
+    }
+
+    public int getBlue(int index) {
+        return data[index * 3 + 2] & 0xFF;
+    }
+
+    /**
+     * Sets every LED to black.
+     */
+    public void clear() {
+        Arrays.fill(data, (byte) 0);
+    }
+
+    /**
+     * Copies this frame into another frame of the same length.
+     *
+     * @param other the frame to overwrite
+     */
+    public void copyTo(LEDFrame other) {
+        System.arraycopy(data, 0, other.data, 0, data.length);
+    }
+
+    /**
+     * Copies a range of LEDs into an {@link AddressableLEDBuffer}.
+     *
+     * @param buffer the buffer to write
+     * @param start  the first LED to copy
+     * @param end    the last LED to copy, inclusive
+     */
+    public void copyTo(AddressableLEDBuffer buffer, int start, int end) {
+        for (int index = start; index <= end; index++) {
+            int i = index * 3;
+            buffer.setRGB(index, data[i] & 0xFF, data[i + 1] & 0xFF, data[i + 2] & 0xFF);
+        }
+    }
+
+    /**
+     * Converts an HSV color to a packed {@code 0xRRGGBB} color, with the same
+     * integer math as {@link Color#fromHSV(int, int, int)}.
+     *
+     * @param h the hue [0-180)
+     * @param s the saturation [0-255]
+     * @param v the value [0-255]
+     * @return the packed color
+     */
+    public static int hsvToPacked(int h, int s, int v) {
+        if (s == 0) {
+            return (v << 16) | (v << 8) | v;
+        }
+        // the hue range is split into 6 regions, with one component low (m), one high
+        // (v), and one ramping between them (X)
+        int chroma = (s * v) / 255;
+        // because hue is 0-180 rather than 0-360, use 30 rather than 60
+        int region = (h / 30) % 6;
+        int remainder = (int) Math.round((h % 30) * (255 / 30.0));
+        int m = v - chroma;
+        int x = (chroma * remainder) >> 8;
+
+        switch (region) {
+            case 0:
+                return pack(v, x + m, m);
+            case 1:
+                return pack(v - x, v, m);
+            case 2:
+                return pack(m, v, x + m);
+            case 3:
+                return pack(m, v - x, v);
+            case 4:
+                return pack(x + m, m, v);
+            default:
+                return pack(v, m, v - x);
+        }
+    }
+
+    /**
+     * Packs a color into a {@code 0xRRGGBB} integer.
+     *
+     * @param r the red value [0-255]
+     * @param g the green value [0-255]
+     * @param b the blue value [0-255]
+     * @return the packed color
+     */
+    public static int pack(int r, int g, int b) {
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Packs a {@link Color} into a {@code 0xRRGGBB} integer.
+     *
+     * @param color the color
+     * @return the packed color
+     */
+    public static int pack(Color color) {
+        return pack((int) (color.red * 255), (int) (color.green * 255), (int) (color.blue * 255));
+    }
+}
@@ -0,0 +1,185 @@
+package com.techhounds.houndutil.houndlib.leds;
+
+import java.util.function.Consumer;
+
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.util.Color;
+
+/**
+ * A class providing static {@link FramePattern}s for use with an
+ * {@link LEDEngine}. These match the look of the patterns in
+ * {@link LEDPatterns}, but periodic patterns are rendered once into a table of
+ * frames when created, so each cycle only copies a frame.
+ */
+public class LEDFramePatterns {
+    /** The rate the patterns in {@link LEDPatterns} are designed to update at. */
+    public static final double DEFAULT_FRAME_RATE = 50.0;
+    /** The most frames precomputed for one pattern. */
+    public static final int MAX_FRAMES = 1024;
+
+    /**
+     * Creates a solid LED pattern.
+     *
+     * @param color   the color to set the LED section to
+     * @param section the LED section to use
+     * @return the generated frame pattern
+     */
+    public static FramePattern solid(Color color, BaseLEDSection section) {
+        int rgb = LEDFrame.pack(color);
+        byte[] frame = new byte[section.length() * 3];
+        for (int i = 0; i < section.length(); i++) {
+            setPacked(frame, i, rgb);
+        }
+        return new PrecomputedPattern(section, new byte[][] { frame }, 0);
+    }
+
+    /**
+     * Creates a moving rainbow pattern.
+     *
+     * @param brightness the brightness [0-255] of the colors used for the rainbow
+     * @param speed      the amount to move the first hue value each 20ms
+     *                   (recommended 3)
+     * @param section    the LED section to use
+     * @return the generated frame pattern
+     */
+    public static FramePattern rainbow(int brightness, int speed, BaseLEDSection section) {
+        // the first hue repeats after this many steps, so one frame per step is exact
+        int step = Math.floorMod(speed, 180);
+        int frameCount = step == 0 ? 1 : 180 / gcd(step, 180);
+        byte[][] frames = new byte[frameCount][section.length() * 3];
+
+        for (int f = 0; f < frameCount; f++) {
+            int firstPixelHue = (f * step) % 180;
+            for (int i = 0; i < section.length(); i++) {
+                int hue = (firstPixelHue + (i * 180 / section.length())) % 180;
+                setPacked(frames[f], index(section, i), LEDFrame.hsvToPacked(hue, 255, brightness));
+            }
+        }
+        return new PrecomputedPattern(section, frames, frameCount / DEFAULT_FRAME_RATE);
+    }
+
+    /**
+     * Creates a pattern that simulates a wave, with transition between a low and
+     * high brightness version of a color that moves through the strip using a sine
+     * function for smoothness.
+     *
+     * @param color         the color to set the wave to
+     * @param length        the length of one period of the wave
+     * @param waveSpeed     the number of radians to shift the wave per second
+     *                      (recommended 1-3)
+     * @param minBrightness the brightness at the lowest point of the wave
+     * @param maxBrightness the brightness at the highest point of the wave
+     * @param section       the LED section to use
+     * @return the generated frame pattern
+     */
+    public static FramePattern wave(Color color, int length, double waveSpeed, int minBrightness,
+            int maxBrightness, BaseLEDSection section) {
+        ExtendedColor extColor = new ExtendedColor(color);
+        int hue = extColor.hue();
+        int saturation = extColor.saturation();
+
+        double period = 2 * Math.PI / Math.abs(waveSpeed);
+        int frameCount = getFrameCount(period);
+        byte[][] frames = new byte[frameCount][section.length() * 3];
+
+        for (int f = 0; f < frameCount; f++) {
+            double phaseShift = Math.signum(waveSpeed) * 2 * Math.PI * f / frameCount;
+            for (int i = 0; i < section.length(); i++) {
+                double wavePosition = (2 * Math.PI / length) * i - phaseShift;
+                int value = (int) ((Math.sin(wavePosition) + 1) / 2 * (maxBrightness - minBrightness)
+                        + minBrightness);
+                setPacked(frames[f], index(section, i), LEDFrame.hsvToPacked(hue, saturation, value));
+            }
+        }
+        return new PrecomputedPattern(section, frames, period);
+    }
+
+    /**
+     * Creates a pattern that moves a color between high and low brightness via a
+     * sine wave, which looks like "breathing".
+     *
+     * @param color         the color to breathe with
+     * @param onTime        the amount of time, in seconds, of one breath
+     * @param minBrightness the brightness at the lowest point of the breath (make
+     *                      this 0 to turn off the strip)
+     * @param maxBrightness the brightness at the highest point of the breath
+     * @param section       the LED section to use
+     * @return the generated frame pattern
+     */
+    public static FramePattern breathe(Color color, double onTime,
+            int minBrightness, int maxBrightness, BaseLEDSection section) {
+        ExtendedColor extColor = new ExtendedColor(color);
+        int hue = extColor.hue();
+        int saturation = extColor.saturation();
+
+        int frameCount = getFrameCount(onTime);
+        byte[][] frames = new byte[frameCount][section.length() * 3];
+
+        for (int f = 0; f < frameCount; f++) {
+            double phase = 2 * Math.PI * f / frameCount;
+            int value = (int) (minBrightness + ((Math.sin(phase) + 1) / 2 * (maxBrightness - minBrightness)));
+            int rgb = LEDFrame.hsvToPacked(hue, saturation, value);
+            for (int i = 0; i < section.length(); i++) {
+                setPacked(frames[f], i, rgb);
+            }
+        }
+        return new PrecomputedPattern(section, frames, onTime);
+    }
+
+    /**
+     * Wraps a pattern from {@link LEDPatterns} so it can be rendered by an
+     * {@link LEDEngine}, such as on an {@link LEDScheduler}. The consumer still
+     * reads its own clock and allocates as it did before, so prefer the
+     * precomputed patterns where one exists.
+     *
+     * @param consumer the LED buffer consumer
+     * @param section  the LED section the consumer writes to
+     * @param length   the number of LEDs on the strip
+     * @return the generated frame pattern
+     */
+    public static FramePattern fromBuffer(Consumer<AddressableLEDBuffer> consumer, BaseLEDSection section,
+            int length) {
+        AddressableLEDBuffer buffer = new AddressableLEDBuffer(length);
+        return (LEDFrame frame, double timeSeconds) -> {
+            consumer.accept(buffer);
+            for (int i = section.start(); i <= section.end(); i++) {
+                frame.setRGB(i, buffer.getRed(i), buffer.getGreen(i), buffer.getBlue(i));
+            }
+        };
+    }
+
+    /**
+     * Gets the number of frames to precompute for a period at the default frame
+     * rate.
+     */
+    private static int getFrameCount(double period) {
+        if (!Double.isFinite(period) || period <= 0) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(MAX_FRAMES, Math.ceil(period * DEFAULT_FRAME_RATE)));
+    }
+
+    /**
+     * Gets the offset into a section's frame of the nth LED of the effect,
+     * accounting for inversion.
+     */
+    private static int index(BaseLEDSection section, int i) {
+        return section.inverted() ? section.length() - 1 - i : i;
+    }
+
+    private static void setPacked(byte[] frame, int index, int rgb) {
+        int i = index * 3;
+        frame[i] = (byte) (rgb >> 16);
+        frame[i + 1] = (byte) (rgb >> 8);
+        frame[i + 2] = (byte) rgb;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,172 @@
+package com.techhounds.houndutil.houndlib.leds;
+
+import java.util.List;
+
+import edu.wpi.first.wpilibj.util.Color;
+
+/**
+ * Integer, table-driven math for LED patterns, so patterns can run every frame
+ * without floating point trig or allocation.
+ *
+ * <p>
+ * Angles are in turns with 16 bits of fraction, so {@code 65536} is a full
+ * turn and wrapping is free. Colors are packed as {@code 0xRRGGBB}.
+ */
+public final class LEDMath {
+    /** One full turn, in fixed-point angle units. */
+    public static final int FULL_TURN = 1 << 16;
+    /** The largest value returned by {@link #sineUnit(int)}. */
+    public static final int SINE_MAX = 0xFFFF;
+
+    private static final int SINE_BITS = 10;
+    private static final int[] SINE_TABLE = new int[1 << SINE_BITS];
+
+    static {
+        for (int i = 0; i < SINE_TABLE.length; i++) {
+            double sin = Math.sin(2 * Math.PI * i / SINE_TABLE.length);
+            SINE_TABLE[i] = (int) Math.round((sin + 1) / 2 * SINE_MAX);
+        }
+    }
+
+    private LEDMath() {
+    }
+
+    /**
+     * Gets {@code (sin(angle) + 1) / 2} from a lookup table.
+     *
+     * @param angle the angle, where {@link #FULL_TURN} is a full turn (wraps)
+     * @return the value, from 0 to {@link #SINE_MAX}
+     */
+    public static int sineUnit(int angle) {
+        return SINE_TABLE[(angle >>> (16 - SINE_BITS)) & (SINE_TABLE.length - 1)];
+    }
+
+    /**
+     * Converts an angle in radians to fixed-point turns, wrapped to one turn.
+     *
+     * @param radians the angle, in radians
+     * @return the angle, where {@link #FULL_TURN} is a full turn
+     */
+    public static int toTurns(double radians) {
+        double turns = radians / (2 * Math.PI);
+        return (int) Math.round((turns - Math.floor(turns)) * FULL_TURN) & (FULL_TURN - 1);
+    }
+
+    /**
+     * Maps a {@link #sineUnit(int)} value onto a brightness range.
+     *
+     * @param sine the sine value, from 0 to {@link #SINE_MAX}
+     * @param min  the brightness at the lowest point
+     * @param max  the brightness at the highest point
+     * @return the brightness
+     */
+    public static int scale(int sine, int min, int max) {
+        return min + (max - min) * sine / SINE_MAX;
+    }
+
+    /**
+     * Builds a 256-entry palette that linearly interpolates between colors, where
+     * the first color is at index 0 and the last is at index 255.
+     *
+     * @param colors the colors, at least one
+     * @return the palette of packed colors
+     */
+    public static int[] palette(List<Color> colors) {
+        int[] stops = new int[colors.size()];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = LEDFrame.pack(colors.get(i));
+        }
+        int[] palette = new int[256];
+        fillPalette(stops, palette);
+        return palette;
+    }
+
+    /**
+     * Fills a 256-entry palette that linearly interpolates between packed colors,
+     * where the first color is at index 0 and the last is at index 255.
+     *
+     * @param stops   the packed colors, at least one
+     * @param palette the palette to fill
+     */
+    public static void fillPalette(int[] stops, int[] palette) {
+        for (int heat = 0; heat < palette.length; heat++) {
+            double scaled = heat / 255.0 * (stops.length - 1);
+            int index = (int) scaled;
+            double t = scaled - index;
+            int low = stops[index];
+            int high = stops[Math.min(index + 1, stops.length - 1)];
+            palette[heat] = LEDFrame.pack(
+                    lerp((low >> 16) & 0xFF, (high >> 16) & 0xFF, t),
+                    lerp((low >> 8) & 0xFF, (high >> 8) & 0xFF, t),
+                    lerp(low & 0xFF, high & 0xFF, t));
+        }
+    }
+
+    private static int lerp(int start, int end, double t) {
+        // interpolate in [0-1] like Color, so the palette matches the old per-pixel
+        // interpolation exactly
+        double a = start / 255.0;
+        double b = end / 255.0;
+        return (int) ((a + (b - a) * t) * 255);
+    }
+
+    /**
+     * A xorshift pseudo-random number generator. Much cheaper than
+     * {@link java.util.Random}, and good enough for visual effects. Not thread
+     * safe.
+     */
+    public static final class XorShift {
+        private int state;
+
+        /**
+         * Creates a generator seeded from the system clock.
+         */
+        public XorShift() {
+            this((int) System.nanoTime());
+        }
+
+        /**
+         * Creates a generator with a seed.
+         *
+         * @param seed the seed (0 is replaced, since it would only produce 0)
+         */
+        public XorShift(int seed) {
+            state = seed == 0 ? 0x9E3779B9 : seed;
+        }
+
+        /**
+         * Gets the next 32 random bits.
+         *
+         * @return the random bits
+         */
+        public int next() {
+            int x = state;
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            state = x;
+            return x;
+        }
+
+        /**
+         * Gets a random integer from 0 (inclusive) to a bound (exclusive).
+         *
+         * @param bound the upper bound, which must be positive
+         * @return the random integer
+         */
+        public int nextInt(int bound) {
+            return (int) (((next() & 0xFFFFFFFFL) * bound) >>> 32);
+        }
+
+        /**
+         * Gets a random integer from an origin (inclusive) to a bound (exclusive).
+         *
+         * @param origin the lower bound
+         * @param bound  the upper bound, which must be greater than the origin
+         * @return the random integer
+         */
+        public int nextInt(int origin, int bound) {
+            return origin + nextInt(bound - origin);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.techhounds.houndutil.houndlib.leds;
 
 import java.util.List;
-import java.util.Random;
 import java.util.function.Consumer;
 import java.util.function.DoubleSupplier;
 
@@ -18,6 +17,18 @@ import edu.wpi.first.wpilibj.util.Color;
  * specific LED patterns.
  */
 public class LEDPatterns {
+    /** The resolution of spark chances in the Fire2012 patterns. */
+    private static final int SPARK_RESOLUTION = 1 << 16;
+
+    /** The standard Fire2012 colors, indexed by heat. */
+    private static final int[] FIRE_PALETTE = new int[256];
+
+    static {
+        for (int heat = 0; heat < FIRE_PALETTE.length; heat++) {
+            FIRE_PALETTE[heat] = interpolateHeat(heat);
+        }
+    }
+
     /**
      * Creates a solid LED pattern.
      * 
@@ -238,23 +249,23 @@ public class LEDPatterns {
             int maxBrightness,
             BaseLEDSection section) {
         ExtendedColor extColor = new ExtendedColor(color);
+        int hue = extColor.hue();
+        int saturation = extColor.saturation();
 
         return (AddressableLEDBuffer buffer) -> {
-            double currentTime = Timer.getFPGATimestamp();
             // The wave's phase shift per iteration to create movement
-            double phaseShift = currentTime * waveSpeed;
+            int phaseShift = LEDMath.toTurns(Timer.getFPGATimestamp() * waveSpeed);
 
             for (int i = 0; i < section.length(); i++) {
-                // Calculate wave position for each LED
-                double wavePosition = (2 * Math.PI / length) * i - phaseShift;
-                // Calculate brightness value using sine function
-                // normalize sine output
-                int value = (int) ((Math.sin(wavePosition) + 1) / 2 * (maxBrightness - minBrightness)
-                        + minBrightness);
+                // Calculate wave position for each LED, in fixed-point turns
+                int wavePosition = i * LEDMath.FULL_TURN / length - phaseShift;
+                // Calculate brightness value from the sine table
+                int value = LEDMath.scale(LEDMath.sineUnit(wavePosition), minBrightness, maxBrightness);
+                int rgb = LEDFrame.hsvToPacked(hue, saturation, value);
                 if (section.inverted()) {
-                    buffer.setHSV(section.end() - i, extColor.hue(), extColor.saturation(), value);
+                    setPacked(buffer, section.end() - i, rgb);
                 } else {
-                    buffer.setHSV(i + section.start(), extColor.hue(), extColor.saturation(), value);
+                    setPacked(buffer, i + section.start(), rgb);
                 }
             }
         };
@@ -281,22 +292,19 @@ public class LEDPatterns {
         IntegerContainer hue = new IntegerContainer(0);
 
         return (AddressableLEDBuffer buffer) -> {
-            ExtendedColor extColor = new ExtendedColor(Color.fromHSV(hue.value, 255, 255));
-            double currentTime = Timer.getFPGATimestamp();
             // The wave's phase shift per iteration to create movement
-            double phaseShift = currentTime * waveSpeed;
+            int phaseShift = LEDMath.toTurns(Timer.getFPGATimestamp() * waveSpeed);
 
             for (int i = 0; i < section.length(); i++) {
-                // Calculate wave position for each LED
-                double wavePosition = (2 * Math.PI / length) * i - phaseShift;
-                // Calculate brightness value using sine function
-                // normalize sine output
-                int value = (int) ((Math.sin(wavePosition) + 1) / 2 * (maxBrightness - minBrightness)
-                        + minBrightness);
+                // Calculate wave position for each LED, in fixed-point turns
+                int wavePosition = i * LEDMath.FULL_TURN / length - phaseShift;
+                // Calculate brightness value from the sine table
+                int value = LEDMath.scale(LEDMath.sineUnit(wavePosition), minBrightness, maxBrightness);
+                int rgb = LEDFrame.hsvToPacked(hue.value, 255, value);
                 if (section.inverted()) {
-                    buffer.setHSV(section.end() - i, extColor.hue(), extColor.saturation(), value);
+                    setPacked(buffer, section.end() - i, rgb);
                 } else {
-                    buffer.setHSV(i + section.start(), extColor.hue(), extColor.saturation(), value);
+                    setPacked(buffer, i + section.start(), rgb);
                 }
             }
             hue.value += rainbowSpeed;
@@ -352,30 +360,17 @@ public class LEDPatterns {
      */
     public static Consumer<AddressableLEDBuffer> fire2012(double sparking, double cooling,
             BaseLEDSection section) {
-        Random random = new Random();
+        LEDMath.XorShift random = new LEDMath.XorShift();
         int[] heat = new int[section.length()];
+        int sparkThreshold = (int) (sparking * SPARK_RESOLUTION);
+        int coolingBound = (int) (cooling * 10 * 255 / section.length()) + 2;
 
         return (AddressableLEDBuffer buffer) -> {
-            // Cool down every cell a little
-            for (int i = 0; i < section.length(); i++) {
-                heat[i] = Math.max(0, heat[i] - random.nextInt((int) (cooling * 10 * 255 / section.length()) + 2));
-            }
-
-            // Heat from each cell drifts 'up' and diffuses a little
-            for (int i = section.length() - 1; i > 2; i--) {
-                heat[i] = (heat[i - 1] + heat[i - 2] + heat[i - 2]) / 3;
-            }
-
-            // Randomly ignite new 'sparks' of heat near the bottom
-            if (random.nextDouble() < sparking) {
-                int y = random.nextInt(3);
-                heat[y] = Math.min(heat[y] + random.nextInt(160, 255), 255);
-            }
+            updateHeat(heat, random, sparkThreshold, coolingBound);
 
             // // Convert heat to LED colors
             for (int i = 0, j = section.start(); i < section.length() && j < section.end(); i++, j++) {
-                Color color = interpolateHeat(heat[i]);
-                buffer.setLED(j, color);
+                setPacked(buffer, j, FIRE_PALETTE[heat[i]]);
             }
         };
     }
@@ -400,34 +395,22 @@ public class LEDPatterns {
      */
     public static Consumer<AddressableLEDBuffer> fire2012Palette(double sparking, double cooling, List<Color> colors,
             BaseLEDSection section) {
-        Random random = new Random();
+        int[] palette = LEDMath.palette(colors);
+        LEDMath.XorShift random = new LEDMath.XorShift();
         int[] heat = new int[section.length()];
+        int sparkThreshold = (int) (sparking * SPARK_RESOLUTION);
+        int coolingBound = (int) (cooling * 10 * 255 / section.length()) + 2;
 
         return (AddressableLEDBuffer buffer) -> {
-            // Cool down every cell a little
-            for (int i = 0; i < section.length(); i++) {
-                heat[i] = Math.max(0, heat[i] - random.nextInt((int) (cooling * 10 * 255 / section.length()) + 2));
-            }
-
-            // Heat from each cell drifts 'up' and diffuses a little
-            for (int i = section.length() - 1; i > 2; i--) {
-                heat[i] = (heat[i - 1] + heat[i - 2] + heat[i - 2]) / 3;
-            }
-
-            // Randomly ignite new 'sparks' of heat near the bottom
-            if (random.nextDouble() < sparking) {
-                int y = random.nextInt(3);
-                heat[y] = Math.min(heat[y] + random.nextInt(160, 255), 255);
-            }
+            updateHeat(heat, random, sparkThreshold, coolingBound);
 
             // // Convert heat to LED colors
 
             for (int i = 0, j = section.start(); i < section.length() && j < section.end(); i++, j++) {
-                Color color = interpolateHeat(heat[i], colors);
                 if (section.inverted())
-                    buffer.setLED(section.end() - i, color);
+                    setPacked(buffer, section.end() - i, palette[heat[i]]);
                 else
-                    buffer.setLED(j, color);
+                    setPacked(buffer, j, palette[heat[i]]);
             }
         };
     }
@@ -449,52 +432,76 @@ public class LEDPatterns {
      */
     public static Consumer<AddressableLEDBuffer> fire2012Rainbow(double sparking, double cooling, double rainbowSpeed,
             BaseLEDSection section) {
-        Random random = new Random();
+        LEDMath.XorShift random = new LEDMath.XorShift();
         int[] heat = new int[section.length()];
+        int sparkThreshold = (int) (sparking * SPARK_RESOLUTION);
+        int coolingBound = (int) (cooling * 10 * 255 / section.length()) + 2;
         IntegerContainer hue = new IntegerContainer(0);
+        int[] stops = { 0x000000, 0, 0, 0xFFFFFF };
+        // one palette per hue, built the first time the hue is shown, so a
+        // moving rainbow stops rebuilding palettes after one cycle
+        int[][] palettes = new int[180][];
 
         return (AddressableLEDBuffer buffer) -> {
-            List<Color> colors = List.of(Color.kBlack, Color.fromHSV(hue.value, 255, 192),
-                    Color.fromHSV(hue.value, 128, 255), Color.kWhite);
-            // Cool down every cell a little
-            for (int i = 0; i < section.length(); i++) {
-                heat[i] = Math.max(0, heat[i] - random.nextInt((int) (cooling * 10 * 255 / section.length()) + 2));
-            }
-
-            // Heat from each cell drifts 'up' and diffuses a little
-            for (int i = section.length() - 1; i > 2; i--) {
-                heat[i] = (heat[i - 1] + heat[i - 2] + heat[i - 2]) / 3;
-            }
-
-            // Randomly ignite new 'sparks' of heat near the bottom
-            if (random.nextDouble() < sparking) {
-                int y = random.nextInt(3);
-                heat[y] = Math.min(heat[y] + random.nextInt(160, 255), 255);
+            int h = Math.floorMod(hue.value, 180);
+            if (palettes[h] == null) {
+                stops[1] = LEDFrame.hsvToPacked(h, 255, 192);
+                stops[2] = LEDFrame.hsvToPacked(h, 128, 255);
+                palettes[h] = new int[256];
+                LEDMath.fillPalette(stops, palettes[h]);
             }
+            int[] palette = palettes[h];
+            updateHeat(heat, random, sparkThreshold, coolingBound);
 
             // // Convert heat to LED colors
 
             for (int i = 0, j = section.start(); i < section.length() && j < section.end(); i++, j++) {
-                Color color = interpolateHeat(heat[i], colors);
                 if (section.inverted())
-                    buffer.setLED(section.end() - i, color);
+                    setPacked(buffer, section.end() - i, palette[heat[i]]);
                 else
-                    buffer.setLED(j, color);
+                    setPacked(buffer, j, palette[heat[i]]);
             }
             hue.value += rainbowSpeed;
             hue.value %= 180;
         };
     }
 
+    /**
+     * Cools, diffuses, and sparks a Fire2012 heat map for one frame.
+     * 
+     * @param heat           the heat of each cell [0-255]
+     * @param random         the random number generator
+     * @param sparkThreshold the chance of a new spark, out of
+     *                       {@link #SPARK_RESOLUTION}
+     * @param coolingBound   the exclusive upper bound of the cooling per cell
+     */
+    private static void updateHeat(int[] heat, LEDMath.XorShift random, int sparkThreshold, int coolingBound) {
+        // Cool down every cell a little
+        for (int i = 0; i < heat.length; i++) {
+            heat[i] = Math.max(0, heat[i] - random.nextInt(coolingBound));
+        }
+
+        // Heat from each cell drifts 'up' and diffuses a little
+        for (int i = heat.length - 1; i > 2; i--) {
+            heat[i] = (heat[i - 1] + heat[i - 2] + heat[i - 2]) / 3;
+        }
+
+        // Randomly ignite new 'sparks' of heat near the bottom
+        if (random.nextInt(SPARK_RESOLUTION) < sparkThreshold) {
+            int y = random.nextInt(3);
+            heat[y] = Math.min(heat[y] + random.nextInt(160, 255), 255);
+        }
+    }
+
     /**
      * Interpolates a standard fire color from a heat value from 0-255.
      * 
      * Algorithm derived from Fire2012.
      * 
      * @param heat the "heat" value as a temperature [0-255]
-     * @return the color of the fire corresponding to that heat
+     * @return the packed color of the fire corresponding to that heat
      */
-    private static Color interpolateHeat(int heat) {
+    private static int interpolateHeat(int heat) {
         int t192 = (int) (heat / 255.0 * 192);
 
         int heatramp = (t192 % 64) * 4;
@@ -516,36 +523,10 @@ public class LEDPatterns {
             blue = 0; // no blue
         }
 
-        return new Color(red, green, blue);
+        return LEDFrame.pack(red, green, blue);
     }
 
-    /**
-     * Interpolates a fire color based on a palette of colors, from a heat value
-     * from 0-255.
-     * 
-     * @param heat   the "heat" value as a temperature [0-255]
-     * @param colors the colors to use in the interpolation. the first color is the
-     *               lowest heat, and the last color is the highest heat. a good
-     *               approximation to the original Fire2012 animation is [Black,
-     *               Red, Yellow, White].
-     * @return the color of the fire corresponding to that heat
-     */
-    private static Color interpolateHeat(int heat, List<Color> colors) {
-        double scaled01 = heat / 255.0;
-
-        double scaledValue = scaled01 * (colors.size() - 1);
-        int index = (int) scaledValue;
-        double t = scaledValue - index; // Fractional part of the scaled value
-
-        // Perform linear interpolation
-        Color color1 = colors.get(index);
-        Color color2 = colors.get(Math.min(index + 1, colors.size() - 1));
-
-        double red = Utils.interpolate(color1.red, color2.red, t);
-        double green = Utils.interpolate(color1.green, color2.green, t);
-        double blue = Utils.interpolate(color1.blue, color2.blue, t);
-
-        return new Color(red, green, blue);
+    private static void setPacked(AddressableLEDBuffer buffer, int index, int rgb) {
+        buffer.setRGB(index, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
     }
-
 }
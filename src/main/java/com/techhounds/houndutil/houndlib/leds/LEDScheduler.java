@@ -0,0 +1,232 @@
+package com.techhounds.houndutil.houndlib.leds;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Runs an {@link LEDEngine} on its own low-priority thread at a fixed frame
+ * rate, so rendering does not add to the main loop and animations stay smooth
+ * when the main loop overruns.
+ *
+ * <p>
+ * The main loop only posts pattern selections, which are handed to the render
+ * thread without locking and applied before the next frame. Frame times come
+ * from {@link System#nanoTime()} rather than a loop count, so animation speed
+ * does not depend on how often frames are actually rendered.
+ */
+public class LEDScheduler {
+    /** The default frame rate, in frames per second. */
+    public static final double DEFAULT_FRAME_RATE = 50.0;
+
+    /** A pending pattern, wrapped so that a null pattern can be posted. */
+    private record Selection(FramePattern pattern) {
+    }
+
+    private final LEDEngine engine;
+    private final Thread thread;
+    private volatile boolean running = false;
+    private volatile long periodNanos;
+
+    private final AtomicReference<Selection> pendingSelection = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<Runnable> pendingActions = new ConcurrentLinkedQueue<>();
+
+    private final long epochNanos = System.nanoTime();
+
+    private volatile long frameCount = 0;
+    private volatile long overrunCount = 0;
+    private volatile double lastRenderTime = 0;
+
+    /**
+     * Creates a scheduler at the default frame rate. Call {@link #start()} to
+     * begin rendering.
+     *
+     * @param engine the engine to render with, which should only be updated by
+     *               this scheduler once started
+     */
+    public LEDScheduler(LEDEngine engine) {
+        this(engine, DEFAULT_FRAME_RATE);
+    }
+
+    /**
+     * Creates a scheduler. Call {@link #start()} to begin rendering.
+     *
+     * @param engine    the engine to render with, which should only be updated by
+     *                  this scheduler once started
+     * @param frameRate the frame rate, in frames per second
+     */
+    public LEDScheduler(LEDEngine engine, double frameRate) {
+        this.engine = engine;
+        setFrameRate(frameRate);
+
+        thread = new Thread(this::run, "LEDScheduler");
+        // don't hold up program shutdown, and yield to control threads
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Sets the frame rate. Takes effect on the next frame.
+     *
+     * @param frameRate the frame rate, in frames per second
+     */
+    public void setFrameRate(double frameRate) {
+        if (!(frameRate > 0)) {
+            throw new IllegalArgumentException("Frame rate must be positive");
+        }
+        periodNanos = (long) (1e9 / frameRate);
+    }
+
+    public double getFrameRate() {
+        return 1e9 / periodNanos;
+    }
+
+    /**
+     * Selects the pattern to render. Safe to call from any thread; if several
+     * patterns are posted between frames, only the last is used.
+     *
+     * @param pattern the pattern, or null for all black
+     */
+    public void post(FramePattern pattern) {
+        pendingSelection.set(new Selection(pattern));
+    }
+
+    /**
+     * Queues an action to run on the render thread before the next frame, such
+     * as changing the layers of an {@link LEDCompositor}. Safe to call from any
+     * thread. Actions run in the order they were posted.
+     *
+     * @param action the action to run
+     */
+    public void postAction(Runnable action) {
+        pendingActions.add(action);
+    }
+
+    /**
+     * Starts the render thread.
+     */
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the render thread.
+     */
+    public void stop() {
+        stop(0);
+    }
+
+    /**
+     * Stops the render thread with a timeout.
+     *
+     * @param millis the time to wait in milliseconds
+     */
+    public void stop(long millis) {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(millis);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Applies pending selections and renders one frame on the calling thread.
+     * Used by the render thread, and can be called directly when the thread is
+     * not started (for example, in tests).
+     *
+     * @return whether the strip was written
+     */
+    public boolean renderFrame() {
+        Selection selection = pendingSelection.getAndSet(null);
+        if (selection != null) {
+            engine.setPattern(selection.pattern());
+        }
+        Runnable action;
+        while ((action = pendingActions.poll()) != null) {
+            action.run();
+        }
+
+        long start = System.nanoTime();
+        boolean pushed = engine.update(getTimeSeconds());
+        lastRenderTime = (System.nanoTime() - start) / 1e9;
+        frameCount++;
+        return pushed;
+    }
+
+    private void run() {
+        long nextFrame = System.nanoTime();
+        while (running) {
+            try {
+                renderFrame();
+            } catch (RuntimeException e) {
+                // keep the thread alive, but stop rendering the broken pattern
+                DriverStation.reportError("[houndlib] LED pattern failed: " + e, e.getStackTrace());
+                engine.setPattern(null);
+            }
+
+            long period = periodNanos;
+            nextFrame += period;
+            long now = System.nanoTime();
+            if (now - nextFrame > 0) {
+                // skip the missed frames rather than rendering them back to back
+                overrunCount++;
+                nextFrame = now + period - (now - nextFrame) % period;
+            }
+            long wait;
+            while (running && (wait = nextFrame - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+
+    /**
+     * Gets the time passed to patterns, in seconds since the scheduler was
+     * created.
+     *
+     * @return the time, in seconds
+     */
+    public double getTimeSeconds() {
+        return (System.nanoTime() - epochNanos) / 1e9;
+    }
+
+    public LEDEngine getEngine() {
+        return engine;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Gets the number of frames rendered.
+     *
+     * @return the frame count
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of times a frame took longer than the frame period and
+     * frames were skipped.
+     *
+     * @return the overrun count
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * Gets how long the last frame took to render and send.
+     *
+     * @return the render time, in seconds
+     */
+    public double getLastRenderTime() {
+        return lastRenderTime;
+    }
+}
@@ -0,0 +1,61 @@
+package com.techhounds.houndutil.houndlib.leds;
+
+/**
+ * A periodic pattern rendered ahead of time into a table of frames for one
+ * section. Rendering is a single array copy of the frame for the current time,
+ * so the per-pixel math is paid once at construction instead of every cycle.
+ * Created through {@link LEDFramePatterns}.
+ */
+public class PrecomputedPattern implements FramePattern {
+    private final BaseLEDSection section;
+    private final byte[][] frames;
+    private final double period;
+
+    /**
+     * Creates a pattern from a table of frames.
+     *
+     * @param section the section the frames cover
+     * @param frames  the frames, evenly spaced over one period, each holding
+     *                three bytes per LED of the section
+     * @param period  the time for one loop through the frames, in seconds
+     */
+    public PrecomputedPattern(BaseLEDSection section, byte[][] frames, double period) {
+        if (frames.length == 0) {
+            throw new IllegalArgumentException("A precomputed pattern needs at least one frame");
+        }
+        this.section = section;
+        this.frames = frames;
+        this.period = period;
+    }
+
+    @Override
+    public void render(LEDFrame frame, double timeSeconds) {
+        byte[] source = frames[getFrameIndex(timeSeconds)];
+        System.arraycopy(source, 0, frame.getData(), section.start() * 3, source.length);
+    }
+
+    /**
+     * Gets the index of the frame shown at a time.
+     *
+     * @param timeSeconds the time, in seconds
+     * @return the frame index
+     */
+    public int getFrameIndex(double timeSeconds) {
+        if (frames.length == 1 || period <= 0) {
+            return 0;
+        }
+        double phase = (timeSeconds % period) / period;
+        if (phase < 0) {
+            phase += 1;
+        }
+        return Math.min(frames.length - 1, (int) (phase * frames.length));
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public double getPeriod() {
+        return period;
+    }
+}
@@ -0,0 +1,307 @@
+package com.techhounds.houndutil.houndlib.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * Swerve drive kinematics specialized for a module layout that is fixed at
+ * construction. The inverse kinematics coefficients and the pseudo-inverse used
+ * for forward kinematics are precomputed, so every conversion is a handful of
+ * scalar multiply-adds into caller-owned buffers, instead of an EJML matrix
+ * multiplication and a fresh array of {@link SwerveModuleState}s.
+ *
+ * <p>
+ * Produces the same results as {@link SwerveDriveKinematics}, including
+ * remembering the last heading of each module when it is stopped. Because of
+ * that memory, an instance is not thread-safe; use one per control thread.
+ */
+public class FastSwerveKinematics {
+    /** The number of modules. */
+    private final int numModules;
+    /** The module x locations, in meters. */
+    private final double[] moduleX;
+    /** The module y locations, in meters. */
+    private final double[] moduleY;
+
+    // rows of the pseudo-inverse of the inverse kinematics matrix, split into the
+    // coefficients for each module's x and y velocity
+    private final double[] vxFromModuleX;
+    private final double[] vxFromModuleY;
+    private final double[] vyFromModuleX;
+    private final double[] vyFromModuleY;
+    private final double[] omegaFromModuleX;
+    private final double[] omegaFromModuleY;
+
+    /** The last heading of each module, in radians. */
+    private final double[] moduleHeadings;
+
+    /**
+     * Creates a new kinematics object.
+     *
+     * @param moduleLocations the locations of the modules relative to the center
+     *                        of the robot
+     */
+    public FastSwerveKinematics(Translation2d... moduleLocations) {
+        if (moduleLocations.length < 2) {
+            throw new IllegalArgumentException("A swerve drive requires at least two modules");
+        }
+        numModules = moduleLocations.length;
+        moduleX = new double[numModules];
+        moduleY = new double[numModules];
+        moduleHeadings = new double[numModules];
+
+        // inverse kinematics rows are [1, 0, -y] and [0, 1, x] for each module, so
+        // A^T A has a closed form
+        double sumX = 0;
+        double sumY = 0;
+        double sumSquares = 0;
+        for (int i = 0; i < numModules; ++i) {
+            moduleX[i] = moduleLocations[i].getX();
+            moduleY[i] = moduleLocations[i].getY();
+            sumX += moduleX[i];
+            sumY += moduleY[i];
+            sumSquares += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+        }
+        double[][] ata = {
+                { numModules, 0, -sumY },
+                { 0, numModules, sumX },
+                { -sumY, sumX, sumSquares }
+        };
+        double[][] inv = invert3x3(ata);
+
+        // (A^T A)^-1 A^T
+        vxFromModuleX = new double[numModules];
+        vxFromModuleY = new double[numModules];
+        vyFromModuleX = new double[numModules];
+        vyFromModuleY = new double[numModules];
+        omegaFromModuleX = new double[numModules];
+        omegaFromModuleY = new double[numModules];
+        for (int i = 0; i < numModules; ++i) {
+            vxFromModuleX[i] = inv[0][0] - inv[0][2] * moduleY[i];
+            vxFromModuleY[i] = inv[0][1] + inv[0][2] * moduleX[i];
+            vyFromModuleX[i] = inv[1][0] - inv[1][2] * moduleY[i];
+            vyFromModuleY[i] = inv[1][1] + inv[1][2] * moduleX[i];
+            omegaFromModuleX[i] = inv[2][0] - inv[2][2] * moduleY[i];
+            omegaFromModuleY[i] = inv[2][1] + inv[2][2] * moduleX[i];
+        }
+    }
+
+    private static double[][] invert3x3(double[][] m) {
+        double c00 = m[1][1] * m[2][2] - m[1][2] * m[2][1];
+        double c01 = m[1][2] * m[2][0] - m[1][0] * m[2][2];
+        double c02 = m[1][0] * m[2][1] - m[1][1] * m[2][0];
+        double det = m[0][0] * c00 + m[0][1] * c01 + m[0][2] * c02;
+        if (Math.abs(det) < 1e-12) {
+            throw new IllegalArgumentException("Module locations must not be collinear");
+        }
+        double invDet = 1.0 / det;
+        return new double[][] {
+                { c00 * invDet, (m[0][2] * m[2][1] - m[0][1] * m[2][2]) * invDet,
+                        (m[0][1] * m[1][2] - m[0][2] * m[1][1]) * invDet },
+                { c01 * invDet, (m[0][0] * m[2][2] - m[0][2] * m[2][0]) * invDet,
+                        (m[0][2] * m[1][0] - m[0][0] * m[1][2]) * invDet },
+                { c02 * invDet, (m[0][1] * m[2][0] - m[0][0] * m[2][1]) * invDet,
+                        (m[0][0] * m[1][1] - m[0][1] * m[1][0]) * invDet }
+        };
+    }
+
+    /**
+     * Gets the number of modules.
+     *
+     * @return the number of modules
+     */
+    public int getNumModules() {
+        return numModules;
+    }
+
+    /**
+     * Performs inverse kinematics, converting chassis speeds into module speeds
+     * and angles. If a module is stopped, its last heading is kept. If the chassis
+     * is completely stopped, every module keeps its last heading.
+     *
+     * @param vx        the x velocity of the chassis, in m/s
+     * @param vy        the y velocity of the chassis, in m/s
+     * @param omega     the angular velocity of the chassis, in rad/s
+     * @param speedsOut the output module speeds, in m/s
+     * @param anglesOut the output module angles, in radians
+     */
+    public void toModuleStates(double vx, double vy, double omega, double[] speedsOut, double[] anglesOut) {
+        if (vx == 0.0 && vy == 0.0 && omega == 0.0) {
+            for (int i = 0; i < numModules; ++i) {
+                speedsOut[i] = 0.0;
+                anglesOut[i] = moduleHeadings[i];
+            }
+            return;
+        }
+        for (int i = 0; i < numModules; ++i) {
+            double x = vx - omega * moduleY[i];
+            double y = vy + omega * moduleX[i];
+            double speed = Math.hypot(x, y);
+            if (speed > 1e-6) {
+                moduleHeadings[i] = Math.atan2(y, x);
+            }
+            speedsOut[i] = speed;
+            anglesOut[i] = moduleHeadings[i];
+        }
+    }
+
+    /**
+     * Performs inverse kinematics without converting to module speeds and angles,
+     * giving the velocity of each module as x and y components. Unlike
+     * {@link #toModuleStates(double, double, double, double[], double[])}, this
+     * does not touch the remembered module headings.
+     *
+     * @param vx    the x velocity of the chassis, in m/s
+     * @param vy    the y velocity of the chassis, in m/s
+     * @param omega the angular velocity of the chassis, in rad/s
+     * @param xOut  the output x velocity of each module, in m/s
+     * @param yOut  the output y velocity of each module, in m/s
+     */
+    public void toModuleVelocities(double vx, double vy, double omega, double[] xOut, double[] yOut) {
+        for (int i = 0; i < numModules; ++i) {
+            xOut[i] = vx - omega * moduleY[i];
+            yOut[i] = vy + omega * moduleX[i];
+        }
+    }
+
+    /**
+     * Performs forward kinematics, converting module speeds and angles into the
+     * least-squares chassis speeds.
+     *
+     * @param speeds the module speeds, in m/s
+     * @param angles the module angles, in radians
+     * @param out    the chassis speeds to write into
+     */
+    public void toChassisSpeeds(double[] speeds, double[] angles, ChassisSpeeds out) {
+        double vx = 0;
+        double vy = 0;
+        double omega = 0;
+        for (int i = 0; i < numModules; ++i) {
+            double x = speeds[i] * Math.cos(angles[i]);
+            double y = speeds[i] * Math.sin(angles[i]);
+            vx += vxFromModuleX[i] * x + vxFromModuleY[i] * y;
+            vy += vyFromModuleX[i] * x + vyFromModuleY[i] * y;
+            omega += omegaFromModuleX[i] * x + omegaFromModuleY[i] * y;
+        }
+        out.vxMetersPerSecond = vx;
+        out.vyMetersPerSecond = vy;
+        out.omegaRadiansPerSecond = omega;
+    }
+
+    /**
+     * Performs forward kinematics, converting module states into the
+     * least-squares chassis speeds. Uses the cached sine and cosine of each module
+     * angle.
+     *
+     * @param states the module states
+     * @param out    the chassis speeds to write into
+     * @return {@code out}, for convenience
+     */
+    public ChassisSpeeds toChassisSpeeds(SwerveModuleState[] states, ChassisSpeeds out) {
+        double vx = 0;
+        double vy = 0;
+        double omega = 0;
+        for (int i = 0; i < numModules; ++i) {
+            double x = states[i].speedMetersPerSecond * states[i].angle.getCos();
+            double y = states[i].speedMetersPerSecond * states[i].angle.getSin();
+            vx += vxFromModuleX[i] * x + vxFromModuleY[i] * y;
+            vy += vyFromModuleX[i] * x + vyFromModuleY[i] * y;
+            omega += omegaFromModuleX[i] * x + omegaFromModuleY[i] * y;
+        }
+        out.vxMetersPerSecond = vx;
+        out.vyMetersPerSecond = vy;
+        out.omegaRadiansPerSecond = omega;
+        return out;
+    }
+
+    /**
+     * Scales module speeds down uniformly so that none exceed the maximum, in
+     * place. Each speed is scaled in the same order of operations as
+     * {@link SwerveDriveKinematics#desaturateWheelSpeeds(SwerveModuleState[], double)},
+     * so the results are identical.
+     *
+     * @param speeds   the module speeds, in m/s
+     * @param maxSpeed the maximum attainable module speed, in m/s
+     * @return the scale factor that was applied, 1.0 if no scaling was needed
+     */
+    public static double desaturateWheelSpeeds(double[] speeds, double maxSpeed) {
+        double realMaxSpeed = 0;
+        for (int i = 0; i < speeds.length; ++i) {
+            realMaxSpeed = Math.max(realMaxSpeed, Math.abs(speeds[i]));
+        }
+        if (realMaxSpeed <= maxSpeed) {
+            return 1.0;
+        }
+        for (int i = 0; i < speeds.length; ++i) {
+            speeds[i] = speeds[i] / realMaxSpeed * maxSpeed;
+        }
+        return maxSpeed / realMaxSpeed;
+    }
+
+    /**
+     * Discretizes continuous chassis speeds over a timestep, equivalent to
+     * {@link ChassisSpeeds#discretize(double, double, double, double)}. This
+     * compensates for swerve skew when translating and rotating simultaneously.
+     *
+     * @param vx    the x velocity of the chassis, in m/s
+     * @param vy    the y velocity of the chassis, in m/s
+     * @param omega the angular velocity of the chassis, in rad/s
+     * @param dt    the timestep, in seconds
+     * @param out   the chassis speeds to write into
+     */
+    public static void discretize(double vx, double vy, double omega, double dt, ChassisSpeeds out) {
+        // the log map of the pose reached by following the speeds for dt, without
+        // constructing the Pose2d and Twist2d
+        double dtheta = omega * dt;
+        double halfDtheta = dtheta / 2.0;
+        double cosMinusOne = Math.cos(dtheta) - 1.0;
+        double halfThetaByTanOfHalfDtheta;
+        if (Math.abs(cosMinusOne) < 1e-9) {
+            halfThetaByTanOfHalfDtheta = 1.0 - 1.0 / 12.0 * dtheta * dtheta;
+        } else {
+            halfThetaByTanOfHalfDtheta = -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+        }
+        out.vxMetersPerSecond = vx * halfThetaByTanOfHalfDtheta + vy * halfDtheta;
+        out.vyMetersPerSecond = -vx * halfDtheta + vy * halfThetaByTanOfHalfDtheta;
+        out.omegaRadiansPerSecond = omega;
+    }
+
+    /**
+     * Converts field-relative chassis speeds into robot-relative chassis speeds.
+     *
+     * @param vx         the field-relative x velocity, in m/s
+     * @param vy         the field-relative y velocity, in m/s
+     * @param omega      the angular velocity, in rad/s
+     * @param yawRadians the yaw of the robot, in radians
+     * @param out        the chassis speeds to write into
+     */
+    public static void fromFieldRelativeSpeeds(double vx, double vy, double omega, double yawRadians,
+            ChassisSpeeds out) {
+        double cos = Math.cos(yawRadians);
+        double sin = Math.sin(yawRadians);
+        out.vxMetersPerSecond = vx * cos + vy * sin;
+        out.vyMetersPerSecond = -vx * sin + vy * cos;
+        out.omegaRadiansPerSecond = omega;
+    }
+
+    /**
+     * Minimizes the change in heading a module needs, by reversing the drive
+     * direction and flipping the angle if the module would otherwise rotate more
+     * than 90 degrees. Equivalent to
+     * {@link SwerveModuleState#optimize(edu.wpi.first.math.geometry.Rotation2d)}.
+     *
+     * @param speeds       the module speeds, in m/s, modified in place
+     * @param angles       the module angles, in radians, modified in place
+     * @param index        the index of the module to optimize
+     * @param currentAngle the current angle of the module, in radians
+     */
+    public static void optimize(double[] speeds, double[] angles, int index, double currentAngle) {
+        if (Math.abs(MathUtil.angleModulus(angles[index] - currentAngle)) > Math.PI / 2.0) {
+            speeds[index] *= -1.0;
+            angles[index] = MathUtil.angleModulus(angles[index] + Math.PI);
+        }
+    }
+}
@@ -52,6 +52,13 @@ import edu.wpi.first.wpilibj.simulation.DCMotorSim;
  * Supports simulated operation as well, with full closed-loop control.
  * 
  * For status signals to update, you must call SignalManager.update().
+ * 
+ * <p>
+ * The control requests are reused, so a state is prepared into shared fields
+ * and sent later. Only one thread should command a module at a time; methods
+ * that touch the requests or the simulation are synchronized, and
+ * {@link KrakenSwerveDrive} hands control between the main loop and its
+ * odometry thread so they do not both drive the same module.
  */
 @LoggedObject
 public class KrakenCoaxialSwerveModule {
@@ -221,7 +228,15 @@ public class KrakenCoaxialSwerveModule {
     private final VelocityVoltage driveVelocityRequest = new VelocityVoltage(0);
     private final MotionMagicVoltage steerPositionRequest = new MotionMagicVoltage(0);
 
-    private SwerveModuleState previousState = new SwerveModuleState();
+    /**
+     * The last commanded closed-loop drive speed, in m/s. Stored by value, since
+     * callers may reuse the same state objects every loop.
+     */
+    private double previousSpeed = 0.0;
+    /** Whether the last prepared state uses open loop drive control. */
+    private boolean preparedOpenLoop = true;
+    /** The period of the last prepared state, in seconds. */
+    private double preparedDt = 0.020;
 
     // status signals to collect, stored here so we can update them all at once
     private final StatusSignal<Angle> drivePosition;
@@ -400,6 +415,15 @@ public class KrakenCoaxialSwerveModule {
         return Rotation2d.fromRotations(getSteerMotorPosition());
     }
 
+    /**
+     * Gets the angle of the wheel without allocating a Rotation2d.
+     * 
+     * @return the angle of the wheel, in radians
+     */
+    public double getWheelAngleRadians() {
+        return getSteerMotorPosition() * 2 * Math.PI;
+    }
+
     @Log
     public SwerveModulePosition getPosition() {
         return new SwerveModulePosition(
@@ -440,36 +464,83 @@ public class KrakenCoaxialSwerveModule {
         driveMotor.getConfigurator().apply(currentConfigs);
     }
 
-    public void stop() {
+    public synchronized void stop() {
         driveMotor.setControl(driveVoltageRequest.withOutput(0));
         steerMotor.set(0);
     }
 
     /**
-     * Internal common implementation for setting the state of the swerve module.
-     * Updates simulation states of the module if needed.
+     * Sets whether control requests should be applied on a timesync boundary, so
+     * that every device on the bus actuates at the same time. Requires Phoenix Pro
+     * and a CANivore.
+     * 
+     * @param useTimesync whether to use timesync for control requests
+     */
+    public synchronized void setUseTimesync(boolean useTimesync) {
+        driveVoltageRequest.UseTimesync = useTimesync;
+        driveVelocityRequest.UseTimesync = useTimesync;
+        steerPositionRequest.UseTimesync = useTimesync;
+    }
+
+    /**
+     * Fills this module's reusable control requests with the given state, without
+     * sending them. Call {@link #applyPreparedState()} to send them, so that the
+     * requests of every module can be built first and then sent back-to-back.
      * 
      * @param state    the desired state of the swerve module
      * @param openLoop whether the drive motor should use open loop velocity control
+     * @param dt       the time since the last state was set, in seconds
      */
-    private void setStateInternal(SwerveModuleState state, boolean openLoop) {
+    public void prepareState(SwerveModuleState state, boolean openLoop, double dt) {
+        prepareState(state.speedMetersPerSecond, state.angle.getRadians(), openLoop, dt);
+    }
+
+    /**
+     * Fills this module's reusable control requests with the given speed and
+     * angle, without sending them.
+     * 
+     * @param speedMetersPerSecond the desired speed of the wheel, in m/s
+     * @param angleRadians         the desired angle of the wheel, in radians
+     * @param openLoop             whether the drive motor should use open loop
+     *                             velocity control
+     * @param dt                   the time since the last state was set, in
+     *                             seconds
+     */
+    public synchronized void prepareState(double speedMetersPerSecond, double angleRadians, boolean openLoop, double dt) {
+        preparedOpenLoop = openLoop;
+        preparedDt = dt;
         if (openLoop) {
-            driveMotor.setControl(driveVoltageRequest.withOutput(
-                    state.speedMetersPerSecond / SWERVE_CONSTANTS.MAX_DRIVING_VELOCITY.in(MetersPerSecond) * 12.0));
+            driveVoltageRequest.Output = speedMetersPerSecond
+                    / SWERVE_CONSTANTS.MAX_DRIVING_VELOCITY.in(MetersPerSecond) * 12.0;
         } else {
-            driveMotor.setControl(driveVelocityRequest
-                    .withVelocity(state.speedMetersPerSecond / SWERVE_CONSTANTS.WHEEL_CIRCUMFERENCE.in(Meters))
-                    .withAcceleration((state.speedMetersPerSecond - previousState.speedMetersPerSecond) / 0.020
-                            / SWERVE_CONSTANTS.WHEEL_CIRCUMFERENCE.in(Meters)));
+            driveVelocityRequest.Velocity = speedMetersPerSecond / SWERVE_CONSTANTS.WHEEL_CIRCUMFERENCE.in(Meters);
+            driveVelocityRequest.Acceleration = (speedMetersPerSecond - previousSpeed) / dt
+                    / SWERVE_CONSTANTS.WHEEL_CIRCUMFERENCE.in(Meters);
 
-            previousState = state;
+            previousSpeed = speedMetersPerSecond;
         }
 
-        steerMotor.setControl(steerPositionRequest.withPosition(state.angle.getRotations()));
+        steerPositionRequest.Position = angleRadians / (2 * Math.PI);
+    }
+
+    /**
+     * Sends the control requests filled by
+     * {@link #prepareState(SwerveModuleState, boolean, double)}. Updates
+     * simulation states of the module if needed.
+     */
+    public synchronized void applyPreparedState() {
+        driveMotor.setControl(preparedOpenLoop ? driveVoltageRequest : driveVelocityRequest);
+        steerMotor.setControl(steerPositionRequest);
+    }
 
+    /**
+     * Advances the simulated motors by the period of the last prepared state. Does
+     * nothing on a real robot.
+     */
+    public synchronized void updateSimulation() {
         if (RobotBase.isSimulation()) {
             driveMotorSim.setInputVoltage(driveMotor.getSimState().getMotorVoltage());
-            driveMotorSim.update(0.020);
+            driveMotorSim.update(preparedDt);
 
             driveMotor.getSimState()
                     .setRotorVelocity(driveMotorSim.getAngularVelocityRPM() * SWERVE_CONSTANTS.DRIVE_GEARING / 60.0);
@@ -477,18 +548,54 @@ public class KrakenCoaxialSwerveModule {
                     .setRawRotorPosition(driveMotorSim.getAngularPositionRotations() * SWERVE_CONSTANTS.DRIVE_GEARING);
 
             steerMotorSim.setInputVoltage(steerMotor.getSimState().getMotorVoltage());
-            steerMotorSim.update(0.020);
+            steerMotorSim.update(preparedDt);
 
             steerMotor.getSimState().setRawRotorPosition(steerMotorSim.getAngularPositionRotations());
             steerCanCoder.getSimState().setRawPosition(steerMotorSim.getAngularPositionRotations());
         }
     }
 
+    /**
+     * Internal common implementation for setting the state of the swerve module.
+     * Updates simulation states of the module if needed.
+     * 
+     * @param state    the desired state of the swerve module
+     * @param openLoop whether the drive motor should use open loop velocity control
+     * @param dt       the time since the last state was set, in seconds
+     */
+    private synchronized void setStateInternal(SwerveModuleState state, boolean openLoop, double dt) {
+        prepareState(state, openLoop, dt);
+        applyPreparedState();
+        updateSimulation();
+    }
+
     public void setState(SwerveModuleState state) {
-        setStateInternal(state, true);
+        setStateInternal(state, true, 0.020);
+    }
+
+    /**
+     * Sets the state of the swerve module with open loop drive control, when
+     * called at a rate other than the main loop.
+     * 
+     * @param state the desired state of the swerve module
+     * @param dt    the time since the last state was set, in seconds
+     */
+    public void setState(SwerveModuleState state, double dt) {
+        setStateInternal(state, true, dt);
     }
 
     public void setStateClosedLoop(SwerveModuleState state) {
-        setStateInternal(state, false);
+        setStateInternal(state, false, 0.020);
+    }
+
+    /**
+     * Sets the state of the swerve module with closed loop drive control, when
+     * called at a rate other than the main loop.
+     * 
+     * @param state the desired state of the swerve module
+     * @param dt    the time since the last state was set, in seconds
+     */
+    public void setStateClosedLoop(SwerveModuleState state, double dt) {
+        setStateInternal(state, false, dt);
     }
 }
\ No newline at end of file
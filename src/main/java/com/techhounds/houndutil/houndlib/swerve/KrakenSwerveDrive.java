@@ -6,7 +6,9 @@ import static edu.wpi.first.units.Units.Rotations;
 import static edu.wpi.first.units.Units.RotationsPerSecond;
 import static edu.wpi.first.units.Units.Volts;
 
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.ctre.phoenix6.BaseStatusSignal;
@@ -17,6 +19,7 @@ import com.ctre.phoenix6.hardware.Pigeon2;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import com.pathplanner.lib.util.DriveFeedforwards;
 import com.techhounds.houndutil.houndauto.AutoManager;
+import com.techhounds.houndutil.houndlib.OdometryHistory;
 import com.techhounds.houndutil.houndlib.Utils;
 import com.techhounds.houndutil.houndlib.subsystems.BaseSwerveDrive.DriveMode;
 import com.techhounds.houndutil.houndlib.swerve.KrakenCoaxialSwerveModule.SwerveConstants;
@@ -43,6 +46,7 @@ import edu.wpi.first.units.measure.MutDistance;
 import edu.wpi.first.units.measure.MutLinearVelocity;
 import edu.wpi.first.units.measure.MutVoltage;
 import edu.wpi.first.units.measure.Voltage;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.Threads;
@@ -61,6 +65,9 @@ public class KrakenSwerveDrive {
     /** The back right swerve module. */
     private final KrakenCoaxialSwerveModule backRight;
 
+    /** All swerve modules, in the order front left, front right, back left, back right. */
+    private final KrakenCoaxialSwerveModule[] modules;
+
     /** The Pigeon 2.0 gyroscope, accelerometer, and magnetometer. */
     private final Pigeon2 pigeon;
 
@@ -71,15 +78,36 @@ public class KrakenSwerveDrive {
     private final SwerveDrivePoseEstimator poseEstimator;
     /** The precise pose estimator for the swerve drive. */
     private final SwerveDrivePoseEstimator precisePoseEstimator;
+    /**
+     * The estimated pose at each odometry update, for latency-compensated vision.
+     * Two seconds at 250Hz.
+     */
+    private final OdometryHistory odometryHistory = new OdometryHistory(500);
 
     /** The kinematics constants for the swerve drive. */
     private final SwerveDriveKinematics kinematics;
+    /**
+     * Precomputed scalar kinematics for the main loop drive path. The odometry
+     * thread uses the one owned by its setpoint generator.
+     */
+    private final FastSwerveKinematics fastKinematics;
+    /**
+     * The setpoint generator for high-rate control. Only used on the odometry
+     * thread.
+     */
+    private final SwerveSetpointGenerator highRateSetpointGenerator;
 
     /** The orchestra for playing music through the motors. */
     private final Orchestra orchestra = new Orchestra();
 
     /** Lock for accessing the pose estimator from multiple threads. */
     private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    /**
+     * Lock held while commanding the modules, so a batch of prepared requests is
+     * never interleaved with another thread's batch, such as when high-rate
+     * control is enabled or disabled mid-loop.
+     */
+    private final ReentrantLock moduleLock = new ReentrantLock();
     /** The odometry thread for 250Hz odometry updates. */
     private final OdometryThread odometryThread;
 
@@ -102,10 +130,19 @@ public class KrakenSwerveDrive {
     @Log(groups = "control")
     private ChassisSpeeds adjustedChassisSpeeds = new ChassisSpeeds();
 
-    /** The last commanded module states. */
+    /**
+     * The last commanded module states. Reassigned by the odometry thread in
+     * high-rate control.
+     */
     @Log(groups = "control")
-    private SwerveModuleState[] commandedModuleStates = new SwerveModuleState[] { new SwerveModuleState(),
+    private volatile SwerveModuleState[] commandedModuleStates = new SwerveModuleState[] { new SwerveModuleState(),
+            new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState() };
+    /** The module states commanded from the main loop, updated in place. */
+    private final SwerveModuleState[] driveModuleStates = new SwerveModuleState[] { new SwerveModuleState(),
             new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState() };
+    // scratch buffers for the main loop drive path
+    private final double[] driveModuleSpeeds = new double[4];
+    private final double[] driveModuleAngles = new double[4];
 
     // SysId measurement variables
     private final MutVoltage sysidDriveAppliedVoltageMeasure = Volts.mutable(0);
@@ -118,6 +155,8 @@ public class KrakenSwerveDrive {
     private final MutVoltage sysidSteerAppliedVoltageMeasure = Volts.mutable(0);
     private final MutAngle sysidSteerPositionMeasure = Rotations.mutable(0);
     private final MutAngularVelocity sysidSteerVelocityMeasure = RotationsPerSecond.mutable(0);
+    /** The reused voltage request for the steer motors during SysId. */
+    private final VoltageOut sysidSteerVoltageRequest = new VoltageOut(0);
     /** The sysid routine for the steer motors */
     private final SysIdRoutine sysIdSteer;
 
@@ -133,6 +172,34 @@ public class KrakenSwerveDrive {
     @Log(groups = "odometry")
     private int failedDaqs = 0;
 
+    /**
+     * A command posted from the main loop to the odometry thread when high-rate
+     * control is enabled. Either chassis speeds for the setpoint generator, or
+     * module states to send directly (for example, locking the wheels). Never
+     * modified after posting, so it can be handed off through an
+     * {@link AtomicReference} without locking.
+     */
+    private record HighRateRequest(double vx, double vy, double omega, boolean fieldOriented,
+            boolean closedLoop, SwerveModuleState[] moduleStates) {
+        HighRateRequest(double vx, double vy, double omega, boolean fieldOriented, boolean closedLoop) {
+            this(vx, vy, omega, fieldOriented, closedLoop, null);
+        }
+    }
+
+    /** The latest chassis speeds command for high-rate control. */
+    private final AtomicReference<HighRateRequest> highRateMailbox = new AtomicReference<>(
+            new HighRateRequest(0, 0, 0, false, false));
+    /**
+     * Whether module setpoints are generated and sent from the odometry thread
+     * rather than the main loop.
+     */
+    @Log(groups = "control")
+    private volatile boolean highRateControlEnabled = false;
+    /** The kinematic limits used by the setpoint generator in high-rate control. */
+    private volatile ModuleLimits highRateModuleLimits;
+    /** Whether a rejected direct module command has been reported since enabling. */
+    private boolean reportedHighRateConflict = false;
+
     /**
      * Initializes a swerve drive of KrakenCoaxialSwerveModules.
      * 
@@ -162,6 +229,7 @@ public class KrakenSwerveDrive {
         this.frontRight = frontRight;
         this.backLeft = backLeft;
         this.backRight = backRight;
+        this.modules = new KrakenCoaxialSwerveModule[] { frontLeft, frontRight, backLeft, backRight };
 
         this.pigeon = pigeon;
 
@@ -179,6 +247,7 @@ public class KrakenSwerveDrive {
                 new Pose2d(0, 0, Rotation2d.kZero));
 
         this.kinematics = kinematics;
+        this.fastKinematics = new FastSwerveKinematics(kinematics.getModules());
 
         this.constants = constants;
 
@@ -201,6 +270,9 @@ public class KrakenSwerveDrive {
                 sysIdConfigDrive,
                 new SysIdRoutine.Mechanism(
                         (Voltage volts) -> {
+                            if (rejectInHighRateControl("SysId")) {
+                                return;
+                            }
                             drive(new ChassisSpeeds(
                                     0,
                                     0, // TODO this should really be the max theta velocity
@@ -242,10 +314,19 @@ public class KrakenSwerveDrive {
                 sysIdConfigSteer,
                 new SysIdRoutine.Mechanism(
                         (Voltage volts) -> {
-                            frontLeft.getSteerMotor().setControl(new VoltageOut(volts));
-                            frontRight.getSteerMotor().setControl(new VoltageOut(volts));
-                            backLeft.getSteerMotor().setControl(new VoltageOut(volts));
-                            backRight.getSteerMotor().setControl(new VoltageOut(volts));
+                            if (rejectInHighRateControl("SysId")) {
+                                return;
+                            }
+                            try {
+                                moduleLock.lock();
+                                sysidSteerVoltageRequest.Output = volts.in(Volts);
+                                frontLeft.getSteerMotor().setControl(sysidSteerVoltageRequest);
+                                frontRight.getSteerMotor().setControl(sysidSteerVoltageRequest);
+                                backLeft.getSteerMotor().setControl(sysidSteerVoltageRequest);
+                                backRight.getSteerMotor().setControl(sysidSteerVoltageRequest);
+                            } finally {
+                                moduleLock.unlock();
+                            }
                         },
                         log -> {
                             log.motor("frontLeft")
@@ -279,6 +360,8 @@ public class KrakenSwerveDrive {
                         },
                         subsystem));
 
+        highRateSetpointGenerator = new SwerveSetpointGenerator(kinematics.getModules());
+
         odometryThread = new OdometryThread();
         odometryThread.start();
 
@@ -305,10 +388,15 @@ public class KrakenSwerveDrive {
         private double lastTime = 0;
         private double currentTime = 0;
 
-        private KrakenCoaxialSwerveModule[] modules = new KrakenCoaxialSwerveModule[] {
-                frontLeft, frontRight, backLeft, backRight };
         private SwerveModulePosition[] modulePositions = new SwerveModulePosition[4];
 
+        /** The setpoint for high-rate control, updated in place every loop. */
+        private final SwerveSetpoint highRateSetpoint = highRateSetpointGenerator.createSetpoint();
+        /** The desired robot-relative chassis speeds for high-rate control. */
+        private final ChassisSpeeds highRateDesiredSpeeds = new ChassisSpeeds();
+        /** Whether high-rate control was running on the last loop. */
+        private boolean wasHighRateControlEnabled = false;
+
         private int lastThreadPriority = odometryThreadPriority;
         private volatile int threadPriorityToSet = odometryThreadPriority;
         private final int UPDATE_FREQUENCY = 250;
@@ -375,6 +463,7 @@ public class KrakenSwerveDrive {
                 /* Wait up to twice the period of the update frequency */
                 StatusCode status;
                 status = BaseStatusSignal.waitForAll(2.0 / UPDATE_FREQUENCY, allSignals);
+                double yawDegrees;
 
                 try {
                     stateLock.writeLock().lock();
@@ -399,13 +488,14 @@ public class KrakenSwerveDrive {
                     for (int i = 0; i < 4; ++i) {
                         modulePositions[i] = modules[i].getPosition();
                     }
-                    double yawDegrees = BaseStatusSignal.getLatencyCompensatedValue(
+                    yawDegrees = BaseStatusSignal.getLatencyCompensatedValue(
                             pigeon.getYaw(), pigeon.getAngularVelocityZWorld()).magnitude();
 
                     /* Keep track of previous and current pose to account for the carpet vector */
                     poseEstimator.update(Rotation2d.fromDegrees(yawDegrees), modulePositions);
                     precisePoseEstimator.update(Rotation2d.fromDegrees(yawDegrees),
                             modulePositions);
+                    odometryHistory.addSample(currentTime / 1e6, poseEstimator.getEstimatedPosition());
                     if (RobotBase.isSimulation()) {
                         simOdometry.update(Rotation2d.fromDegrees(yawDegrees), modulePositions);
                     }
@@ -413,6 +503,13 @@ public class KrakenSwerveDrive {
                     stateLock.writeLock().unlock();
                 }
 
+                /* Run the setpoint generator and command the modules, outside of the lock */
+                if (highRateControlEnabled) {
+                    updateHighRateControl(Math.toRadians(yawDegrees), (currentTime - lastTime) / 1e6);
+                } else {
+                    wasHighRateControlEnabled = false;
+                }
+
                 /**
                  * This is inherently synchronous, since lastThreadPriority
                  * is only written here and threadPriorityToSet is only read here
@@ -424,6 +521,60 @@ public class KrakenSwerveDrive {
             }
         }
 
+        /**
+         * Generates a new setpoint from the latest posted chassis speeds and sends it
+         * to the modules. Runs at the odometry frequency.
+         * 
+         * @param yawRadians the latest latency-compensated yaw of the chassis
+         * @param dt         the measured time since the last loop, in seconds
+         */
+        private void updateHighRateControl(double yawRadians, double dt) {
+            // the first loop, or a stalled loop, shouldn't produce one huge step
+            if (dt <= 0 || dt > 2.0 / UPDATE_FREQUENCY) {
+                dt = 1.0 / UPDATE_FREQUENCY;
+            }
+
+            HighRateRequest request = highRateMailbox.get();
+            if (request.moduleStates() != null) {
+                // module states bypass the generator; reseed it once chassis speeds resume
+                setStatesBatched(request.moduleStates(), !request.closedLoop(), dt);
+                commandedModuleStates = request.moduleStates();
+                wasHighRateControlEnabled = false;
+                return;
+            }
+
+            if (!wasHighRateControlEnabled) {
+                // seed the setpoint from the measured module states so the generator
+                // starts from where the drivetrain actually is
+                SwerveModuleState[] measuredStates = getModuleStates();
+                fastKinematics.toChassisSpeeds(measuredStates, highRateSetpoint.chassisSpeeds());
+                for (int i = 0; i < 4; ++i) {
+                    highRateSetpoint.moduleStates()[i].speedMetersPerSecond = measuredStates[i].speedMetersPerSecond;
+                    highRateSetpoint.moduleStates()[i].angle = measuredStates[i].angle;
+                }
+                commandedModuleStates = highRateSetpoint.moduleStates();
+                wasHighRateControlEnabled = true;
+            }
+
+            if (request.fieldOriented()) {
+                FastSwerveKinematics.fromFieldRelativeSpeeds(request.vx(), request.vy(), request.omega(), yawRadians,
+                        highRateDesiredSpeeds);
+            } else {
+                highRateDesiredSpeeds.vxMetersPerSecond = request.vx();
+                highRateDesiredSpeeds.vyMetersPerSecond = request.vy();
+                highRateDesiredSpeeds.omegaRadiansPerSecond = request.omega();
+            }
+
+            // compensates for swerve skew when translating and rotating simultaneously
+            FastSwerveKinematics.discretize(highRateDesiredSpeeds.vxMetersPerSecond,
+                    highRateDesiredSpeeds.vyMetersPerSecond, highRateDesiredSpeeds.omegaRadiansPerSecond, dt,
+                    highRateDesiredSpeeds);
+            highRateSetpointGenerator.generateSetpoint(highRateModuleLimits, highRateSetpoint, highRateDesiredSpeeds,
+                    dt, highRateSetpoint);
+
+            setStatesBatched(highRateSetpoint.moduleStates(), !request.closedLoop(), dt);
+        }
+
         /**
          * Sets the DAQ thread priority to a real time priority under the specified
          * priority level
@@ -446,6 +597,50 @@ public class KrakenSwerveDrive {
         return averageOdometryLoopTime;
     }
 
+    /**
+     * Enables high-rate control. While enabled, {@link #drive(ChassisSpeeds)} and
+     * {@link #driveClosedLoop(ChassisSpeeds, DriveMode)} only post the commanded
+     * chassis speeds, and the odometry thread runs a
+     * {@link SwerveSetpointGenerator} and sends module setpoints at the odometry
+     * frequency. This gives smoother acceleration limiting, lower
+     * command-to-actuation latency, and keeps setpoint generation off of the main
+     * loop.
+     * 
+     * <p>
+     * The odometry thread is the only thread that commands the modules while
+     * enabled: {@link #stop()}, {@link #setStates(SwerveModuleState[])} and
+     * {@link #setStatesClosedLoop(SwerveModuleState[])} are also posted to it, and
+     * the SysId routines report an error and do nothing.
+     * 
+     * <p>
+     * Can be called again to update the limits.
+     * 
+     * @param limits the kinematic limits for the setpoint generator to respect
+     */
+    public void enableHighRateControl(ModuleLimits limits) {
+        highRateModuleLimits = limits;
+        highRateControlEnabled = true;
+        reportedHighRateConflict = false;
+    }
+
+    /**
+     * Disables high-rate control, returning module control to the caller of
+     * {@link #drive(ChassisSpeeds)}.
+     */
+    public void disableHighRateControl() {
+        highRateControlEnabled = false;
+        highRateMailbox.set(new HighRateRequest(0, 0, 0, false, false));
+    }
+
+    /**
+     * Gets whether high-rate control is enabled.
+     * 
+     * @return whether high-rate control is enabled
+     */
+    public boolean isHighRateControlEnabled() {
+        return highRateControlEnabled;
+    }
+
     /**
      * Gets the currently set drive mode.
      * 
@@ -525,7 +720,7 @@ public class KrakenSwerveDrive {
      */
     @Log(groups = "control")
     public ChassisSpeeds getChassisSpeeds() {
-        return kinematics.toChassisSpeeds(getModuleStates());
+        return fastKinematics.toChassisSpeeds(getModuleStates(), new ChassisSpeeds());
     }
 
     /**
@@ -538,6 +733,17 @@ public class KrakenSwerveDrive {
         return poseEstimator;
     }
 
+    /**
+     * Gets the timestamped history of estimated poses, updated at the odometry
+     * frequency. Pass this to each camera so that measurements are checked
+     * against the pose at capture time.
+     * 
+     * @return the odometry history
+     */
+    public OdometryHistory getOdometryHistory() {
+        return odometryHistory;
+    }
+
     /**
      * Resets the pose estimator to a specific position on the field. Useful for
      * known starting locations before the autonomous period.
@@ -557,6 +763,7 @@ public class KrakenSwerveDrive {
             if (RobotBase.isSimulation())
                 simOdometry.resetPosition(getRotation(), getModulePositions(),
                         new Pose2d(pose.getTranslation(), getRotation()));
+            odometryHistory.clear();
         } finally {
             stateLock.writeLock().unlock();
         }
@@ -612,36 +819,154 @@ public class KrakenSwerveDrive {
      * Stops all swerve modules.
      */
     public void stop() {
-        frontLeft.stop();
-        frontRight.stop();
-        backLeft.stop();
-        backRight.stop();
+        if (highRateControlEnabled) {
+            // the odometry thread would overwrite a direct stop on its next loop
+            highRateMailbox.set(new HighRateRequest(0, 0, 0, false, false));
+            return;
+        }
+        try {
+            moduleLock.lock();
+            frontLeft.stop();
+            frontRight.stop();
+            backLeft.stop();
+            backRight.stop();
+        } finally {
+            moduleLock.unlock();
+        }
     }
 
     /**
      * Sets the state (velocity and azimuth angle) of each swerve module, without
-     * closed-loop velocity control.
+     * closed-loop velocity control. In high-rate control, the states are posted to
+     * the odometry thread.
      * 
      * @param state an array of SwerveModuleStates to set the modules to
      */
     public void setStates(SwerveModuleState[] states) {
-        frontLeft.setState(states[0]);
-        frontRight.setState(states[1]);
-        backLeft.setState(states[2]);
-        backRight.setState(states[3]);
+        if (highRateControlEnabled) {
+            postModuleStates(states, false);
+            return;
+        }
+        setStatesBatched(states, true, 0.020);
     }
 
     /**
      * Sets the state (velocity and azimuth angle) of each swerve module, with
-     * closed-loop velocity control.
+     * closed-loop velocity control. In high-rate control, the states are posted to
+     * the odometry thread.
      * 
      * @param state an array of SwerveModuleStates to set the modules to
      */
     public void setStatesClosedLoop(SwerveModuleState[] states) {
-        frontLeft.setStateClosedLoop(states[0]);
-        frontRight.setStateClosedLoop(states[1]);
-        backLeft.setStateClosedLoop(states[2]);
-        backRight.setStateClosedLoop(states[3]);
+        if (highRateControlEnabled) {
+            postModuleStates(states, true);
+            return;
+        }
+        setStatesBatched(states, false, 0.020);
+    }
+
+    /**
+     * Posts module states to the odometry thread in high-rate control. The states
+     * are copied, since callers may reuse them.
+     * 
+     * @param states     the module states
+     * @param closedLoop whether to use closed-loop velocity control
+     */
+    private void postModuleStates(SwerveModuleState[] states, boolean closedLoop) {
+        SwerveModuleState[] copy = new SwerveModuleState[4];
+        for (int i = 0; i < 4; ++i) {
+            copy[i] = new SwerveModuleState(states[i].speedMetersPerSecond, states[i].angle);
+        }
+        highRateMailbox.set(new HighRateRequest(0, 0, 0, false, closedLoop, copy));
+    }
+
+    /**
+     * Reports an error, once per enable, if a caller tries to drive the motors
+     * directly while the odometry thread owns them.
+     * 
+     * @param caller the name of the caller, for the error message
+     * @return whether high-rate control is enabled and the call should be ignored
+     */
+    private boolean rejectInHighRateControl(String caller) {
+        if (!highRateControlEnabled) {
+            return false;
+        }
+        if (!reportedHighRateConflict) {
+            DriverStation.reportError("[houndlib] " + caller
+                    + " cannot command the swerve modules while high-rate control is enabled.", false);
+            reportedHighRateConflict = true;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the states of all swerve modules as one batch. Every module's reusable
+     * control requests are filled first, and then all eight requests are sent
+     * back-to-back, so the control frames go out together. With
+     * {@link #setUseTimesync(boolean)}, the modules also actuate on the same
+     * timesync boundary.
+     * 
+     * @param states   an array of SwerveModuleStates to set the modules to
+     * @param openLoop whether the drive motors should use open loop velocity
+     *                 control
+     * @param dt       the time since the last states were set, in seconds
+     */
+    private void setStatesBatched(SwerveModuleState[] states, boolean openLoop, double dt) {
+        try {
+            moduleLock.lock();
+            for (int i = 0; i < 4; ++i) {
+                modules[i].prepareState(states[i], openLoop, dt);
+            }
+            for (int i = 0; i < 4; ++i) {
+                modules[i].applyPreparedState();
+            }
+            for (int i = 0; i < 4; ++i) {
+                modules[i].updateSimulation();
+            }
+        } finally {
+            moduleLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the states of all swerve modules as one batch, from primitive speeds
+     * and angles.
+     * 
+     * @param speeds   the module speeds, in m/s
+     * @param angles   the module angles, in radians
+     * @param openLoop whether the drive motors should use open loop velocity
+     *                 control
+     * @param dt       the time since the last states were set, in seconds
+     * @see #setStatesBatched(SwerveModuleState[], boolean, double)
+     */
+    private void setStatesBatched(double[] speeds, double[] angles, boolean openLoop, double dt) {
+        try {
+            moduleLock.lock();
+            for (int i = 0; i < 4; ++i) {
+                modules[i].prepareState(speeds[i], angles[i], openLoop, dt);
+            }
+            for (int i = 0; i < 4; ++i) {
+                modules[i].applyPreparedState();
+            }
+            for (int i = 0; i < 4; ++i) {
+                modules[i].updateSimulation();
+            }
+        } finally {
+            moduleLock.unlock();
+        }
+    }
+
+    /**
+     * Sets whether module control requests should be applied on a timesync
+     * boundary, so that all modules actuate at the same time. Requires Phoenix Pro
+     * and a CANivore.
+     * 
+     * @param useTimesync whether to use timesync for module control requests
+     */
+    public void setUseTimesync(boolean useTimesync) {
+        for (KrakenCoaxialSwerveModule module : modules) {
+            module.setUseTimesync(useTimesync);
+        }
     }
 
     /**
@@ -668,31 +993,12 @@ public class KrakenSwerveDrive {
         }
 
         commandedChassisSpeeds = speeds;
-        ChassisSpeeds adjustedChassisSpeeds = null;
-        switch (driveMode) {
-            case ROBOT_RELATIVE:
-                adjustedChassisSpeeds = speeds;
-                break;
-            case FIELD_ORIENTED:
-                adjustedChassisSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(speeds.vxMetersPerSecond,
-                        speeds.vyMetersPerSecond,
-                        speeds.omegaRadiansPerSecond, getRotation());
-                break;
+        if (highRateControlEnabled) {
+            highRateMailbox.set(new HighRateRequest(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond,
+                    speeds.omegaRadiansPerSecond, driveMode == DriveMode.FIELD_ORIENTED, false));
+            return;
         }
-
-        // compensates for swerve skew when translating and rotating simultaneously
-        adjustedChassisSpeeds = ChassisSpeeds.discretize(adjustedChassisSpeeds, 0.02);
-        SwerveModuleState[] states = kinematics.toSwerveModuleStates(adjustedChassisSpeeds);
-        SwerveDriveKinematics.desaturateWheelSpeeds(states,
-                constants.MAX_DRIVING_VELOCITY.in(MetersPerSecond));
-
-        states[0].optimize(frontLeft.getWheelAngle());
-        states[1].optimize(frontRight.getWheelAngle());
-        states[2].optimize(backLeft.getWheelAngle());
-        states[3].optimize(backRight.getWheelAngle());
-
-        commandedModuleStates = states;
-        setStates(states);
+        driveInternal(speeds, driveMode, true);
     }
 
     public void driveClosedLoop(ChassisSpeeds speeds, DriveFeedforwards feedforwards) {
@@ -715,30 +1021,63 @@ public class KrakenSwerveDrive {
         }
 
         commandedChassisSpeeds = speeds;
-        adjustedChassisSpeeds = null;
+        if (highRateControlEnabled) {
+            highRateMailbox.set(new HighRateRequest(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond,
+                    speeds.omegaRadiansPerSecond, driveMode == DriveMode.FIELD_ORIENTED, true));
+            return;
+        }
+        driveInternal(speeds, driveMode, false);
+    }
+
+    /**
+     * Common implementation of {@link #drive(ChassisSpeeds, DriveMode)} and
+     * {@link #driveClosedLoop(ChassisSpeeds, DriveMode)}. Runs the field-relative
+     * conversion, discretization, inverse kinematics, desaturation and module
+     * optimization with scalar math into preallocated buffers.
+     * 
+     * @param speeds    the ChassisSpeeds to use to drive the swerve modules
+     * @param driveMode the DriveMode to use for the chassis' reference point
+     * @param openLoop  whether the drive motors should use open loop velocity
+     *                  control
+     */
+    private void driveInternal(ChassisSpeeds speeds, DriveMode driveMode, boolean openLoop) {
         switch (driveMode) {
-            case ROBOT_RELATIVE:
-                adjustedChassisSpeeds = speeds;
-                break;
             case FIELD_ORIENTED:
-                adjustedChassisSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(speeds.vxMetersPerSecond,
-                        speeds.vyMetersPerSecond,
-                        speeds.omegaRadiansPerSecond, getRotation());
+                FastSwerveKinematics.fromFieldRelativeSpeeds(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond,
+                        speeds.omegaRadiansPerSecond, Math.toRadians(pigeon.getYaw().getValueAsDouble()),
+                        adjustedChassisSpeeds);
+                break;
+            case ROBOT_RELATIVE:
+            default:
+                adjustedChassisSpeeds.vxMetersPerSecond = speeds.vxMetersPerSecond;
+                adjustedChassisSpeeds.vyMetersPerSecond = speeds.vyMetersPerSecond;
+                adjustedChassisSpeeds.omegaRadiansPerSecond = speeds.omegaRadiansPerSecond;
                 break;
         }
 
-        adjustedChassisSpeeds = ChassisSpeeds.discretize(adjustedChassisSpeeds, 0.02);
-        SwerveModuleState[] states = kinematics.toSwerveModuleStates(adjustedChassisSpeeds);
-        SwerveDriveKinematics.desaturateWheelSpeeds(states,
+        // compensates for swerve skew when translating and rotating simultaneously
+        FastSwerveKinematics.discretize(adjustedChassisSpeeds.vxMetersPerSecond,
+                adjustedChassisSpeeds.vyMetersPerSecond, adjustedChassisSpeeds.omegaRadiansPerSecond, 0.02,
+                adjustedChassisSpeeds);
+        fastKinematics.toModuleStates(adjustedChassisSpeeds.vxMetersPerSecond,
+                adjustedChassisSpeeds.vyMetersPerSecond, adjustedChassisSpeeds.omegaRadiansPerSecond,
+                driveModuleSpeeds, driveModuleAngles);
+        FastSwerveKinematics.desaturateWheelSpeeds(driveModuleSpeeds,
                 constants.MAX_DRIVING_VELOCITY.in(MetersPerSecond));
 
-        states[0].optimize(frontLeft.getWheelAngle());
-        states[1].optimize(frontRight.getWheelAngle());
-        states[2].optimize(backLeft.getWheelAngle());
-        states[3].optimize(backRight.getWheelAngle());
+        for (int i = 0; i < 4; ++i) {
+            FastSwerveKinematics.optimize(driveModuleSpeeds, driveModuleAngles, i,
+                    modules[i].getWheelAngleRadians());
+
+            // only allocate a new Rotation2d for logging when the angle changes
+            driveModuleStates[i].speedMetersPerSecond = driveModuleSpeeds[i];
+            if (driveModuleStates[i].angle.getRadians() != driveModuleAngles[i]) {
+                driveModuleStates[i].angle = new Rotation2d(driveModuleAngles[i]);
+            }
+        }
+        commandedModuleStates = driveModuleStates;
 
-        commandedModuleStates = states;
-        setStatesClosedLoop(states);
+        setStatesBatched(driveModuleSpeeds, driveModuleAngles, openLoop, 0.020);
     }
 
     /**
@@ -775,7 +1114,7 @@ public class KrakenSwerveDrive {
      */
     @Log(groups = "control")
     public ChassisSpeeds getFieldRelativeSpeeds() {
-        return ChassisSpeeds.fromRobotRelativeSpeeds(kinematics.toChassisSpeeds(getModuleStates()), getRotation());
+        return ChassisSpeeds.fromRobotRelativeSpeeds(getChassisSpeeds(), getRotation());
     }
 
     /**
@@ -2,16 +2,11 @@ package com.techhounds.houndutil.houndlib.swerve;
 
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
 
 import com.techhounds.houndutil.houndlib.EqualsUtil;
-import com.techhounds.houndutil.houndlib.Utils;
 
 /**
  * All credits to FRC team 254.
@@ -24,14 +19,280 @@ import com.techhounds.houndutil.houndlib.Utils;
  * robot will converge to the desired setpoint quickly while avoiding any
  * intermediate state that is kinematically infeasible (and can result in wheel
  * slip or robot heading drift as a result).
+ *
+ * <p>
+ * All intermediate math is done on primitive scratch buffers that are
+ * allocated once at construction, so a single instance should be reused every
+ * loop. Angles are kept as the radians, cosine and sine a {@link Rotation2d}
+ * would hold, and composed with the same arithmetic as
+ * {@link Rotation2d#rotateBy(Rotation2d)}, so the results are identical to
+ * generating setpoints with Rotation2d and {@link SwerveDriveKinematics}. Because of this, an instance is not thread-safe; use one
+ * generator per control thread.
  */
 public class SwerveSetpointGenerator {
-    private final SwerveDriveKinematics kinematics;
+    /**
+     * The method used to find the maximum interpolant that satisfies the steering
+     * and drive constraints of each module.
+     */
+    public enum SolverMode {
+        /**
+         * The original recursive regula falsi search, evaluating atan2 or hypot up to
+         * a fixed recursion depth.
+         */
+        REGULA_FALSI,
+        /**
+         * A fixed-iteration, non-recursive Illinois search over the same constraint
+         * functions. Converges faster than plain regula falsi when one bracket
+         * stagnates.
+         */
+        ILLINOIS,
+        /**
+         * Closed-form solutions for both constraints. The drive velocity constraint is
+         * a circle-line intersection, and the steering constraint is the intersection
+         * of the interpolated velocity with the ray at the maximum allowed heading,
+         * which is linear in s. Falls back to {@link #ILLINOIS} if the closed form is
+         * degenerate.
+         */
+        ANALYTIC
+    }
+
+    /** The cosine of {@code Rotation2d.fromRadians(Math.PI)}. */
+    private static final double PI_COS = Math.cos(Math.PI);
+    /** The sine of {@code Rotation2d.fromRadians(Math.PI)}, which is not exactly 0. */
+    private static final double PI_SIN = Math.sin(Math.PI);
+
+    /**
+     * A mutable angle that holds exactly what a {@link Rotation2d} would: its
+     * radians, cosine and sine, computed the same way. The components it was
+     * last set from are kept, so that an equal Rotation2d can be rebuilt when one
+     * is needed for the output.
+     */
+    private static final class Rotation {
+        private double radians;
+        private double cos;
+        private double sin;
+        private double x;
+        private double y;
+        /** The Rotation2d this was copied from, if it hasn't been changed since. */
+        private Rotation2d source;
+
+        /**
+         * Sets this to the value of {@code new Rotation2d(x, y)}.
+         */
+        void setComponents(double x, double y) {
+            double magnitude = Math.hypot(x, y);
+            if (magnitude > 1e-6) {
+                cos = x / magnitude;
+                sin = y / magnitude;
+            } else {
+                cos = 1.0;
+                sin = 0.0;
+            }
+            radians = Math.atan2(sin, cos);
+            this.x = x;
+            this.y = y;
+            source = null;
+        }
+
+        /**
+         * Sets this to {@code rotation}, which is reused if this is converted back.
+         */
+        void set(Rotation2d rotation) {
+            radians = rotation.getRadians();
+            cos = rotation.getCos();
+            sin = rotation.getSin();
+            source = rotation;
+        }
+
+        void set(Rotation other) {
+            radians = other.radians;
+            cos = other.cos;
+            sin = other.sin;
+            x = other.x;
+            y = other.y;
+            source = other.source;
+        }
+
+        /**
+         * Sets this to {@code a.rotateBy(b)}, where b has the given cosine and sine.
+         */
+        void setRotated(Rotation a, double bCos, double bSin) {
+            setComponents(a.cos * bCos - a.sin * bSin, a.cos * bSin + a.sin * bCos);
+        }
+
+        /**
+         * Sets this to {@code a.unaryMinus().rotateBy(b)}, the rotation from a to b.
+         */
+        void setRelative(Rotation a, Rotation b) {
+            // unaryMinus builds a Rotation2d from the negated radians
+            double cos = Math.cos(-a.radians);
+            double sin = Math.sin(-a.radians);
+            setComponents(cos * b.cos - sin * b.sin, cos * b.sin + sin * b.cos);
+        }
+
+        boolean matches(Rotation2d rotation) {
+            return rotation.getRadians() == radians && rotation.getCos() == cos && rotation.getSin() == sin;
+        }
+
+        Rotation2d toRotation2d() {
+            return source != null ? source : new Rotation2d(x, y);
+        }
+    }
+
     private final Translation2d[] moduleLocations;
+    private final int numModules;
+
+    /** Scalar kinematics for the module layout, owned by this generator. */
+    private final FastSwerveKinematics kinematics;
+    /**
+     * The forward kinematics matrix of {@link SwerveDriveKinematics}, row-major
+     * with a column for the x and y velocity of each module.
+     */
+    private final double[] forwardKinematics;
+
+    // scratch buffers, reused every call to generateSetpoint
+    private final Rotation[] prev_angle;
+    private final double[] prev_speed;
+    private final double[] prev_vx;
+    private final double[] prev_vy;
+    private final Rotation[] prev_heading;
+    private final Rotation[] desired_angle;
+    private final double[] desired_speed;
+    private final double[] desired_vx;
+    private final double[] desired_vy;
+    private final double[] desired_chassis;
+    private final Rotation[] ret_angle;
+    private final double[] ret_speed;
+    private final double[] module_vx;
+    private final double[] module_vy;
+    /** The last heading of each module, as remembered by SwerveDriveKinematics. */
+    private final Rotation[] module_heading;
+    /** Whether the steering angle for a module is overridden. */
+    private final boolean[] override_steering;
+    /** The overridden steering angle for a module. */
+    private final Rotation[] override_angle;
+    /** The rotation between two angles, for checking if a module should flip. */
+    private final Rotation relative = new Rotation();
 
+    // state for the root finding functions, so they don't need to capture locals
+    private double rootReference;
+    private double rootOffset;
+    private final Function2d steeringFunc = (x, y) -> unwrapAngle(rootReference, Math.atan2(y, x)) - rootOffset;
+    private final Function2d driveFunc = (x, y) -> Math.hypot(x, y) - rootOffset;
+
+    /** The method used to solve the steering and drive constraints. */
+    private SolverMode solverMode = SolverMode.REGULA_FALSI;
+
+    /**
+     * Creates a new setpoint generator.
+     *
+     * @param moduleLocations the locations of the modules relative to the center of
+     *                        the robot, in the same order as the module states
+     */
+    public SwerveSetpointGenerator(final Translation2d[] moduleLocations) {
+        this(new SwerveDriveKinematics(moduleLocations), moduleLocations);
+    }
+
+    /**
+     * Creates a new setpoint generator. The kinematics object is only read here,
+     * for its forward kinematics; inverse kinematics is computed by a
+     * {@link FastSwerveKinematics} built from the module locations.
+     *
+     * @param kinematics      the kinematics of the drivetrain
+     * @param moduleLocations the locations of the modules relative to the center of
+     *                        the robot
+     */
     public SwerveSetpointGenerator(final SwerveDriveKinematics kinematics, final Translation2d[] moduleLocations) {
-        this.kinematics = kinematics;
         this.moduleLocations = moduleLocations;
+        this.numModules = moduleLocations.length;
+        this.kinematics = new FastSwerveKinematics(moduleLocations);
+        this.forwardKinematics = copyForwardKinematics(kinematics, numModules);
+
+        prev_angle = createRotations(numModules);
+        prev_speed = new double[numModules];
+        prev_vx = new double[numModules];
+        prev_vy = new double[numModules];
+        prev_heading = createRotations(numModules);
+        desired_angle = createRotations(numModules);
+        desired_speed = new double[numModules];
+        desired_vx = new double[numModules];
+        desired_vy = new double[numModules];
+        desired_chassis = new double[3];
+        ret_angle = createRotations(numModules);
+        ret_speed = new double[numModules];
+        module_vx = new double[numModules];
+        module_vy = new double[numModules];
+        module_heading = createRotations(numModules);
+        for (Rotation heading : module_heading) {
+            heading.set(Rotation2d.kZero);
+        }
+        override_steering = new boolean[numModules];
+        override_angle = createRotations(numModules);
+    }
+
+    private static Rotation[] createRotations(int count) {
+        Rotation[] rotations = new Rotation[count];
+        for (int i = 0; i < count; ++i) {
+            rotations[i] = new Rotation();
+        }
+        return rotations;
+    }
+
+    /**
+     * Reads the forward kinematics matrix out of a kinematics object, one column
+     * at a time, by converting a single unit module velocity.
+     */
+    private static double[] copyForwardKinematics(SwerveDriveKinematics kinematics, int numModules) {
+        final int columns = 2 * numModules;
+        double[] matrix = new double[3 * columns];
+        SwerveModuleState[] states = new SwerveModuleState[numModules];
+        for (int column = 0; column < columns; ++column) {
+            for (int i = 0; i < numModules; ++i) {
+                states[i] = new SwerveModuleState();
+            }
+            // the cosine and sine of these are exactly 0 and 1
+            states[column / 2] = new SwerveModuleState(1.0,
+                    column % 2 == 0 ? new Rotation2d(1.0, 0.0) : new Rotation2d(0.0, 1.0));
+            ChassisSpeeds speeds = kinematics.toChassisSpeeds(states);
+            matrix[column] = speeds.vxMetersPerSecond;
+            matrix[columns + column] = speeds.vyMetersPerSecond;
+            matrix[2 * columns + column] = speeds.omegaRadiansPerSecond;
+        }
+        return matrix;
+    }
+
+    /**
+     * Sets the method used to solve the steering and drive constraints. Defaults
+     * to {@link SolverMode#REGULA_FALSI}.
+     *
+     * @param solverMode the solver mode
+     */
+    public void setSolverMode(SolverMode solverMode) {
+        this.solverMode = solverMode;
+    }
+
+    /**
+     * Gets the method used to solve the steering and drive constraints.
+     *
+     * @return the solver mode
+     */
+    public SolverMode getSolverMode() {
+        return solverMode;
+    }
+
+    /**
+     * Creates an empty setpoint with the correct number of modules, to be used as
+     * the output of
+     * {@link #generateSetpoint(ModuleLimits, SwerveSetpoint, ChassisSpeeds, double, SwerveSetpoint)}.
+     *
+     * @return a zeroed setpoint
+     */
+    public SwerveSetpoint createSetpoint() {
+        SwerveModuleState[] states = new SwerveModuleState[numModules];
+        for (int i = 0; i < numModules; ++i) {
+            states[i] = new SwerveModuleState();
+        }
+        return new SwerveSetpoint(new ChassisSpeeds(), states);
     }
 
     /**
@@ -39,14 +300,13 @@ public class SwerveSetpointGenerator {
      * reverse drive direction).
      *
      * @param prevToGoal The rotation from the previous state to the goal state
-     *                   (i.e.
-     *                   prev.inverse().rotateBy(goal)).
+     *                   (i.e. prev.inverse().rotateBy(goal)), in radians.
      * @return True if the shortest path to achieve this rotation involves flipping
      *         the drive
      *         direction.
      */
-    private boolean flipHeading(Rotation2d prevToGoal) {
-        return Math.abs(prevToGoal.getRadians()) > Math.PI / 2.0;
+    private boolean flipHeading(double prevToGoal) {
+        return Math.abs(prevToGoal) > Math.PI / 2.0;
     }
 
     private double unwrapAngle(double ref, double angle) {
@@ -132,10 +392,23 @@ public class SwerveSetpointGenerator {
             return 1.0;
         }
         double offset = f_0 + Math.signum(diff) * max_deviation;
-        Function2d func = (x, y) -> {
-            return unwrapAngle(f_0, Math.atan2(y, x)) - offset;
-        };
-        return findRoot(func, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset, max_iterations);
+        rootReference = f_0;
+        rootOffset = offset;
+        switch (solverMode) {
+            case ANALYTIC:
+                double s = solveSteeringMaxS(x_0, y_0, x_1, y_1, offset);
+                if (!Double.isNaN(s)) {
+                    return s;
+                }
+                return findRootIllinois(steeringFunc, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset,
+                        max_iterations);
+            case ILLINOIS:
+                return findRootIllinois(steeringFunc, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset,
+                        max_iterations);
+            case REGULA_FALSI:
+            default:
+                return findRoot(steeringFunc, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset, max_iterations);
+        }
     }
 
     protected double findDriveMaxS(
@@ -153,10 +426,244 @@ public class SwerveSetpointGenerator {
             return 1.0;
         }
         double offset = f_0 + Math.signum(diff) * max_vel_step;
-        Function2d func = (x, y) -> {
-            return Math.hypot(x, y) - offset;
-        };
-        return findRoot(func, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset, max_iterations);
+        rootOffset = offset;
+        switch (solverMode) {
+            case ANALYTIC:
+                double s = solveDriveMaxS(x_0, y_0, x_1, y_1, offset);
+                if (!Double.isNaN(s)) {
+                    return s;
+                }
+                return findRootIllinois(driveFunc, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset,
+                        max_iterations);
+            case ILLINOIS:
+                return findRootIllinois(driveFunc, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset,
+                        max_iterations);
+            case REGULA_FALSI:
+            default:
+                return findRoot(driveFunc, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset, max_iterations);
+        }
+    }
+
+    /**
+     * Find the root of the generic 2D parametric function 'func' using the Illinois
+     * variant of regula falsi, with a fixed number of iterations and no recursion.
+     * Whenever the same bracket is retained twice in a row, the function value at
+     * the other bracket is halved, which avoids the one-sided stagnation of plain
+     * regula falsi.
+     *
+     * @param func       The Function2d to take the root of.
+     * @param x_0        x value of the lower bracket.
+     * @param y_0        y value of the lower bracket.
+     * @param f_0        value of 'func' at x_0, y_0.
+     * @param x_1        x value of the upper bracket.
+     * @param y_1        y value of the upper bracket.
+     * @param f_1        value of 'func' at x_1, y_1.
+     * @param iterations Number of iterations of root finding.
+     * @return The parameter value 's' that interpolating between 0 and 1 that
+     *         corresponds to the (approximate) root. This is the bracket on the
+     *         side of the lower bracket, so the constraint is never exceeded.
+     */
+    private double findRootIllinois(
+            Function2d func,
+            double x_0,
+            double y_0,
+            double f_0,
+            double x_1,
+            double y_1,
+            double f_1,
+            int iterations) {
+        if (EqualsUtil.epsilonEquals(f_0, f_1)) {
+            return 1.0;
+        }
+        double s_lo = 0.0;
+        double f_lo = f_0;
+        double s_hi = 1.0;
+        double f_hi = f_1;
+        // which bracket was retained last iteration: -1 for lower, 1 for upper
+        int retained = 0;
+        for (int i = 0; i <= iterations; ++i) {
+            if (EqualsUtil.epsilonEquals(f_lo, f_hi)) {
+                break;
+            }
+            double s_guess = Math.max(s_lo, Math.min(s_hi, s_lo - f_lo * (s_hi - s_lo) / (f_hi - f_lo)));
+            double f_guess = func.f((x_1 - x_0) * s_guess + x_0, (y_1 - y_0) * s_guess + y_0);
+            if (f_guess == 0.0) {
+                return s_guess;
+            }
+            if (Math.signum(f_0) == Math.signum(f_guess)) {
+                // guess is on the same side of the root as the lower bracket, so move it up.
+                s_lo = s_guess;
+                f_lo = f_guess;
+                if (retained == 1) {
+                    f_hi *= 0.5;
+                }
+                retained = 1;
+            } else {
+                s_hi = s_guess;
+                f_hi = f_guess;
+                if (retained == -1) {
+                    f_lo *= 0.5;
+                }
+                retained = -1;
+            }
+        }
+        return s_lo;
+    }
+
+    /**
+     * Solves for the interpolant at which the heading of the interpolated module
+     * velocity reaches {@code target}. The heading constraint is satisfied where
+     * the cross product of the target heading and the velocity is zero, which is
+     * linear in s.
+     *
+     * @param x_0    x value of the velocity at s = 0.
+     * @param y_0    y value of the velocity at s = 0.
+     * @param x_1    x value of the velocity at s = 1.
+     * @param y_1    y value of the velocity at s = 1.
+     * @param target the heading to reach, in radians.
+     * @return the interpolant, or NaN if there is no unique solution in [0, 1].
+     */
+    private double solveSteeringMaxS(double x_0, double y_0, double x_1, double y_1, double target) {
+        final double cos = Math.cos(target);
+        final double sin = Math.sin(target);
+        final double denominator = cos * (y_1 - y_0) - sin * (x_1 - x_0);
+        if (EqualsUtil.epsilonEquals(denominator, 0.0)) {
+            return Double.NaN;
+        }
+        final double s = (sin * x_0 - cos * y_0) / denominator;
+        // the intersection must be on the ray at the target heading, not its opposite
+        if (s < 0.0 || s > 1.0 || cos * ((x_1 - x_0) * s + x_0) + sin * ((y_1 - y_0) * s + y_0) < 0.0) {
+            return Double.NaN;
+        }
+        return s;
+    }
+
+    /**
+     * Solves for the interpolant at which the magnitude of the interpolated module
+     * velocity reaches {@code target}, as the intersection of the line between the
+     * two velocities and the circle of radius {@code target}.
+     *
+     * @param x_0    x value of the velocity at s = 0.
+     * @param y_0    y value of the velocity at s = 0.
+     * @param x_1    x value of the velocity at s = 1.
+     * @param y_1    y value of the velocity at s = 1.
+     * @param target the speed to reach.
+     * @return the interpolant, or NaN if there is no solution in [0, 1].
+     */
+    private double solveDriveMaxS(double x_0, double y_0, double x_1, double y_1, double target) {
+        final double dx = x_1 - x_0;
+        final double dy = y_1 - y_0;
+        // |p_0 + s * d|^2 = target^2, as a * s^2 + b * s + c = 0
+        final double a = dx * dx + dy * dy;
+        final double b = 2.0 * (x_0 * dx + y_0 * dy);
+        final double c = x_0 * x_0 + y_0 * y_0 - target * target;
+        if (EqualsUtil.epsilonEquals(a, 0.0)) {
+            return Double.NaN;
+        }
+        final double discriminant = b * b - 4.0 * a * c;
+        if (discriminant < 0.0) {
+            return Double.NaN;
+        }
+        final double sqrt = Math.sqrt(discriminant);
+        // when accelerating, the start is inside the circle and we want the exit;
+        // when decelerating, the start is outside and we want the entry
+        final double s = c < 0.0 ? (-b + sqrt) / (2.0 * a) : (-b - sqrt) / (2.0 * a);
+        if (s < 0.0 || s > 1.0) {
+            return Double.NaN;
+        }
+        return s;
+    }
+
+    /**
+     * Checks if the chassis is stopped, in the same sense as comparing its twist
+     * to an empty twist.
+     *
+     * @param vx the x velocity of the chassis
+     * @param vy the y velocity of the chassis
+     * @return whether the chassis is stopped
+     */
+    private static boolean isStopped(double vx, double vy) {
+        return EqualsUtil.epsilonEquals(vx, 0.0) && EqualsUtil.epsilonEquals(vy, 0.0);
+    }
+
+    /**
+     * Performs inverse kinematics the same way as
+     * {@link SwerveDriveKinematics#toSwerveModuleStates(ChassisSpeeds)}, including
+     * remembering the last heading of each module.
+     *
+     * @param vx     the x velocity of the chassis
+     * @param vy     the y velocity of the chassis
+     * @param omega  the angular velocity of the chassis
+     * @param speeds the module speeds to write into
+     * @param angles the module angles to write into
+     */
+    private void toModuleStates(double vx, double vy, double omega, double[] speeds, Rotation[] angles) {
+        if (vx == 0.0 && vy == 0.0 && omega == 0.0) {
+            for (int i = 0; i < numModules; ++i) {
+                speeds[i] = 0.0;
+                angles[i].set(module_heading[i]);
+            }
+            return;
+        }
+        kinematics.toModuleVelocities(vx, vy, omega, module_vx, module_vy);
+        for (int i = 0; i < numModules; ++i) {
+            speeds[i] = Math.hypot(module_vx[i], module_vy[i]);
+            if (speeds[i] > 1e-6) {
+                module_heading[i].setComponents(module_vx[i], module_vy[i]);
+            }
+            angles[i].set(module_heading[i]);
+        }
+    }
+
+    /**
+     * Performs forward kinematics the same way as
+     * {@link SwerveDriveKinematics#toChassisSpeeds(SwerveModuleState...)}, summing
+     * the products in the same order.
+     *
+     * @param speeds the module speeds
+     * @param angles the module angles
+     * @param out    the chassis speeds to write into, as vx, vy and omega
+     */
+    private void toChassisSpeeds(double[] speeds, Rotation[] angles, double[] out) {
+        final int columns = 2 * numModules;
+        for (int row = 0; row < 3; ++row) {
+            final int offset = row * columns;
+            double total = forwardKinematics[offset] * (speeds[0] * angles[0].cos);
+            for (int column = 1; column < columns; ++column) {
+                final int i = column / 2;
+                final double velocity = speeds[i] * (column % 2 == 0 ? angles[i].cos : angles[i].sin);
+                total += forwardKinematics[offset + column] * velocity;
+            }
+            out[row] = total;
+        }
+    }
+
+    /**
+     * Fills the desired module buffers from the desired module states.
+     *
+     * @param need_to_steer whether the desired state requires steering
+     * @return true if all modules would need to rotate more than 90 degrees to
+     *         reach the desired state
+     */
+    private boolean computeDesiredModules(boolean need_to_steer) {
+        boolean all_modules_should_flip = true;
+        for (int i = 0; i < numModules; ++i) {
+            if (!need_to_steer) {
+                desired_angle[i].set(prev_angle[i]);
+                desired_speed[i] = 0.0;
+            }
+            desired_vx[i] = desired_angle[i].cos * desired_speed[i];
+            desired_vy[i] = desired_angle[i].sin * desired_speed[i];
+            // module speeds from inverse kinematics are never negative, so the heading is
+            // the module angle
+            if (all_modules_should_flip) {
+                relative.setRelative(prev_heading[i], desired_angle[i]);
+                if (Math.abs(relative.radians) < Math.PI / 2.0) {
+                    all_modules_should_flip = false;
+                }
+            }
+        }
+        return all_modules_should_flip;
     }
 
     /**
@@ -180,135 +687,140 @@ public class SwerveSetpointGenerator {
             final SwerveSetpoint prevSetpoint,
             ChassisSpeeds desiredState,
             double dt) {
-        final Translation2d[] modules = moduleLocations;
+        SwerveSetpoint setpoint = createSetpoint();
+        generateSetpoint(limits, prevSetpoint, desiredState, dt, setpoint);
+        return setpoint;
+    }
+
+    /**
+     * Generate a new setpoint, writing the result into a caller-supplied setpoint.
+     * This does not allocate, other than a Rotation2d for each module whose angle
+     * changed.
+     *
+     * <p>
+     * {@code prevSetpoint} and {@code outSetpoint} may be the same object, so the
+     * setpoint can be updated in place every loop.
+     *
+     * @param limits       The kinematic limits to respect for this setpoint.
+     * @param prevSetpoint The previous setpoint motion. Normally, you'd pass in the
+     *                     previous iteration setpoint instead of the actual
+     *                     measured/estimated kinematic state.
+     * @param desiredState The desired state of motion, such as from the driver
+     *                     sticks or a path following algorithm. This is not
+     *                     modified.
+     * @param dt           The loop time.
+     * @param outSetpoint  The setpoint to write the result into, which satisfies
+     *                     all of the KinematicLimits while converging to
+     *                     desiredState quickly.
+     */
+    public void generateSetpoint(
+            final ModuleLimits limits,
+            final SwerveSetpoint prevSetpoint,
+            final ChassisSpeeds desiredState,
+            double dt,
+            final SwerveSetpoint outSetpoint) {
+        final SwerveModuleState[] prevStates = prevSetpoint.moduleStates();
+        final double prev_chassis_vx = prevSetpoint.chassisSpeeds().vxMetersPerSecond;
+        final double prev_chassis_vy = prevSetpoint.chassisSpeeds().vyMetersPerSecond;
+        final double prev_chassis_omega = prevSetpoint.chassisSpeeds().omegaRadiansPerSecond;
+
+        // Copy the previous setpoint into scratch buffers first, so that the output
+        // setpoint may alias it. For each module, compute local Vx and Vy vectors.
+        for (int i = 0; i < numModules; ++i) {
+            prev_angle[i].set(prevStates[i].angle);
+            prev_speed[i] = prevStates[i].speedMetersPerSecond;
+            prev_vx[i] = prev_angle[i].cos * prev_speed[i];
+            prev_vy[i] = prev_angle[i].sin * prev_speed[i];
+            prev_heading[i].set(prev_angle[i]);
+            if (prev_speed[i] < 0.0) {
+                prev_heading[i].setRotated(prev_angle[i], PI_COS, PI_SIN);
+            }
+        }
+
+        double desired_chassis_vx = desiredState.vxMetersPerSecond;
+        double desired_chassis_vy = desiredState.vyMetersPerSecond;
+        double desired_chassis_omega = desiredState.omegaRadiansPerSecond;
 
-        SwerveModuleState[] desiredModuleState = kinematics.toSwerveModuleStates(desiredState);
         // Make sure desiredState respects velocity limits.
+        toModuleStates(desired_chassis_vx, desired_chassis_vy, desired_chassis_omega, desired_speed,
+                desired_angle);
         if (limits.maxDriveVelocity() > 0.0) {
-            SwerveDriveKinematics.desaturateWheelSpeeds(desiredModuleState, limits.maxDriveVelocity());
-            desiredState = kinematics.toChassisSpeeds(desiredModuleState);
+            FastSwerveKinematics.desaturateWheelSpeeds(desired_speed, limits.maxDriveVelocity());
+            toChassisSpeeds(desired_speed, desired_angle, desired_chassis);
+            desired_chassis_vx = desired_chassis[0];
+            desired_chassis_vy = desired_chassis[1];
+            desired_chassis_omega = desired_chassis[2];
         }
 
         // Special case: desiredState is a complete stop. In this case, module angle is
-        // arbitrary, so
-        // just use the previous angle.
-        boolean need_to_steer = true;
-        if (EqualsUtil.epsilonEquals(Utils.toTwist2d(desiredState), new Twist2d())) {
-            need_to_steer = false;
-            for (int i = 0; i < modules.length; ++i) {
-                desiredModuleState[i].angle = prevSetpoint.moduleStates()[i].angle;
-                desiredModuleState[i].speedMetersPerSecond = 0.0;
-            }
-        }
+        // arbitrary, so just use the previous angle.
+        boolean need_to_steer = !isStopped(desired_chassis_vx, desired_chassis_vy);
 
-        // For each module, compute local Vx and Vy vectors.
-        double[] prev_vx = new double[modules.length];
-        double[] prev_vy = new double[modules.length];
-        Rotation2d[] prev_heading = new Rotation2d[modules.length];
-        double[] desired_vx = new double[modules.length];
-        double[] desired_vy = new double[modules.length];
-        Rotation2d[] desired_heading = new Rotation2d[modules.length];
-        boolean all_modules_should_flip = true;
-        for (int i = 0; i < modules.length; ++i) {
-            prev_vx[i] = prevSetpoint.moduleStates()[i].angle.getCos()
-                    * prevSetpoint.moduleStates()[i].speedMetersPerSecond;
-            prev_vy[i] = prevSetpoint.moduleStates()[i].angle.getSin()
-                    * prevSetpoint.moduleStates()[i].speedMetersPerSecond;
-            prev_heading[i] = prevSetpoint.moduleStates()[i].angle;
-            if (prevSetpoint.moduleStates()[i].speedMetersPerSecond < 0.0) {
-                prev_heading[i] = prev_heading[i].rotateBy(Rotation2d.fromRadians(Math.PI));
-            }
-            desired_vx[i] = desiredModuleState[i].angle.getCos() * desiredModuleState[i].speedMetersPerSecond;
-            desired_vy[i] = desiredModuleState[i].angle.getSin() * desiredModuleState[i].speedMetersPerSecond;
-            desired_heading[i] = desiredModuleState[i].angle;
-            if (desiredModuleState[i].speedMetersPerSecond < 0.0) {
-                desired_heading[i] = desired_heading[i].rotateBy(Rotation2d.fromRadians(Math.PI));
-            }
-            if (all_modules_should_flip) {
-                double required_rotation_rad = Math
-                        .abs(prev_heading[i].unaryMinus().rotateBy(desired_heading[i]).getRadians());
-                if (required_rotation_rad < Math.PI / 2.0) {
-                    all_modules_should_flip = false;
-                }
-            }
-        }
+        boolean all_modules_should_flip = computeDesiredModules(need_to_steer);
         if (all_modules_should_flip
-                && !EqualsUtil.epsilonEquals(Utils.toTwist2d(prevSetpoint.chassisSpeeds()), new Twist2d())
-                && !EqualsUtil.epsilonEquals(Utils.toTwist2d(desiredState), new Twist2d())) {
+                && !isStopped(prev_chassis_vx, prev_chassis_vy)
+                && need_to_steer) {
             // It will (likely) be faster to stop the robot, rotate the modules in place to
-            // the complement
-            // of the desired
-            // angle, and accelerate again.
-            return generateSetpoint(limits, prevSetpoint, new ChassisSpeeds(), dt);
+            // the complement of the desired angle, and accelerate again.
+            desired_chassis_vx = 0.0;
+            desired_chassis_vy = 0.0;
+            desired_chassis_omega = 0.0;
+            need_to_steer = false;
+            computeDesiredModules(need_to_steer);
         }
 
         // Compute the deltas between start and goal. We can then interpolate from the
-        // start state to
-        // the goal state; then
-        // find the amount we can move from start towards goal in this cycle such that
-        // no kinematic
-        // limit is exceeded.
-        double dx = desiredState.vxMetersPerSecond - prevSetpoint.chassisSpeeds().vxMetersPerSecond;
-        double dy = desiredState.vyMetersPerSecond - prevSetpoint.chassisSpeeds().vyMetersPerSecond;
-        double dtheta = desiredState.omegaRadiansPerSecond - prevSetpoint.chassisSpeeds().omegaRadiansPerSecond;
+        // start state to the goal state; then find the amount we can move from start
+        // towards goal in this cycle such that no kinematic limit is exceeded.
+        double dx = desired_chassis_vx - prev_chassis_vx;
+        double dy = desired_chassis_vy - prev_chassis_vy;
+        double dtheta = desired_chassis_omega - prev_chassis_omega;
 
         // 's' interpolates between start and goal. At 0, we are at prevState and at 1,
-        // we are at
-        // desiredState.
+        // we are at desiredState.
         double min_s = 1.0;
 
         // In cases where an individual module is stopped, we want to remember the right
-        // steering angle
-        // to command (since
-        // inverse kinematics doesn't care about angle, we can be opportunistically
-        // lazy).
-        List<Optional<Rotation2d>> overrideSteering = new ArrayList<>(modules.length);
+        // steering angle to command (since inverse kinematics doesn't care about angle,
+        // we can be opportunistically lazy).
         // Enforce steering velocity limits. We do this by taking the derivative of
-        // steering angle at
-        // the current angle,
-        // and then backing out the maximum interpolant between start and goal states.
-        // We remember the
-        // minimum across all modules, since
-        // that is the active constraint.
+        // steering angle at the current angle, and then backing out the maximum
+        // interpolant between start and goal states. We remember the minimum across all
+        // modules, since that is the active constraint.
         final double max_theta_step = dt * limits.maxSteeringVelocity();
-        for (int i = 0; i < modules.length; ++i) {
+        for (int i = 0; i < numModules; ++i) {
+            override_steering[i] = false;
             if (!need_to_steer) {
-                overrideSteering.add(Optional.of(prevSetpoint.moduleStates()[i].angle));
+                setOverrideToPrevious(i);
                 continue;
             }
-            overrideSteering.add(Optional.empty());
-            if (EqualsUtil.epsilonEquals(prevSetpoint.moduleStates()[i].speedMetersPerSecond, 0.0)) {
+            if (EqualsUtil.epsilonEquals(prev_speed[i], 0.0)) {
                 // If module is stopped, we know that we will need to move straight to the final
-                // steering
-                // angle, so limit based
-                // purely on rotation in place.
-                if (EqualsUtil.epsilonEquals(desiredModuleState[i].speedMetersPerSecond, 0.0)) {
+                // steering angle, so limit based purely on rotation in place.
+                if (EqualsUtil.epsilonEquals(desired_speed[i], 0.0)) {
                     // Goal angle doesn't matter. Just leave module at its current angle.
-                    overrideSteering.set(i, Optional.of(prevSetpoint.moduleStates()[i].angle));
+                    setOverrideToPrevious(i);
                     continue;
                 }
 
-                var necessaryRotation = prevSetpoint.moduleStates()[i].angle.unaryMinus()
-                        .rotateBy(desiredModuleState[i].angle);
-                if (flipHeading(necessaryRotation)) {
-                    necessaryRotation = necessaryRotation.rotateBy(Rotation2d.fromRadians(Math.PI));
+                final Rotation necessaryRotation = relative;
+                necessaryRotation.setRelative(prev_angle[i], desired_angle[i]);
+                if (flipHeading(necessaryRotation.radians)) {
+                    necessaryRotation.setRotated(necessaryRotation, PI_COS, PI_SIN);
                 }
-                // getRadians() bounds to +/- Pi.
-                final double numStepsNeeded = Math.abs(necessaryRotation.getRadians()) / max_theta_step;
+                // Rotation2d bounds to +/- Pi.
+                final double numStepsNeeded = Math.abs(necessaryRotation.radians) / max_theta_step;
 
+                override_steering[i] = true;
                 if (numStepsNeeded <= 1.0) {
                     // Steer directly to goal angle.
-                    overrideSteering.set(i, Optional.of(desiredModuleState[i].angle));
+                    override_angle[i].set(desired_angle[i]);
                     // Don't limit the global min_s;
                     continue;
                 } else {
                     // Adjust steering by max_theta_step.
-                    overrideSteering.set(
-                            i,
-                            Optional.of(
-                                    prevSetpoint.moduleStates()[i].angle.rotateBy(
-                                            Rotation2d.fromRadians(
-                                                    Math.signum(necessaryRotation.getRadians()) * max_theta_step))));
+                    final double step = Math.signum(necessaryRotation.radians) * max_theta_step;
+                    override_angle[i].setRotated(prev_angle[i], Math.cos(step), Math.sin(step));
                     min_s = 0.0;
                     continue;
                 }
@@ -322,10 +834,10 @@ public class SwerveSetpointGenerator {
             double s = findSteeringMaxS(
                     prev_vx[i],
                     prev_vy[i],
-                    prev_heading[i].getRadians(),
+                    prev_heading[i].radians,
                     desired_vx[i],
                     desired_vy[i],
-                    desired_heading[i].getRadians(),
+                    desired_angle[i].radians,
                     max_theta_step,
                     kMaxIterations);
             min_s = Math.min(min_s, s);
@@ -333,7 +845,7 @@ public class SwerveSetpointGenerator {
 
         // Enforce drive wheel acceleration limits.
         final double max_vel_step = dt * limits.maxDriveAcceleration();
-        for (int i = 0; i < modules.length; ++i) {
+        for (int i = 0; i < numModules; ++i) {
             if (min_s == 0.0) {
                 // No need to carry on.
                 break;
@@ -341,9 +853,7 @@ public class SwerveSetpointGenerator {
             double vx_min_s = min_s == 1.0 ? desired_vx[i] : (desired_vx[i] - prev_vx[i]) * min_s + prev_vx[i];
             double vy_min_s = min_s == 1.0 ? desired_vy[i] : (desired_vy[i] - prev_vy[i]) * min_s + prev_vy[i];
             // Find the max s for this drive wheel. Search on the interval between 0 and
-            // min_s, because we
-            // already know we can't go faster
-            // than that.
+            // min_s, because we already know we can't go faster than that.
             final int kMaxIterations = 10;
             double s = min_s
                     * findDriveMaxS(
@@ -358,26 +868,54 @@ public class SwerveSetpointGenerator {
             min_s = Math.min(min_s, s);
         }
 
-        ChassisSpeeds retSpeeds = new ChassisSpeeds(
-                prevSetpoint.chassisSpeeds().vxMetersPerSecond + min_s * dx,
-                prevSetpoint.chassisSpeeds().vyMetersPerSecond + min_s * dy,
-                prevSetpoint.chassisSpeeds().omegaRadiansPerSecond + min_s * dtheta);
-        var retStates = kinematics.toSwerveModuleStates(retSpeeds);
-        for (int i = 0; i < modules.length; ++i) {
-            final var maybeOverride = overrideSteering.get(i);
-            if (maybeOverride.isPresent()) {
-                var override = maybeOverride.get();
-                if (flipHeading(retStates[i].angle.unaryMinus().rotateBy(override))) {
-                    retStates[i].speedMetersPerSecond *= -1.0;
+        final double ret_vx = prev_chassis_vx + min_s * dx;
+        final double ret_vy = prev_chassis_vy + min_s * dy;
+        final double ret_omega = prev_chassis_omega + min_s * dtheta;
+        toModuleStates(ret_vx, ret_vy, ret_omega, ret_speed, ret_angle);
+
+        final ChassisSpeeds outSpeeds = outSetpoint.chassisSpeeds();
+        outSpeeds.vxMetersPerSecond = ret_vx;
+        outSpeeds.vyMetersPerSecond = ret_vy;
+        outSpeeds.omegaRadiansPerSecond = ret_omega;
+
+        final SwerveModuleState[] outStates = outSetpoint.moduleStates();
+        for (int i = 0; i < numModules; ++i) {
+            if (override_steering[i]) {
+                relative.setRelative(ret_angle[i], override_angle[i]);
+                if (flipHeading(relative.radians)) {
+                    ret_speed[i] *= -1.0;
                 }
-                retStates[i].angle = override;
+                ret_angle[i].set(override_angle[i]);
             }
-            final var deltaRotation = prevSetpoint.moduleStates()[i].angle.unaryMinus().rotateBy(retStates[i].angle);
-            if (flipHeading(deltaRotation)) {
-                retStates[i].angle = retStates[i].angle.rotateBy(Rotation2d.fromRadians(Math.PI));
-                retStates[i].speedMetersPerSecond *= -1.0;
+            relative.setRelative(prev_angle[i], ret_angle[i]);
+            if (flipHeading(relative.radians)) {
+                ret_angle[i].setRotated(ret_angle[i], PI_COS, PI_SIN);
+                ret_speed[i] *= -1.0;
+            }
+
+            outStates[i].speedMetersPerSecond = ret_speed[i];
+            if (!ret_angle[i].matches(outStates[i].angle)) {
+                outStates[i].angle = ret_angle[i].toRotation2d();
             }
         }
-        return new SwerveSetpoint(retSpeeds, retStates);
+    }
+
+    /**
+     * Overrides the steering of a module to hold its previous angle.
+     *
+     * @param i the index of the module
+     */
+    private void setOverrideToPrevious(int i) {
+        override_steering[i] = true;
+        override_angle[i].set(prev_angle[i]);
+    }
+
+    /**
+     * Gets the locations of the modules this generator was created with.
+     *
+     * @return the module locations
+     */
+    public Translation2d[] getModuleLocations() {
+        return moduleLocations;
     }
 }
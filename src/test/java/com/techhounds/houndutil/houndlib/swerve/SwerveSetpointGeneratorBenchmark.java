@@ -0,0 +1,95 @@
+package com.techhounds.houndutil.houndlib.swerve;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+
+/**
+ * Times the {@link SwerveSetpointGenerator} against the
+ * {@link LegacySwerveSetpointGenerator} it replaced, and measures how much each
+ * allocates per call. Run with {@code ./gradlew benchmarkSetpointGenerator}.
+ *
+ * <p>
+ * Every variant replays the same recorded sequence of desired speeds, so the
+ * work per call is the same. Allocation is read from the JVM's per-thread
+ * allocation counter, so it includes everything allocated by the call.
+ */
+public class SwerveSetpointGeneratorBenchmark {
+    private static final int SEQUENCE_LENGTH = 4096;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    /** One way of generating a setpoint, replayed over the desired speeds. */
+    @FunctionalInterface
+    private interface Variant {
+        void run(ChassisSpeeds[] desired);
+    }
+
+    private static ChassisSpeeds[] desired;
+
+    public static void main(String... args) {
+        desired = new ChassisSpeeds[SEQUENCE_LENGTH];
+        Random random = new Random(254);
+        SwerveSetpointGenerator recorder = new SwerveSetpointGenerator(SwerveSetpointGeneratorTest.MODULE_LOCATIONS);
+        SwerveSetpoint prev = recorder.createSetpoint();
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            desired[i] = SwerveSetpointGeneratorTest.randomDesired(random, prev);
+            prev = recorder.generateSetpoint(SwerveSetpointGeneratorTest.LIMITS, prev, desired[i],
+                    SwerveSetpointGeneratorTest.DT);
+        }
+
+        LegacySwerveSetpointGenerator legacy = new LegacySwerveSetpointGenerator(
+                new SwerveDriveKinematics(SwerveSetpointGeneratorTest.MODULE_LOCATIONS),
+                SwerveSetpointGeneratorTest.MODULE_LOCATIONS);
+        SwerveSetpointGenerator generator = new SwerveSetpointGenerator(
+                SwerveSetpointGeneratorTest.MODULE_LOCATIONS);
+
+        measure("legacy", speeds -> {
+            SwerveSetpoint setpoint = generator.createSetpoint();
+            for (ChassisSpeeds s : speeds) {
+                setpoint = legacy.generateSetpoint(SwerveSetpointGeneratorTest.LIMITS, setpoint, s,
+                        SwerveSetpointGeneratorTest.DT);
+            }
+        });
+        measure("allocating", speeds -> {
+            SwerveSetpoint setpoint = generator.createSetpoint();
+            for (ChassisSpeeds s : speeds) {
+                setpoint = generator.generateSetpoint(SwerveSetpointGeneratorTest.LIMITS, setpoint, s,
+                        SwerveSetpointGeneratorTest.DT);
+            }
+        });
+        SwerveSetpoint inPlace = generator.createSetpoint();
+        measure("in place", speeds -> {
+            for (ChassisSpeeds s : speeds) {
+                generator.generateSetpoint(SwerveSetpointGeneratorTest.LIMITS, inPlace, s,
+                        SwerveSetpointGeneratorTest.DT, inPlace);
+            }
+        });
+    }
+
+    private static void measure(String name, Variant variant) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            variant.run(desired);
+        }
+
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            variant.run(desired);
+        }
+        long elapsed = System.nanoTime() - startTime;
+        long bytes = allocatedBytes() - startBytes;
+
+        double calls = (double) MEASURED_ROUNDS * SEQUENCE_LENGTH;
+        System.out.printf("%-12s %8.1f ns/call %8.1f bytes/call%n", name, elapsed / calls, bytes / calls);
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) {
+            return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,388 @@
+package com.techhounds.houndutil.houndlib.swerve;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+import com.techhounds.houndutil.houndlib.swerve.SwerveSetpointGenerator.SolverMode;
+
+class SwerveSetpointGeneratorTest {
+    static final Translation2d[] MODULE_LOCATIONS = {
+            new Translation2d(0.3, 0.3),
+            new Translation2d(0.3, -0.3),
+            new Translation2d(-0.3, 0.3),
+            new Translation2d(-0.3, -0.3) };
+    static final ModuleLimits LIMITS = new ModuleLimits(4.5, 12.0, 20.0);
+    /** Limits where steering is fast enough that only the drive limit is active. */
+    static final ModuleLimits DRIVE_LIMITS = new ModuleLimits(4.5, 12.0, 1000.0);
+    static final double DT = 0.02;
+
+    static final int SEQUENCES = 200;
+    static final int STEPS = 100;
+    /** Enough root finding iterations for every solver to converge. */
+    static final int CONVERGED_ITERATIONS = 64;
+
+    /**
+     * A generator that runs its root finding to convergence, rather than for the
+     * fixed number of iterations used on the robot.
+     */
+    static class ConvergedSetpointGenerator extends SwerveSetpointGenerator {
+        ConvergedSetpointGenerator(SolverMode solverMode) {
+            super(MODULE_LOCATIONS);
+            setSolverMode(solverMode);
+        }
+
+        @Override
+        protected double findSteeringMaxS(double x_0, double y_0, double f_0, double x_1, double y_1, double f_1,
+                double max_deviation, int max_iterations) {
+            return super.findSteeringMaxS(x_0, y_0, f_0, x_1, y_1, f_1, max_deviation, CONVERGED_ITERATIONS);
+        }
+
+        @Override
+        protected double findDriveMaxS(double x_0, double y_0, double f_0, double x_1, double y_1, double f_1,
+                double max_vel_step, int max_iterations) {
+            return super.findDriveMaxS(x_0, y_0, f_0, x_1, y_1, f_1, max_vel_step, CONVERGED_ITERATIONS);
+        }
+    }
+
+    /**
+     * Checks that the allocating overload, the out-parameter overload, and
+     * updating a setpoint in place all produce exactly the same setpoint, without
+     * modifying the desired speeds.
+     */
+    @Test
+    void allocatingOverloadMatchesOutParameter() {
+        SwerveSetpointGenerator generator = new SwerveSetpointGenerator(MODULE_LOCATIONS);
+        SwerveSetpoint out = generator.createSetpoint();
+        Random random = new Random(2026);
+
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            SwerveSetpoint prev = generator.createSetpoint();
+            SwerveSetpoint inPlace = generator.createSetpoint();
+            for (int step = 0; step < STEPS; step++) {
+                ChassisSpeeds desired = randomDesired(random, prev);
+                ChassisSpeeds desiredCopy = copy(desired);
+
+                SwerveSetpoint allocated = generator.generateSetpoint(LIMITS, prev, desired, DT);
+                generator.generateSetpoint(LIMITS, prev, desired, DT, out);
+                generator.generateSetpoint(LIMITS, inPlace, desired, DT, inPlace);
+
+                String message = "sequence " + sequence + ", step " + step;
+                assertSetpointEquals(allocated, out, 0.0, message);
+                assertSetpointEquals(allocated, inPlace, 0.0, message);
+                assertEquals(desiredCopy.vxMetersPerSecond, desired.vxMetersPerSecond, message);
+                assertEquals(desiredCopy.vyMetersPerSecond, desired.vyMetersPerSecond, message);
+                assertEquals(desiredCopy.omegaRadiansPerSecond, desired.omegaRadiansPerSecond, message);
+                prev = allocated;
+            }
+        }
+    }
+
+    /**
+     * Checks that the generator matches the implementation it replaced exactly,
+     * down to the last bit of every angle's radians, cosine and sine. Each
+     * generator is run from its own previous setpoint, so that any difference
+     * would compound rather than be reset every step.
+     */
+    @Test
+    void matchesLegacyImplementation() {
+        SwerveSetpointGenerator generator = new SwerveSetpointGenerator(MODULE_LOCATIONS);
+        LegacySwerveSetpointGenerator legacy = new LegacySwerveSetpointGenerator(
+                new SwerveDriveKinematics(MODULE_LOCATIONS), MODULE_LOCATIONS);
+        Random random = new Random(254);
+
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            SwerveSetpoint prev = generator.createSetpoint();
+            SwerveSetpoint legacyPrev = generator.createSetpoint();
+            for (int step = 0; step < STEPS; step++) {
+                ChassisSpeeds desired = randomDesired(random, prev);
+                SwerveSetpoint expected = legacy.generateSetpoint(LIMITS, legacyPrev, copy(desired), DT);
+                SwerveSetpoint actual = generator.generateSetpoint(LIMITS, prev, desired, DT);
+
+                assertSetpointEquals(expected, actual, 0.0, "sequence " + sequence + ", step " + step);
+                legacyPrev = expected;
+                prev = actual;
+            }
+        }
+    }
+
+    /**
+     * Checks that the Illinois and closed-form solvers find the same setpoints as
+     * regula falsi, with every solver run to convergence so that only the solvers
+     * are compared. Each step is run from the same previous setpoint.
+     *
+     * <p>
+     * Illinois and the closed form must agree on every step. Plain regula falsi
+     * converges linearly when one bracket stagnates, so it is only held to 1e-5.
+     * Steps where a module's velocity reverses through (nearly) zero are excluded
+     * from the comparison with regula falsi: its heading jumps by about pi there,
+     * so the steering constraint has no continuous root, and which side of the
+     * jump a solver ends on depends on its bracketing.
+     */
+    @Test
+    void solverModesAgreeWithRegulaFalsi() {
+        for (ModuleLimits limits : new ModuleLimits[] { LIMITS, DRIVE_LIMITS }) {
+            SwerveSetpointGenerator reference = new ConvergedSetpointGenerator(SolverMode.REGULA_FALSI);
+            SwerveSetpointGenerator illinois = new ConvergedSetpointGenerator(SolverMode.ILLINOIS);
+            SwerveSetpointGenerator analytic = new ConvergedSetpointGenerator(SolverMode.ANALYTIC);
+            SwerveDriveKinematics kinematics = new SwerveDriveKinematics(MODULE_LOCATIONS);
+            Random random = new Random(1678);
+
+            int reversals = 0;
+            for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+                SwerveSetpoint prev = reference.createSetpoint();
+                for (int step = 0; step < STEPS; step++) {
+                    ChassisSpeeds desired = randomDesired(random, prev);
+                    SwerveSetpoint expected = reference.generateSetpoint(limits, prev, desired, DT);
+                    SwerveSetpoint illinoisSetpoint = illinois.generateSetpoint(limits, prev, desired, DT);
+                    SwerveSetpoint analyticSetpoint = analytic.generateSetpoint(limits, prev, desired, DT);
+                    String message = limits + ", sequence " + sequence + ", step " + step;
+
+                    assertSetpointClose(illinoisSetpoint, analyticSetpoint, 1e-7, "ANALYTIC, " + message);
+                    if (reversesNearZero(kinematics, limits, prev, desired)) {
+                        reversals++;
+                    } else {
+                        assertSetpointClose(expected, illinoisSetpoint, 1e-5, "ILLINOIS, " + message);
+                        assertSetpointClose(expected, analyticSetpoint, 1e-5, "ANALYTIC, " + message);
+                    }
+                    prev = expected;
+                }
+            }
+            // the exclusion must stay rare, or the comparison means little
+            assertTrue(reversals <= SEQUENCES * STEPS / 50, limits + ": " + reversals + " steps excluded");
+        }
+    }
+
+    /**
+     * Checks if any module's velocity, interpolated from the previous setpoint to
+     * the desaturated desired state, reverses direction and passes within 1 mm/s
+     * of zero.
+     */
+    static boolean reversesNearZero(SwerveDriveKinematics kinematics, ModuleLimits limits, SwerveSetpoint prev,
+            ChassisSpeeds desired) {
+        SwerveModuleState[] desiredStates = kinematics.toSwerveModuleStates(desired);
+        SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, limits.maxDriveVelocity());
+        for (int i = 0; i < desiredStates.length; i++) {
+            SwerveModuleState from = prev.moduleStates()[i];
+            SwerveModuleState to = desiredStates[i];
+            double x0 = from.speedMetersPerSecond * from.angle.getCos();
+            double y0 = from.speedMetersPerSecond * from.angle.getSin();
+            double dx = to.speedMetersPerSecond * to.angle.getCos() - x0;
+            double dy = to.speedMetersPerSecond * to.angle.getSin() - y0;
+            if (x0 * (x0 + dx) + y0 * (y0 + dy) >= 0.0) {
+                continue;
+            }
+            // the closest point to zero on the segment
+            double s = MathUtil.clamp(-(x0 * dx + y0 * dy) / (dx * dx + dy * dy), 0.0, 1.0);
+            if (Math.hypot(x0 + s * dx, y0 + s * dy) < 1e-3) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that the Illinois and closed-form solvers never exceed the steering
+     * or drive limits, with the iteration counts used on the robot.
+     */
+    @Test
+    void solverModesRespectLimits() {
+        for (SolverMode mode : new SolverMode[] { SolverMode.ILLINOIS, SolverMode.ANALYTIC }) {
+            SwerveSetpointGenerator generator = new SwerveSetpointGenerator(MODULE_LOCATIONS);
+            generator.setSolverMode(mode);
+            Random random = new Random(971);
+
+            for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+                SwerveSetpoint prev = generator.createSetpoint();
+                for (int step = 0; step < STEPS; step++) {
+                    SwerveSetpoint next = generator.generateSetpoint(LIMITS, prev, randomDesired(random, prev), DT);
+                    double violation = limitViolation(LIMITS, prev, next);
+                    assertTrue(violation <= 1e-9,
+                            mode + ", sequence " + sequence + ", step " + step + " exceeds a limit by " + violation);
+                    prev = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that every solver mode gives the same setpoint in the special cases:
+     * holding a speed, stopping, starting from rest with the modules facing the
+     * wrong way, stopping to flip the modules for a reversal of translation or
+     * rotation, and a desired speed within epsilon of zero.
+     */
+    @Test
+    void solverModesAgreeOnDegenerateCases() {
+        ChassisSpeeds forward = new ChassisSpeeds(2.0, 0.0, 0.0);
+        ChassisSpeeds spin = new ChassisSpeeds(0.0, 0.0, 3.0);
+        SwerveSetpoint[] prevs = {
+                settle(forward),
+                settle(forward),
+                settle(new ChassisSpeeds()),
+                settle(forward),
+                settle(spin),
+                settle(new ChassisSpeeds()),
+                settle(new ChassisSpeeds(1.0, 1.0, 1.0)) };
+        ChassisSpeeds[] desireds = {
+                forward,
+                new ChassisSpeeds(),
+                new ChassisSpeeds(0.0, 2.0, 0.0),
+                new ChassisSpeeds(-2.0, 0.0, 0.0),
+                new ChassisSpeeds(0.0, 0.0, -3.0),
+                new ChassisSpeeds(1e-10, -1e-10, 0.0),
+                new ChassisSpeeds(-1.0, -1.0, -1.0) };
+
+        SwerveSetpointGenerator reference = new SwerveSetpointGenerator(MODULE_LOCATIONS);
+        for (int i = 0; i < prevs.length; i++) {
+            SwerveSetpoint expected = reference.generateSetpoint(LIMITS, prevs[i], desireds[i], DT);
+            for (SolverMode mode : SolverMode.values()) {
+                SwerveSetpointGenerator generator = new SwerveSetpointGenerator(MODULE_LOCATIONS);
+                generator.setSolverMode(mode);
+                assertSetpointClose(expected, generator.generateSetpoint(LIMITS, prevs[i], desireds[i], DT), 1e-9,
+                        mode + ", case " + i);
+            }
+        }
+    }
+
+    /**
+     * Checks that the closed-form solver falls back to the Illinois search when
+     * there is no closed-form solution.
+     */
+    @Test
+    void analyticFallsBackToIllinois() {
+        SwerveSetpointGenerator illinois = new SwerveSetpointGenerator(MODULE_LOCATIONS);
+        illinois.setSolverMode(SolverMode.ILLINOIS);
+        SwerveSetpointGenerator analytic = new SwerveSetpointGenerator(MODULE_LOCATIONS);
+        analytic.setSolverMode(SolverMode.ANALYTIC);
+
+        // the velocity stays on the x axis, so it never reaches the target heading
+        // and the intersection is behind the start
+        assertEquals(
+                illinois.findSteeringMaxS(1.0, 0.0, 0.0, 2.0, 0.0, 1.0, 0.2, 8),
+                analytic.findSteeringMaxS(1.0, 0.0, 0.0, 2.0, 0.0, 1.0, 0.2, 8));
+        // the velocity does not change, so the line to the circle is degenerate
+        assertEquals(
+                illinois.findDriveMaxS(1.0, 0.0, 1.0, 1.0, 0.0, 2.0, 0.2, 10),
+                analytic.findDriveMaxS(1.0, 0.0, 1.0, 1.0, 0.0, 2.0, 0.2, 10));
+    }
+
+    /**
+     * Generates a random desired state, which is sometimes a stop or a reversal of
+     * the previous setpoint, so that the special cases are covered.
+     */
+    static ChassisSpeeds randomDesired(Random random, SwerveSetpoint prev) {
+        switch (random.nextInt(10)) {
+            case 0:
+                return new ChassisSpeeds();
+            case 1:
+                return new ChassisSpeeds(
+                        -prev.chassisSpeeds().vxMetersPerSecond,
+                        -prev.chassisSpeeds().vyMetersPerSecond,
+                        0.0);
+            default:
+                return new ChassisSpeeds(
+                        random.nextGaussian() * 3.0,
+                        random.nextGaussian() * 3.0,
+                        random.nextGaussian() * 4.0);
+        }
+    }
+
+    /**
+     * Runs a generator from rest until it reaches a desired state.
+     */
+    static SwerveSetpoint settle(ChassisSpeeds desired) {
+        SwerveSetpointGenerator generator = new SwerveSetpointGenerator(MODULE_LOCATIONS);
+        SwerveSetpoint setpoint = generator.createSetpoint();
+        for (int i = 0; i < 500; i++) {
+            generator.generateSetpoint(LIMITS, setpoint, desired, DT, setpoint);
+        }
+        assertTrue(difference(setpoint, generator.generateSetpoint(LIMITS, setpoint, desired, DT)) < 1e-9,
+                "did not settle");
+        return setpoint;
+    }
+
+    /**
+     * Gets how far a step exceeds the steering velocity or drive acceleration
+     * limit of any module, or a negative number if it doesn't.
+     */
+    static double limitViolation(ModuleLimits limits, SwerveSetpoint prev, SwerveSetpoint next) {
+        double violation = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < prev.moduleStates().length; i++) {
+            SwerveModuleState from = prev.moduleStates()[i];
+            SwerveModuleState to = next.moduleStates()[i];
+            double steer = Math.abs(MathUtil.angleModulus(to.angle.getRadians() - from.angle.getRadians()));
+            violation = Math.max(violation, steer - limits.maxSteeringVelocity() * DT);
+            double accel = Math.abs(Math.abs(to.speedMetersPerSecond) - Math.abs(from.speedMetersPerSecond));
+            violation = Math.max(violation, accel - limits.maxDriveAcceleration() * DT);
+        }
+        return violation;
+    }
+
+    static ChassisSpeeds copy(ChassisSpeeds speeds) {
+        return new ChassisSpeeds(
+                speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond);
+    }
+
+    static SwerveSetpoint copy(SwerveSetpoint setpoint) {
+        SwerveModuleState[] states = new SwerveModuleState[setpoint.moduleStates().length];
+        for (int i = 0; i < states.length; i++) {
+            SwerveModuleState state = setpoint.moduleStates()[i];
+            states[i] = new SwerveModuleState(state.speedMetersPerSecond, state.angle);
+        }
+        return new SwerveSetpoint(copy(setpoint.chassisSpeeds()), states);
+    }
+
+    /**
+     * Gets the largest difference between two setpoints, comparing the chassis
+     * speeds and the velocity vector of each module (so that a module flipped
+     * with its speed negated counts as the same).
+     */
+    static double difference(SwerveSetpoint a, SwerveSetpoint b) {
+        double error = Math.max(
+                Math.abs(a.chassisSpeeds().vxMetersPerSecond - b.chassisSpeeds().vxMetersPerSecond),
+                Math.abs(a.chassisSpeeds().vyMetersPerSecond - b.chassisSpeeds().vyMetersPerSecond));
+        error = Math.max(error,
+                Math.abs(a.chassisSpeeds().omegaRadiansPerSecond - b.chassisSpeeds().omegaRadiansPerSecond));
+        for (int i = 0; i < a.moduleStates().length; i++) {
+            SwerveModuleState x = a.moduleStates()[i];
+            SwerveModuleState y = b.moduleStates()[i];
+            error = Math.max(error, Math.hypot(
+                    x.speedMetersPerSecond * x.angle.getCos() - y.speedMetersPerSecond * y.angle.getCos(),
+                    x.speedMetersPerSecond * x.angle.getSin() - y.speedMetersPerSecond * y.angle.getSin()));
+        }
+        return error;
+    }
+
+    static void assertSetpointClose(SwerveSetpoint expected, SwerveSetpoint actual, double tolerance,
+            String message) {
+        double error = difference(expected, actual);
+        assertTrue(error <= tolerance, message + " differs by " + error);
+    }
+
+    static void assertSetpointEquals(SwerveSetpoint expected, SwerveSetpoint actual, double tolerance,
+            String message) {
+        assertEquals(expected.chassisSpeeds().vxMetersPerSecond, actual.chassisSpeeds().vxMetersPerSecond,
+                tolerance, message);
+        assertEquals(expected.chassisSpeeds().vyMetersPerSecond, actual.chassisSpeeds().vyMetersPerSecond,
+                tolerance, message);
+        assertEquals(expected.chassisSpeeds().omegaRadiansPerSecond, actual.chassisSpeeds().omegaRadiansPerSecond,
+                tolerance, message);
+        for (int i = 0; i < expected.moduleStates().length; i++) {
+            SwerveModuleState x = expected.moduleStates()[i];
+            SwerveModuleState y = actual.moduleStates()[i];
+            assertEquals(x.speedMetersPerSecond, y.speedMetersPerSecond, tolerance, message + ", module " + i);
+            assertEquals(x.angle.getRadians(), y.angle.getRadians(), tolerance, message + ", module " + i);
+            assertEquals(x.angle.getCos(), y.angle.getCos(), tolerance, message + ", module " + i);
+            assertEquals(x.angle.getSin(), y.angle.getSin(), tolerance, message + ", module " + i);
+        }
+    }
+}